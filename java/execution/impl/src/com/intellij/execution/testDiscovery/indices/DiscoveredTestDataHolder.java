@@ -36,7 +36,7 @@ public final class DiscoveredTestDataHolder {
   private boolean myDisposed;
   private final Disposable myDisposable = Disposer.newDisposable();
 
-  static final int VERSION = 10;
+  static final int VERSION = 11;
 
   public DiscoveredTestDataHolder(@NotNull Path basePath) {
     final Path versionFile = getVersionFile(basePath);
@@ -2,6 +2,8 @@
 package com.intellij.lang.java.lexer;
 
 import com.intellij.lexer.LexerBase;
+import com.intellij.lexer.RestartableLexer;
+import com.intellij.lexer.TokenIterator;
 import com.intellij.pom.java.LanguageLevel;
 import com.intellij.psi.JavaTokenType;
 import com.intellij.psi.TokenType;
@@ -18,7 +20,7 @@ import java.util.Set;
 
 import static com.intellij.psi.PsiKeyword.*;
 
-public class JavaLexer extends LexerBase {
+public class JavaLexer extends LexerBase implements RestartableLexer {
   private static final Set<String> KEYWORDS = ContainerUtil.newTroveSet(
     ABSTRACT, BOOLEAN, BREAK, BYTE, CASE, CATCH, CHAR, CLASS, CONST, CONTINUE, DEFAULT, DO, DOUBLE, ELSE, EXTENDS, FINAL, FINALLY,
     FLOAT, FOR, GOTO, IF, IMPLEMENTS, IMPORT, INSTANCEOF, INT, INTERFACE, LONG, NATIVE, NEW, PACKAGE, PRIVATE, PROTECTED, PUBLIC,
@@ -64,6 +66,24 @@ public class JavaLexer extends LexerBase {
     myFlexLexer.reset(myBuffer, startOffset, endOffset, 0);
   }
 
+  /**
+   * The lexer keeps no state between tokens, so it can be restarted at the start of any token
+   */
+  @Override
+  public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState, TokenIterator tokenIterator) {
+    start(buffer, startOffset, endOffset, initialState);
+  }
+
+  @Override
+  public int getStartState() {
+    return 0;
+  }
+
+  @Override
+  public boolean isRestartableState(int state) {
+    return true;
+  }
+
   @Override
   public int getState() {
     return 0;
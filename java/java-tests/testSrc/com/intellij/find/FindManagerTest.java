@@ -47,6 +47,7 @@ import com.intellij.psi.search.scope.packageSet.ParsingException;
 import com.intellij.testFramework.IdeaTestUtil;
 import com.intellij.testFramework.LightVirtualFile;
 import com.intellij.testFramework.MapDataContext;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.testFramework.PsiTestUtil;
 import com.intellij.testFramework.fixtures.TempDirTestFixture;
 import com.intellij.testFramework.fixtures.impl.LightTempDirTestFixtureImpl;
@@ -64,6 +65,8 @@ import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.concurrent.CountDownLatch;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * @author MYakovlev
@@ -1125,4 +1128,118 @@ public class FindManagerTest extends DaemonAnalyzerTestCase {
     assertSize(1, findInProject(findModel));
   }
 
+  public void testRegExpSearchFindsAllAlternatives() throws Exception {
+    createFile("a.txt", "logger.info(\"a\")");
+    createFile("b.txt", "LOG.warn(\"b\")");
+    createFile("c.txt", "logger.debug(\"c\")");
+    FindModel findModel = FindManagerTestUtils.configureFindModel("(logger|LOG)\\.(info|warn)\\(");
+    findModel.setRegularExpressions(true);
+    assertSize(2, findInProject(findModel));
+
+    findModel.setStringToFind("log\\w*\\.\\w+\\(\"[a-c]\"");
+    assertSize(3, findInProject(findModel));
+  }
+
+  public void testSearchStopsAtOccurrenceLimit() throws Exception {
+    for (int i = 0; i < 50; i++) {
+      createFile("a" + i + ".txt", StringUtil.repeat("foo ", 10));
+    }
+    FindModel findModel = FindManagerTestUtils.configureFindModel("foo");
+    String property = "idea.find.in.path.max.occurrences";
+    System.setProperty(property, "5");
+    try {
+      List<String> texts = Collections.synchronizedList(new ArrayList<>());
+      ProgressIndicatorBase progress = new ProgressIndicatorBase() {
+        @Override
+        public void setText(String text) {
+          super.setText(text);
+          texts.add(text);
+        }
+      };
+      List<UsageInfo> result = Collections.synchronizedList(new ArrayList<>());
+      FindUsagesProcessPresentation presentation = new FindUsagesProcessPresentation(FindInProjectUtil.setupViewPresentation(true, findModel));
+      ProgressManager.getInstance().runProcess(
+        () -> FindInProjectUtil.findUsages(findModel, myProject, new CommonProcessors.CollectProcessor<>(result), presentation), progress);
+
+      assertSize(5, result);
+      assertEquals(5, presentation.getReachedOccurrenceLimit());
+      assertFalse(presentation.isCanceled());
+      // files are searched concurrently, but no new file is started after the limit is reached
+      assertTrue(texts.toString(), texts.stream().filter(text -> text.contains(".txt")).count() < 50);
+      assertFalse(texts.toString(), texts.contains("Scanning non-indexed files..."));
+    }
+    finally {
+      System.clearProperty(property);
+    }
+    FindUsagesProcessPresentation presentation = new FindUsagesProcessPresentation(FindInProjectUtil.setupViewPresentation(true, findModel));
+    List<UsageInfo> result = Collections.synchronizedList(new ArrayList<>());
+    FindInProjectUtil.findUsages(findModel, myProject, new CommonProcessors.CollectProcessor<>(result), presentation);
+    assertSize(500, result);
+    assertEquals(0, presentation.getReachedOccurrenceLimit());
+  }
+
+  public void testCancellationIsReportedWhenOccurrenceLimitIsReached() throws Exception {
+    createFile("a.txt", StringUtil.repeat("foo ", 10));
+    FindModel findModel = FindManagerTestUtils.configureFindModel("foo");
+    String property = "idea.find.in.path.max.occurrences";
+    System.setProperty(property, "5");
+    try {
+      ProgressIndicatorBase progress = new ProgressIndicatorBase();
+      List<UsageInfo> result = Collections.synchronizedList(new ArrayList<>());
+      FindUsagesProcessPresentation presentation = new FindUsagesProcessPresentation(FindInProjectUtil.setupViewPresentation(true, findModel));
+      // the search is canceled by the user and stopped by the limit at the next occurrence
+      ProgressManager.getInstance().runProcess(() -> FindInProjectUtil.findUsages(findModel, myProject, info -> {
+        result.add(info);
+        if (result.size() == 5) progress.cancel();
+        return true;
+      }, presentation), progress);
+
+      assertSize(5, result);
+      assertTrue(presentation.isCanceled());
+    }
+    finally {
+      System.clearProperty(property);
+    }
+  }
+
+  public void testRegExpSearchInLargeProjectPerformance() throws Exception {
+    File dir = createTempDirectory();
+    Random random = new Random(42);
+    String[] words = {"value", "result", "handler", "context", "logger", "buffer", "index", "request", "session", "manager"};
+    List<String> texts = new ArrayList<>();
+    for (int i = 0; i < 5000; i++) {
+      StringBuilder text = new StringBuilder();
+      for (int line = 0; line < 20; line++) {
+        String word = words[random.nextInt(words.length)];
+        text.append("  ").append(word).append(i % 7).append(" = ").append(words[random.nextInt(words.length)]).append(".get(").append(line).append(");\n");
+      }
+      if (i % 100 == 0) text.append("  logger.warn(\"cache miss \" + key").append(i).append(");\n");
+      if (i % 250 == 0) text.append("  private static final int TIMEOUT_").append(i).append(" = 1000;\n");
+      texts.add(text.toString());
+      FileUtil.writeToFile(new File(dir, "Data" + i + ".txt"), text.toString());
+    }
+    VirtualFile root = LocalFileSystem.getInstance().refreshAndFindFileByIoFile(dir);
+    assertNotNull(root);
+    addSourceContentToRoots(myModule, root);
+
+    String[] regExps = {"logger\\.(warn|error)\\(\"cache", "private\\s+static\\s+final\\s+int\\s+TIMEOUT_\\d+", "(handler|session)3 = manager"};
+    int[] expected = new int[regExps.length];
+    for (int i = 0; i < regExps.length; i++) {
+      Pattern pattern = Pattern.compile(regExps[i]);
+      for (String text : texts) {
+        Matcher matcher = pattern.matcher(text);
+        while (matcher.find()) expected[i]++;
+      }
+      assertTrue(expected[i] > 0);
+    }
+
+    PlatformTestUtil.startPerformanceTest("regexp search in 5000 files", 3000, () -> {
+      for (int i = 0; i < regExps.length; i++) {
+        FindModel findModel = FindManagerTestUtils.configureFindModel(regExps[i]);
+        findModel.setRegularExpressions(true);
+        findModel.setCaseSensitive(true);
+        assertSize(expected[i], findInProject(findModel));
+      }
+    }).attempts(2).assertTiming();
+  }
 }
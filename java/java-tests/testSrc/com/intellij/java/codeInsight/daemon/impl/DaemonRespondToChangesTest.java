@@ -1959,6 +1959,96 @@ public class DaemonRespondToChangesTest extends DaemonAnalyzerTestCase {
     assertEquals(applied, ContainerUtil.newHashSet(editor1, editor2));
   }
 
+  public void testBackgroundTabIsHighlightedAfterSelectedEditor() {
+    myDaemonCodeAnalyzer.enablePrehighlighting(getTestRootDisposable());
+    Editor backgroundEditor = openBackgroundAndSelectedEditors("class B { Unknown u; }");
+    Document backgroundDocument = backgroundEditor.getDocument();
+    assertEmpty(DaemonCodeAnalyzerImpl.getHighlights(backgroundDocument, HighlightSeverity.ERROR, myProject));
+
+    executeWithoutReparseDelay(() -> {
+      type(' ');
+      waitForDaemon();
+      long deadline = System.currentTimeMillis() + 60_000;
+      while (DaemonCodeAnalyzerImpl.getHighlights(backgroundDocument, HighlightSeverity.ERROR, myProject).isEmpty()) {
+        if (System.currentTimeMillis() > deadline) fail("Too long waiting for background tab to be highlighted");
+        PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+      }
+    });
+    assertSame(myEditor, FileEditorManager.getInstance(myProject).getSelectedTextEditor());
+  }
+
+  public void testTypingCancelsBackgroundTabHighlighting() {
+    myDaemonCodeAnalyzer.enablePrehighlighting(getTestRootDisposable());
+    AtomicReference<Editor> blockedEditor = new AtomicReference<>();
+    AtomicReference<ProgressIndicator> blockedProgress = new AtomicReference<>();
+    AtomicBoolean canceled = new AtomicBoolean();
+    class Fac implements TextEditorHighlightingPassFactory {
+      @Override
+      public TextEditorHighlightingPass createHighlightingPass(@NotNull PsiFile file, @NotNull final Editor editor) {
+        return new EditorBoundHighlightingPass(editor, file, false) {
+          @Override
+          public void doCollectInformation(@NotNull ProgressIndicator progress) {
+            if (editor != blockedEditor.get()) return;
+            blockedProgress.set(progress);
+            try {
+              while (true) {
+                progress.checkCanceled();
+                TimeoutUtil.sleep(1);
+              }
+            }
+            catch (ProcessCanceledException e) {
+              canceled.set(true);
+              throw e;
+            }
+          }
+
+          @Override
+          public void doApplyInformationToEditor() {
+          }
+        };
+      }
+    }
+    TextEditorHighlightingPassRegistrar.getInstance(getProject()).registerTextEditorHighlightingPass(new Fac(), null, null, false, -1);
+
+    blockedEditor.set(openBackgroundAndSelectedEditors("class B { }"));
+    executeWithoutReparseDelay(() -> {
+      type(' ');
+      long deadline = System.currentTimeMillis() + 60_000;
+      while (blockedProgress.get() == null) {
+        if (System.currentTimeMillis() > deadline) fail("Too long waiting for background tab highlighting to start");
+        PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+      }
+      DaemonProgressIndicator progress = myDaemonCodeAnalyzer.getUpdateProgress();
+      assertFalse(progress.isCanceled());
+      assertFalse(canceled.get());
+
+      type(' ');
+      assertTrue(progress.isCanceled());
+      while (!canceled.get()) {
+        if (System.currentTimeMillis() > deadline) fail("Too long waiting for background tab highlighting to stop");
+        PlatformTestUtil.dispatchAllInvocationEventsInIdeEventQueue();
+      }
+      blockedEditor.set(null);
+      waitForDaemon();
+    });
+  }
+
+  /**
+   * Opens a file with the given text in a background tab, then opens and selects another file
+   * @return editor of the background tab
+   */
+  @NotNull
+  private Editor openBackgroundAndSelectedEditors(@NotNull String backgroundText) {
+    myDaemonCodeAnalyzer.setUpdateByTimerEnabled(false);
+    configureByText(StdFileTypes.JAVA, backgroundText);
+    Editor backgroundEditor = getEditor();
+    configureByText(StdFileTypes.JAVA, "class A { <caret> }");
+    assertSame(getEditor(), FileEditorManager.getInstance(myProject).getSelectedTextEditor());
+    getProject().getComponent(EditorTracker.class).setActiveEditors(Collections.singletonList(getEditor()));
+    myDaemonCodeAnalyzer.setUpdateByTimerEnabled(true);
+    return backgroundEditor;
+  }
+
   private void registerFakePass(@NotNull final Set<Editor> applied, @NotNull final Set<Editor> collected) {
     class Fac implements TextEditorHighlightingPassFactory {
       @Override
@@ -15,6 +15,7 @@
  */
 package com.intellij.java.psi;
 
+import com.intellij.lang.impl.PsiBuilderImpl;
 import com.intellij.openapi.command.WriteCommandAction;
 import com.intellij.openapi.editor.Document;
 import com.intellij.openapi.fileTypes.MockLanguageFileType;
@@ -230,6 +231,28 @@ public class JavaReparseTest extends AbstractReparseTestCase {
     remove(toRemove.length());
   }
 
+  public void testLargeFileIsRelexedIncrementally() {
+    setFileType(StdFileTypes.JAVA);
+    StringBuilder members = new StringBuilder();
+    for (int i = 0; members.length() < 30_000; i++) {
+      members.append("  /* field ").append(i).append(" */ String f").append(i).append(" = \"s").append(i).append("\";\n");
+      members.append("  void m").append(i).append("() { char c = 'c'; } // method ").append(i).append("\n");
+    }
+    prepareFile("class Foo {\n", members + "}");
+    assertTrue(PsiBuilderImpl.hasTokensSnapshot(myDummyFile.getNode()));
+
+    insert("int inserted;\n");
+    insert("/* unclosed ");
+    insert("*/");
+    insert("String s = \"");
+    insert("\";\n");
+    remove(5);
+    moveEditPointRight(members.length() / 2);
+    insert("// ");
+    remove(3);
+    assertTrue(PsiBuilderImpl.hasTokensSnapshot(myDummyFile.getNode()));
+  }
+
   public void testDocComment() {
     String text = "/** .../ */";
     final int offset = text.indexOf("...");
@@ -16,6 +16,8 @@ import com.intellij.pom.java.LanguageLevel;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.PsiDocumentManagerImpl;
 import com.intellij.psi.impl.source.PostprocessReformattingAspect;
+import com.intellij.psi.impl.source.resolve.ResolveCache;
+import com.intellij.psi.impl.source.resolve.ResolveCacheStatistics;
 import com.intellij.psi.impl.source.tree.LazyParseableElement;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.testFramework.SkipSlowTestLocally;
@@ -367,6 +369,31 @@ public class MiscPsiTest extends LightCodeInsightFixtureTestCase {
     PsiUtilCore.ensureValid(bar.getSuperClass());
   }
 
+  public void testResolveCacheStatistics() {
+    PsiClass bar = myFixture.addClass("class Bar extends Foo {} class Foo {}");
+    PsiJavaCodeReferenceElement ref = bar.getExtendsList().getReferenceElements()[0];
+    ResolveCache cache = ResolveCache.getInstance(getProject());
+    cache.setStatisticsEnabled(true);
+    try {
+      assertNotNull(ref.resolve());
+      assertNotNull(ref.resolve());
+      ResolveCacheStatistics.Counters counters = cache.getStatistics().getCounters().get(ref.getClass());
+      assertTrue(counters.getMisses() > 0);
+      assertTrue(counters.getHits() > 0);
+
+      PsiJavaCodeReferenceElement nonPhysicalRef = JavaPsiFacade.getElementFactory(getProject()).createReferenceFromText("Foo", bar);
+      assertNotNull(nonPhysicalRef.resolve());
+
+      cache.clearCache(true); // drops both physical and non-physical results at once
+      assertTrue(cache.getStatistics().getDroppedResultCount() > 0);
+      assertEquals(1, cache.getStatistics().getClearCount());
+    }
+    finally {
+      cache.setStatisticsEnabled(false);
+    }
+    assertNull(cache.getStatistics());
+  }
+
   public void testLoadingNodeDuringCommitWithoutReparse_Stress() {
     // it's a stress test to disable test checks that load file content prematurely (AbstractFileViewProvider.checkLengthConsistency)
     PsiFile file = myFixture.addFileToProject("a.java", "class Foo {}");
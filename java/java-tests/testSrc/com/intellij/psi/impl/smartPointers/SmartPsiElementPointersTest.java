@@ -26,7 +26,11 @@ import com.intellij.openapi.fileTypes.StdFileTypes;
 import com.intellij.openapi.util.Key;
 import com.intellij.openapi.util.Segment;
 import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.roots.ModuleRootModificationUtil;
+import com.intellij.openapi.util.io.IoTestUtil;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.openapi.vfs.JarFileSystem;
+import com.intellij.openapi.vfs.LocalFileSystem;
 import com.intellij.openapi.vfs.VirtualFile;
 import com.intellij.psi.*;
 import com.intellij.psi.impl.source.PostprocessReformattingAspect;
@@ -44,6 +48,7 @@ import com.intellij.psi.xml.XmlTag;
 import com.intellij.testFramework.*;
 import com.intellij.util.FileContentUtil;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.ReadOnlyAttributeUtil;
 import com.intellij.util.ref.GCUtil;
 import com.intellij.util.ref.GCWatcher;
 import gnu.trove.THashSet;
@@ -51,6 +56,10 @@ import org.intellij.lang.annotations.Language;
 import org.jetbrains.annotations.NotNull;
 import org.junit.Assert;
 
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
@@ -426,6 +435,48 @@ public class SmartPsiElementPointersTest extends CodeInsightTestCase {
     assertEquals(loaded, stubTree == null);
   }
 
+  public void testTreeOfArchivedFileWithoutDocumentIsNotRetained() throws IOException {
+    @Language("JAVA")
+    String text = "package x; public class X { public int X; }";
+    File jar = IoTestUtil.createTestJar(new File(createTempDirectory(), "x-sources.jar"), "x/X.java", text);
+    VirtualFile jarRoot = JarFileSystem.getInstance().getJarRootForLocalFile(LocalFileSystem.getInstance().refreshAndFindFileByIoFile(jar));
+    assertNotNull(jarRoot);
+    ModuleRootModificationUtil.addModuleLibrary(myModule, "x", Collections.emptyList(), Collections.singletonList(jarRoot.getUrl()));
+    VirtualFile vfile = jarRoot.findFileByRelativePath("x/X.java");
+    assertNotNull(vfile);
+
+    PsiFileImpl file = (PsiFileImpl)getPsiManager().findFile(vfile);
+    PsiClass aClass = ((PsiJavaFile)file).getClasses()[0];
+    assertEquals(text, file.getNode().getText());
+    assertNull(FileDocumentManager.getInstance().getCachedDocument(vfile));
+
+    GCWatcher.tracking(file.getTreeElement()).tryGc();
+    assertNull(file.getTreeElement());
+    assertSame(aClass, ((PsiJavaFile)file).getClasses()[0]);
+  }
+
+  public void testTreeOfReadOnlyLocalFileIsRetainedSoftly() throws IOException {
+    VirtualFile vfile = createChildData(myRoot, "X.java");
+    setFileText(vfile, "public class X { public int X; }");
+    WriteAction.runAndWait(() -> ReadOnlyAttributeUtil.setReadOnlyAttribute(vfile, true));
+    try {
+      PsiFileImpl file = (PsiFileImpl)getPsiManager().findFile(vfile);
+      Reference<FileElement> treeRef = new WeakReference<>(file.calcTreeElement());
+      assertNull(FileDocumentManager.getInstance().getCachedDocument(vfile));
+
+      // a collection clearing weakly reachable objects keeps the tree
+      GCWatcher.tracking(new Object()).tryGc();
+      assertNotNull(treeRef.get());
+      assertSame(treeRef.get(), file.getTreeElement());
+
+      GCUtil.tryGcSoftlyReachableObjects();
+      assertNull(file.getTreeElement());
+    }
+    finally {
+      WriteAction.runAndWait(() -> ReadOnlyAttributeUtil.setReadOnlyAttribute(vfile, false));
+    }
+  }
+
   public void testPointerDisambiguationAfterDupLine() {
     String text = "class XXX{ void foo() { \n" +
                   " <caret>foo();\n" +
@@ -23,7 +23,7 @@ import java.util.List;
 
 public class JavaCompilerIndices {
   //TODO manage version separately
-  public static final int VERSION = 7;
+  public static final int VERSION = 8;
 
   public static final IndexId<CompilerRef, Integer> BACK_USAGES = IndexId.create("back.refs");
   public static final IndexId<CompilerRef, Collection<CompilerRef>> BACK_HIERARCHY = IndexId.create("back.hierarchy");
@@ -2,6 +2,7 @@
 package com.intellij.json.codeinsight;
 
 import com.intellij.codeHighlighting.HighlightDisplayLevel;
+import com.intellij.codeInspection.FileLocalInspectionTool;
 import com.intellij.codeInspection.LocalInspectionTool;
 import com.intellij.codeInspection.LocalQuickFix;
 import com.intellij.codeInspection.ProblemDescriptor;
@@ -37,7 +38,7 @@ import javax.swing.*;
  *
  * @author Mikhail Golubev
  */
-public class JsonStandardComplianceInspection extends LocalInspectionTool {
+public class JsonStandardComplianceInspection extends LocalInspectionTool implements FileLocalInspectionTool {
   private static final Logger LOG = Logger.getInstance(JsonStandardComplianceInspection.class);
 
   public boolean myWarnAboutComments = true;
@@ -0,0 +1,12 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.codeInspection;
+
+/**
+ * Marker interface for local inspections whose problems in a file depend only on the name, language and text of this file
+ * and on the inspection settings, but not on other files, libraries or project configuration.
+ * <p>
+ * Problems found by such inspections in batch mode can be cached between runs by file content,
+ * so inspections must not report problems which differ between runs on the same text.
+ */
+public interface FileLocalInspectionTool {
+}
@@ -29,7 +29,7 @@ import java.io.InputStream;
  */
 public class StubInputStream extends DataInputStream {
   private final AbstractStringEnumerator myNameStorage;
-  private final byte[] myStringIOBuffer = IOUtil.allocReadWriteUTFBuffer();
+  private byte[] myStringIOBuffer; // allocated on demand, streams of lazily deserialized stubs rarely read strings in place
 
   public StubInputStream(@NotNull InputStream in, @NotNull AbstractStringEnumerator nameStorage) {
     super(in);
@@ -38,6 +38,7 @@ public class StubInputStream extends DataInputStream {
 
   @NotNull 
   public String readUTFFast() throws IOException {
+    if (myStringIOBuffer == null) myStringIOBuffer = IOUtil.allocReadWriteUTFBuffer();
     return IOUtil.readUTFFast(myStringIOBuffer, this);
   }
 
@@ -3,6 +3,7 @@ package com.intellij.lang.impl;
 
 import com.intellij.lang.*;
 import com.intellij.lexer.Lexer;
+import com.intellij.lexer.RestartableLexer;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.EmptyProgressIndicator;
 import com.intellij.openapi.progress.ProgressIndicator;
@@ -22,6 +23,7 @@ import com.intellij.psi.impl.source.tree.Factory;
 import com.intellij.psi.impl.source.tree.*;
 import com.intellij.psi.text.BlockSupport;
 import com.intellij.psi.tree.*;
+import com.intellij.reference.SoftReference;
 import com.intellij.util.CharTable;
 import com.intellij.util.ThreeState;
 import com.intellij.util.TripleFunction;
@@ -33,10 +35,12 @@ import com.intellij.util.diff.DiffTreeChangeBuilder;
 import com.intellij.util.diff.FlyweightCapableTreeStructure;
 import com.intellij.util.diff.ShallowNodeComparator;
 import com.intellij.util.text.CharArrayUtil;
+import com.intellij.util.text.ImmutableCharSequence;
 import gnu.trove.TIntObjectHashMap;
 import org.jetbrains.annotations.NonNls;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import java.util.AbstractList;
 import java.util.List;
@@ -55,6 +59,8 @@ public class PsiBuilderImpl extends UnprotectedUserDataHolder implements PsiBuil
     CUSTOM_COMPARATOR = Key.create("CUSTOM_COMPARATOR");
 
   private static final Key<TokenSequence> LAZY_PARSEABLE_TOKENS = Key.create("LAZY_PARSEABLE_TOKENS");
+  private static final Key<SoftReference<TokenSequence.Snapshot>> TOKENS_SNAPSHOT = Key.create("TOKENS_SNAPSHOT");
+  private static final int MIN_INCREMENTALLY_LEXED_TEXT_LENGTH = 20_000;
 
   private static TokenSet ourAnyLanguageWhitespaceTokens = TokenSet.EMPTY;
 
@@ -185,9 +191,46 @@ public class PsiBuilderImpl extends UnprotectedUserDataHolder implements PsiBuil
       return fromParent;
     }
 
+    UserDataHolder tree = myOriginalTree != null ? myOriginalTree : parentCachingNode instanceof ASTNode ? (ASTNode)parentCachingNode : null;
+    if (tree != null && isIncrementalLexingApplicable()) {
+      return performIncrementalLexing(tree);
+    }
+
     return new TokenSequence.Builder(myText, myLexer).performLexing();
   }
 
+  private boolean isIncrementalLexingApplicable() {
+    return myLexer instanceof RestartableLexer &&
+           myOffset == 0 &&
+           myText.length() >= MIN_INCREMENTALLY_LEXED_TEXT_LENGTH &&
+           (myText instanceof String || myText instanceof ImmutableCharSequence);
+  }
+
+  /**
+   * Large texts lexed by restartable lexers keep tokens with lexer states on the tree, so on reparse of the tree
+   * only the changed part of the text is relexed
+   */
+  @NotNull
+  private TokenSequence performIncrementalLexing(@NotNull UserDataHolder tree) {
+    TokenSequence.Snapshot previous = myLastCommittedText != null ? SoftReference.dereference(tree.getUserData(TOKENS_SNAPSHOT)) : null;
+    TokenSequence.Builder builder = new TokenSequence.Builder(myText, myLexer);
+    TokenSequence.Snapshot snapshot = previous != null && previous.isApplicable(myLastCommittedText, myLexer)
+                                      ? builder.performIncrementalLexing(previous)
+                                      : builder.performLexingWithStates();
+    tree.putUserData(TOKENS_SNAPSHOT, new SoftReference<>(snapshot));
+
+    TokenSequence tokens = snapshot.toTokenSequence();
+    if (doLexingOptimizationCorrectionCheck()) {
+      tokens.assertMatches(myText, myLexer);
+    }
+    return tokens;
+  }
+
+  @TestOnly
+  public static boolean hasTokensSnapshot(@NotNull ASTNode tree) {
+    return SoftReference.dereference(tree.getUserData(TOKENS_SNAPSHOT)) != null;
+  }
+
   private static boolean doLexingOptimizationCorrectionCheck() {
     return false; // set to true to check that re-lexing of lazy parseables produces the same sequence as cached one
   }
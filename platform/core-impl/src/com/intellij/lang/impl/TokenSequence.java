@@ -16,11 +16,17 @@
 package com.intellij.lang.impl;
 
 import com.intellij.lexer.Lexer;
+import com.intellij.lexer.RestartableLexer;
+import com.intellij.lexer.TokenIterator;
 import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicatorProvider;
 import com.intellij.psi.tree.IElementType;
+import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.util.ArrayUtil;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.Arrays;
 
 class TokenSequence {
   private static final Logger LOG = Logger.getInstance("#com.intellij.lang.impl.TokenSequence");
@@ -47,11 +53,44 @@ class TokenSequence {
     }
   }
   
+  /**
+   * Tokens of a text with lexer states at token starts, used to relex only the changed part of the text on reparse.
+   * Arrays are not shared with {@link TokenSequence} which token types may be remapped by a parser.
+   */
+  static class Snapshot {
+    final CharSequence text;
+    final Class<? extends Lexer> lexerClass;
+    final int[] lexStarts;
+    final IElementType[] lexTypes;
+    final int[] lexStates;
+    final int lexemeCount;
+
+    private Snapshot(@NotNull CharSequence text, @NotNull Lexer lexer, int[] lexStarts, IElementType[] lexTypes, int[] lexStates, int lexemeCount) {
+      this.text = text;
+      lexerClass = lexer.getClass();
+      this.lexStarts = lexStarts;
+      this.lexTypes = lexTypes;
+      this.lexStates = lexStates;
+      this.lexemeCount = lexemeCount;
+    }
+
+    boolean isApplicable(@NotNull CharSequence oldText, @NotNull Lexer lexer) {
+      return lexerClass == lexer.getClass() && (text == oldText || StringUtil.equals(text, oldText));
+    }
+
+    @NotNull
+    TokenSequence toTokenSequence() {
+      // types may be remapped by the parser, starts are never modified
+      return new TokenSequence(lexStarts, lexTypes.clone(), lexemeCount);
+    }
+  }
+
   static class Builder {
     private final CharSequence myText;
     private final Lexer myLexer;
     private int[] myLexStarts;
     private IElementType[] myLexTypes;
+    private int[] myLexStates;
 
     Builder(@NotNull CharSequence text, @NotNull Lexer lexer) {
       myText = text;
@@ -65,8 +104,76 @@ class TokenSequence {
 
     @NotNull TokenSequence performLexing() {
       myLexer.start(myText);
-      int i = 0;
-      int offset = 0;
+      int i = lexUntil(0, 0, null, 0);
+      myLexStarts[i] = myText.length();
+      
+      return new TokenSequence(myLexStarts, myLexTypes, i);
+    }
+
+    /**
+     * Same as {@link #performLexing()} but remembers lexer states, so the result can be relexed incrementally later
+     */
+    @NotNull Snapshot performLexingWithStates() {
+      myLexStates = new int[myLexStarts.length];
+      myLexer.start(myText);
+      return finish(lexUntil(0, 0, null, 0));
+    }
+
+    /**
+     * Relexes the text starting from the last restartable state before the change and stops as soon as the new tokens
+     * and lexer states converge with the previous ones; the rest of the tokens are copied from the previous snapshot.
+     * The lexer must implement {@link RestartableLexer}.
+     */
+    @NotNull Snapshot performIncrementalLexing(@NotNull Snapshot previous) {
+      RestartableLexer restartableLexer = (RestartableLexer)myLexer;
+      CharSequence oldText = previous.text;
+      int oldLength = oldText.length();
+      int newLength = myText.length();
+      int prefix = StringUtil.commonPrefixLength(oldText, myText);
+      int suffix = Math.min(StringUtil.commonSuffixLength(oldText, myText), Math.min(oldLength, newLength) - prefix);
+
+      // the token containing the change and the one before it may be affected by the lexer lookahead
+      int restartIndex = Math.max(0, findTokenIndex(previous, prefix) - 1);
+      while (restartIndex > 0 && !restartableLexer.isRestartableState(previous.lexStates[restartIndex])) {
+        restartIndex--;
+      }
+
+      ShiftedTokens previousTokens = new ShiftedTokens(previous, newLength - suffix, newLength - oldLength);
+      myLexStates = new int[myLexStarts.length];
+      if (restartIndex == 0) {
+        myLexer.start(myText);
+        return finish(lexUntil(0, 0, previousTokens, 0));
+      }
+
+      if (restartIndex >= myLexTypes.length - 1) {
+        resizeLexemes(restartIndex * 3 / 2 + 2);
+      }
+      System.arraycopy(previous.lexStarts, 0, myLexStarts, 0, restartIndex);
+      System.arraycopy(previous.lexTypes, 0, myLexTypes, 0, restartIndex);
+      System.arraycopy(previous.lexStates, 0, myLexStates, 0, restartIndex);
+
+      int restartOffset = previous.lexStarts[restartIndex];
+      restartableLexer.start(myText, restartOffset, newLength, previous.lexStates[restartIndex], createTokenIterator(previous, restartIndex));
+      return finish(lexUntil(restartIndex, restartOffset, previousTokens, restartIndex));
+    }
+
+    @NotNull
+    private Snapshot finish(int lexemeCount) {
+      myLexStarts[lexemeCount] = myText.length();
+      return new Snapshot(myText, myLexer,
+                          ArrayUtil.realloc(myLexStarts, lexemeCount + 1),
+                          ArrayUtil.realloc(myLexTypes, lexemeCount + 1, IElementType.ARRAY_FACTORY),
+                          ArrayUtil.realloc(myLexStates, lexemeCount + 1),
+                          lexemeCount);
+    }
+
+    /**
+     * Lexes tokens into arrays starting from the given index. If previous tokens are given, lexing stops when a token after the changed
+     * range matches a previous token (shifted by the change length) by start, type and state, and the rest previous tokens are copied.
+     *
+     * @return number of tokens
+     */
+    private int lexUntil(int i, int offset, @Nullable ShiftedTokens previous, int previousIndex) {
       while (true) {
         IElementType type = myLexer.getTokenType();
         if (type == null) break;
@@ -80,15 +187,94 @@ class TokenSequence {
         if (tokenStart < offset) {
           reportDescendingOffsets(i, offset, tokenStart);
         }
+        int state = myLexStates != null ? myLexer.getState() : 0;
+
+        if (previous != null && tokenStart >= previous.changeEnd) {
+          while (previousIndex < previous.snapshot.lexemeCount && previous.getStart(previousIndex) < tokenStart) previousIndex++;
+          if (previousIndex < previous.snapshot.lexemeCount &&
+              previous.getStart(previousIndex) == tokenStart &&
+              previous.snapshot.lexTypes[previousIndex] == type &&
+              previous.snapshot.lexStates[previousIndex] == state) {
+            return copyRest(i, previous, previousIndex);
+          }
+        }
+
         myLexStarts[i] = offset = tokenStart;
         myLexTypes[i] = type;
+        if (myLexStates != null) myLexStates[i] = state;
         i++;
         myLexer.advance();
       }
+      return i;
+    }
 
-      myLexStarts[i] = myText.length();
-      
-      return new TokenSequence(myLexStarts, myLexTypes, i);
+    private int copyRest(int i, @NotNull ShiftedTokens previous, int previousIndex) {
+      int count = previous.snapshot.lexemeCount - previousIndex;
+      if (i + count >= myLexTypes.length) {
+        resizeLexemes(i + count + 1);
+      }
+      for (int j = 0; j < count; j++) {
+        myLexStarts[i + j] = previous.getStart(previousIndex + j);
+      }
+      System.arraycopy(previous.snapshot.lexTypes, previousIndex, myLexTypes, i, count);
+      System.arraycopy(previous.snapshot.lexStates, previousIndex, myLexStates, i, count);
+      return i + count;
+    }
+
+    private static final class ShiftedTokens {
+      final Snapshot snapshot;
+      final int changeEnd; // end of the changed range in the new text, only tokens starting after it can be reused
+      final int shift;
+
+      ShiftedTokens(@NotNull Snapshot snapshot, int changeEnd, int shift) {
+        this.snapshot = snapshot;
+        this.changeEnd = changeEnd;
+        this.shift = shift;
+      }
+
+      int getStart(int index) {
+        return snapshot.lexStarts[index] + shift;
+      }
+    }
+
+    private static int findTokenIndex(@NotNull Snapshot snapshot, int offset) {
+      int index = Arrays.binarySearch(snapshot.lexStarts, 0, snapshot.lexemeCount, offset);
+      return index >= 0 ? index : Math.max(0, -index - 2);
+    }
+
+    @NotNull
+    private static TokenIterator createTokenIterator(@NotNull Snapshot snapshot, int initialIndex) {
+      return new TokenIterator() {
+        @Override
+        public int getStartOffset(int index) {
+          return snapshot.lexStarts[index];
+        }
+
+        @Override
+        public int getEndOffset(int index) {
+          return snapshot.lexStarts[index + 1];
+        }
+
+        @Override
+        public IElementType getType(int index) {
+          return snapshot.lexTypes[index];
+        }
+
+        @Override
+        public int getState(int index) {
+          return snapshot.lexStates[index];
+        }
+
+        @Override
+        public int getTokenCount() {
+          return snapshot.lexemeCount;
+        }
+
+        @Override
+        public int initialTokenIndex() {
+          return initialIndex;
+        }
+      };
     }
 
     private void reportDescendingOffsets(int tokenIndex, int offset, int tokenStart) {
@@ -113,6 +299,7 @@ class TokenSequence {
     private void resizeLexemes(final int newSize) {
       myLexStarts = ArrayUtil.realloc(myLexStarts, newSize);
       myLexTypes = ArrayUtil.realloc(myLexTypes, newSize, IElementType.ARRAY_FACTORY);
+      if (myLexStates != null) myLexStates = ArrayUtil.realloc(myLexStates, newSize);
     }
 
   }
@@ -19,6 +19,7 @@ import org.jetbrains.annotations.Nullable;
 
 import java.lang.ref.ReferenceQueue;
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.ConcurrentModificationException;
 import java.util.List;
@@ -961,6 +962,73 @@ abstract class IntervalTreeImpl<T> extends RedBlackTree<T> implements IntervalTr
     }
   }
 
+  /**
+   * Removes all nodes from the tree (under write lock). Returned nodes are detached, in the tree order and with offsets of valid nodes
+   * updated by all pending deltas.
+   */
+  @NotNull
+  List<IntervalNode<T>> detachAll() {
+    assertUnderWriteLock();
+    List<IntervalNode<T>> nodes = new ArrayList<>(nodeSize());
+    detachAll(getRoot(), 0, nodes);
+    super.clear();
+    keySize = 0;
+    return nodes;
+  }
+
+  private static <T> void detachAll(@Nullable IntervalNode<T> node, int deltaUpToRootExclusive, @NotNull List<? super IntervalNode<T>> result) {
+    if (node == null) return;
+    // since node is invalid, ignore node.delta
+    int delta = deltaUpToRootExclusive + (node.isValid() ? node.delta : 0);
+    IntervalNode<T> left = node.getLeft();
+    IntervalNode<T> right = node.getRight();
+
+    detachAll(left, delta, result);
+    if (node.isValid() && delta != 0) {
+      node.setIntervalStart(node.intervalStart() + delta);
+      node.setIntervalEnd(node.intervalEnd() + delta);
+    }
+    node.clearDelta();
+    node.setParent(null);
+    node.setLeft(null);
+    node.setRight(null);
+    node.setAttachedToTree(false);
+    result.add(node);
+    detachAll(right, delta, result);
+  }
+
+  /**
+   * Builds the tree (under write lock) from detached valid nodes sorted by start offset and {@link #compareEqualStartIntervals},
+   * merging equal neighbours like {@link #findOrInsert} does. It's linear, so it's cheaper than inserting a lot of nodes one by one.
+   */
+  void attachAll(@NotNull List<? extends IntervalNode<T>> sortedNodes) {
+    assertUnderWriteLock();
+    assert root == null : root;
+    List<IntervalNode<T>> nodes = new ArrayList<>(sortedNodes.size());
+    for (IntervalNode<T> node : sortedNodes) {
+      IntervalNode<T> last = nodes.isEmpty() ? null : nodes.get(nodes.size() - 1);
+      if (last != null && last.intervalStart() == node.intervalStart() && compareEqualStartIntervals(last, node) == 0) {
+        last.addIntervalsFrom(node);
+        continue;
+      }
+      node.setValid(true);
+      node.clearDelta();
+      node.setAttachedToTree(true);
+      keySize += node.intervals.size();
+      nodes.add(node);
+    }
+    buildFromSorted(nodes);
+    correctMaxOfSubtree(getRoot());
+    checkMax(true);
+  }
+
+  private void correctMaxOfSubtree(@Nullable IntervalNode<T> node) {
+    if (node == null) return;
+    correctMaxOfSubtree(node.getLeft());
+    correctMaxOfSubtree(node.getRight());
+    correctMax(node, 0);
+  }
+
   // run under write lock
   void removeNode(@NotNull IntervalNode<T> node) {
     deleteNode(node);
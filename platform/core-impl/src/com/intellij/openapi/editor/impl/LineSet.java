@@ -32,19 +32,30 @@ import java.util.Arrays;
  * Data structure specialized for working with document text lines, i.e. stores information about line mapping to document
  * offsets and provides convenient ways to work with that information like retrieving target line by document offset etc.
  * <p/>
+ * Lines are kept in blocks of about {@link #BLOCK_SIZE} lines, each block has an offset shift which is added to all its line starts.
+ * An update copies only the blocks touched by the change and adjusts shifts of the following ones, the rest of the blocks are
+ * shared with the previous version, so changes in documents with millions of lines don't copy all line data.
+ * <p/>
  * Immutable.
  */
 public class LineSet{
   private static final int MODIFIED_MASK = 0x4;
   private static final int SEPARATOR_MASK = 0x3;
 
-  private final int[] myStarts;
-  private final byte[] myFlags; // MODIFIED_MASK bit is for is/setModified(line); SEPARATOR_MASK 2 bits stores line separator length: 0..2
+  private static final int BLOCK_SIZE = 1024;
+  private static final int[] NO_LINES = {0};
+
+  private final int[][] myStarts; // line starts inside a block, myShifts[block] should be added to get the offset
+  private final byte[][] myFlags; // MODIFIED_MASK bit is for is/setModified(line); SEPARATOR_MASK 2 bits stores line separator length: 0..2
+  private final int[] myShifts;
+  private final int[] myBlockLines; // index of the first line of each block, followed by the total number of lines
   private final int myLength;
 
-  private LineSet(int[] starts, byte[] flags, int length) {
+  private LineSet(int[][] starts, byte[][] flags, int[] shifts, int[] blockLines, int length) {
     myStarts = starts;
     myFlags = flags;
+    myShifts = shifts;
+    myBlockLines = blockLines;
     myLength = length;
   }
 
@@ -63,7 +74,36 @@ public class LineSet{
       flags.add((byte) (lineTokenizer.getLineSeparatorLength() | (markModified ? MODIFIED_MASK : 0)));
       lineTokenizer.advance();
     }
-    return new LineSet(starts.toNativeArray(), flags.toNativeArray(), text.length());
+
+    int blockCount = getBlockCount(starts.size());
+    int[][] startBlocks = new int[blockCount][];
+    byte[][] flagBlocks = new byte[blockCount][];
+    int[] blockLines = new int[blockCount + 1];
+    splitIntoBlocks(starts, flags, startBlocks, flagBlocks, blockLines, 0, 0);
+    return new LineSet(startBlocks, flagBlocks, new int[blockCount], blockCount == 0 ? NO_LINES : blockLines, text.length());
+  }
+
+  private static int getBlockCount(int lineCount) {
+    return lineCount == 0 ? 0 : Math.max(1, lineCount / BLOCK_SIZE);
+  }
+
+  /**
+   * Splits lines into {@link #getBlockCount} blocks of equal size, i.e. each block has from BLOCK_SIZE to 2 * BLOCK_SIZE lines
+   * unless there are fewer lines in total
+   */
+  private static void splitIntoBlocks(@NotNull TIntArrayList starts, @NotNull TByteArrayList flags,
+                                      int[][] startBlocks, byte[][] flagBlocks, int[] blockLines, int firstBlock, int firstLine) {
+    int lineCount = starts.size();
+    int blockCount = getBlockCount(lineCount);
+    int from = 0;
+    for (int i = 0; i < blockCount; i++) {
+      int to = (int)((long)lineCount * (i + 1) / blockCount);
+      startBlocks[firstBlock + i] = starts.toNativeArray(from, to - from);
+      flagBlocks[firstBlock + i] = flags.toNativeArray(from, to - from);
+      blockLines[firstBlock + i] = firstLine + from;
+      from = to;
+    }
+    blockLines[firstBlock + blockCount] = firstLine + lineCount;
   }
 
   @NotNull
@@ -106,71 +146,132 @@ public class LineSet{
 
   @NotNull
   private LineSet updateInsideOneLine(int line, int lengthDelta) {
-    int[] starts = myStarts.clone();
-    for (int i = line + 1; i < starts.length; i++) {
-      starts[i] += lengthDelta;
+    int block = findBlock(line);
+    int index = line - myBlockLines[block];
+
+    int[][] starts = myStarts.clone();
+    int[] blockStarts = starts[block] = myStarts[block].clone();
+    for (int i = index + 1; i < blockStarts.length; i++) {
+      blockStarts[i] += lengthDelta;
+    }
+    int[] shifts = myShifts.clone();
+    for (int i = block + 1; i < shifts.length; i++) {
+      shifts[i] += lengthDelta;
     }
 
-    byte[] flags = myFlags.clone();
-    flags[line] |= MODIFIED_MASK;
-    return new LineSet(starts, flags, myLength + lengthDelta);
+    byte[][] flags = myFlags;
+    if (!BitUtil.isSet(myFlags[block][index], MODIFIED_MASK)) {
+      flags = myFlags.clone();
+      flags[block] = myFlags[block].clone();
+      flags[block][index] |= MODIFIED_MASK;
+    }
+    return new LineSet(starts, flags, shifts, myBlockLines, myLength + lengthDelta);
   }
 
   private LineSet genericUpdate(int startOffset, int endOffset, CharSequence replacement) {
     int startLine = findLineIndex(startOffset);
     int endLine = findLineIndex(endOffset);
+    int lineCount = getStoredLineCount();
 
     LineSet patch = createLineSet(replacement, true);
+    int patchLineCount = patch.getStoredLineCount();
 
     int lengthShift = patch.myLength - (endOffset - startOffset);
 
     int startLineStart = getLineStart(startLine);
-    boolean addStartLine = startOffset - startLineStart > 0 || patch.myStarts.length > 0 || endOffset < myLength;
-    boolean addEndLine = endOffset < myLength && patch.myLength > 0 && patch.getSeparatorLength(patch.myStarts.length - 1) > 0;
-    int newLineCount = startLine + (addStartLine ? 1 : 0) +
-                       Math.max(patch.myStarts.length - 1, 0) +
-                       (addEndLine ? 1 : 0) + Math.max(myStarts.length - endLine - 1, 0);
-
-    int[] starts = new int[newLineCount];
-    byte[] flags = new byte[newLineCount];
-
-    if (startLine > 0) {
-      System.arraycopy(myStarts, 0, starts, 0, startLine);
-      System.arraycopy(myFlags, 0, flags, 0, startLine);
+    boolean addStartLine = startOffset - startLineStart > 0 || patchLineCount > 0 || endOffset < myLength;
+    boolean addEndLine = endOffset < myLength && patch.myLength > 0 && patch.getSeparatorLength(patchLineCount - 1) > 0;
+
+    // the blocks containing changed lines (and the line before them, its flags may be changed) are rebuilt, others are reused
+    int firstBlock = findBlock(Math.max(startLine - 1, 0));
+    int nextBlock = findBlock(Math.min(endLine + 1, lineCount) - 1) + 1;
+    int firstLine = myBlockLines[firstBlock];
+
+    TIntArrayList starts = new TIntArrayList();
+    TByteArrayList flags = new TByteArrayList();
+    for (int i = firstLine; i < startLine; i++) {
+      starts.add(getStoredLineStart(i));
+      flags.add(getFlags(i));
     }
 
-    int toIndex = startLine;
     if (addStartLine) {
-      starts[toIndex] = startLineStart;
-      flags[toIndex] = patch.myStarts.length > 0 ? patch.myFlags[0] : MODIFIED_MASK;
-      toIndex++;
+      starts.add(startLineStart);
+      flags.add(patchLineCount > 0 ? patch.getFlags(0) : MODIFIED_MASK);
     }
 
-    toIndex = patch.shiftData(starts, flags, 1, toIndex, patch.myStarts.length - 1, startOffset);
+    for (int i = 1; i < patchLineCount; i++) {
+      starts.add(patch.getStoredLineStart(i) + startOffset);
+      flags.add(patch.getFlags(i));
+    }
 
     if (endOffset < myLength) {
       if (addEndLine) {
-        starts[toIndex] = endOffset + lengthShift;
-        flags[toIndex] = (byte) (myFlags[endLine] | MODIFIED_MASK);
-        toIndex++;
-      } else if (toIndex > 0) {
-        flags[toIndex - 1] = (byte) (myFlags[endLine] | MODIFIED_MASK);
+        starts.add(endOffset + lengthShift);
+        flags.add((byte) (getFlags(endLine) | MODIFIED_MASK));
+      } else if (!flags.isEmpty()) {
+        flags.set(flags.size() - 1, (byte) (getFlags(endLine) | MODIFIED_MASK));
+      }
+    }
+
+    for (int i = endLine + 1; i < myBlockLines[nextBlock]; i++) {
+      starts.add(getStoredLineStart(i) + lengthShift);
+      flags.add(getFlags(i));
+    }
+    // don't leave small blocks behind
+    while (starts.size() < BLOCK_SIZE / 2 && nextBlock < myStarts.length) {
+      for (int i = myBlockLines[nextBlock]; i < myBlockLines[nextBlock + 1]; i++) {
+        starts.add(getStoredLineStart(i) + lengthShift);
+        flags.add(getFlags(i));
       }
+      nextBlock++;
     }
 
-    shiftData(starts, flags, endLine + 1, toIndex, myStarts.length - (endLine + 1), lengthShift);
+    int newBlocks = getBlockCount(starts.size());
+    int blockCount = firstBlock + newBlocks + myStarts.length - nextBlock;
+    int[][] startBlocks = new int[blockCount][];
+    byte[][] flagBlocks = new byte[blockCount][];
+    int[] shifts = new int[blockCount];
+    int[] blockLines = new int[blockCount + 1];
+
+    System.arraycopy(myStarts, 0, startBlocks, 0, firstBlock);
+    System.arraycopy(myFlags, 0, flagBlocks, 0, firstBlock);
+    System.arraycopy(myShifts, 0, shifts, 0, firstBlock);
+    System.arraycopy(myBlockLines, 0, blockLines, 0, firstBlock);
+
+    splitIntoBlocks(starts, flags, startBlocks, flagBlocks, blockLines, firstBlock, firstLine);
+
+    int lineShift = firstLine + starts.size() - myBlockLines[nextBlock];
+    for (int from = nextBlock, to = firstBlock + newBlocks; from < myStarts.length; from++, to++) {
+      startBlocks[to] = myStarts[from];
+      flagBlocks[to] = myFlags[from];
+      shifts[to] = myShifts[from] + lengthShift;
+      blockLines[to + 1] = myBlockLines[from + 1] + lineShift;
+    }
 
-    return new LineSet(starts, flags, myLength + lengthShift);
+    return new LineSet(startBlocks, flagBlocks, shifts, blockCount == 0 ? NO_LINES : blockLines, myLength + lengthShift);
   }
 
-  private int shiftData(int[] dstStarts, byte[] dstFlags, int srcOffset, int dstOffset, int count, int offsetDelta) {
-    if (count < 0) return dstOffset;
+  /**
+   * @return index of the block containing the given stored line
+   */
+  private int findBlock(int line) {
+    if (myStarts.length == 1) return 0;
+    int bsResult = Arrays.binarySearch(myBlockLines, 0, myStarts.length, line);
+    return bsResult >= 0 ? bsResult : -bsResult - 2;
+  }
 
-    System.arraycopy(myFlags, srcOffset, dstFlags, dstOffset, count);
-    for (int i = 0; i < count; i++) {
-      dstStarts[dstOffset + i] = myStarts[srcOffset + i] + offsetDelta;
-    }
-    return dstOffset + count;
+  private int getStoredLineCount() {
+    return myBlockLines[myStarts.length];
+  }
+
+  private int getStoredLineStart(int line) {
+    int block = findBlock(line);
+    return myStarts[block][line - myBlockLines[block]] + myShifts[block];
+  }
+
+  private byte getFlags(int line) {
+    int block = findBlock(line);
+    return myFlags[block][line - myBlockLines[block]];
   }
 
   public int findLineIndex(int offset) {
@@ -180,8 +281,21 @@ public class LineSet{
     if (myLength == 0) return 0;
     if (offset == myLength) return getLineCount() - 1;
 
-    int bsResult = Arrays.binarySearch(myStarts, offset);
-    return bsResult >= 0 ? bsResult : -bsResult - 2;
+    // the first line of the text starts at 0, so there is always a block starting before the offset
+    int low = 0;
+    int high = myStarts.length - 1;
+    while (low < high) {
+      int mid = (low + high + 1) >>> 1;
+      if (myStarts[mid][0] + myShifts[mid] <= offset) {
+        low = mid;
+      }
+      else {
+        high = mid - 1;
+      }
+    }
+
+    int bsResult = Arrays.binarySearch(myStarts[low], offset - myShifts[low]);
+    return myBlockLines[low] + (bsResult >= 0 ? bsResult : -bsResult - 2);
   }
 
   @NotNull
@@ -191,11 +305,11 @@ public class LineSet{
 
   public final int getLineStart(int index) {
     checkLineIndex(index);
-    return isLastEmptyLine(index) ? myLength : myStarts[index];
+    return isLastEmptyLine(index) ? myLength : getStoredLineStart(index);
   }
 
   private boolean isLastEmptyLine(int index) {
-    return index == myFlags.length && hasEol(index - 1);
+    return index == getStoredLineCount() && hasEol(index - 1);
   }
 
   private boolean hasEol(int lineIndex) {
@@ -204,7 +318,7 @@ public class LineSet{
 
   public final int getLineEnd(int index) {
     checkLineIndex(index);
-    return index >= myStarts.length - 1 ? myLength : myStarts[index + 1];
+    return index >= getStoredLineCount() - 1 ? myLength : getStoredLineStart(index + 1);
   }
 
   private void checkLineIndex(int index) {
@@ -215,7 +329,7 @@ public class LineSet{
 
   final boolean isModified(int index) {
     checkLineIndex(index);
-    return !isLastEmptyLine(index) && BitUtil.isSet(myFlags[index], MODIFIED_MASK);
+    return !isLastEmptyLine(index) && BitUtil.isSet(getFlags(index), MODIFIED_MASK);
   }
 
   @NotNull
@@ -228,12 +342,14 @@ public class LineSet{
       if (isLastEmptyLine(index) || isModified(index)) return this;
     }
 
-    byte[] flags = myFlags.clone();
+    byte[][] flags = myFlags.clone();
     for (int i=0; i<indices.size();i++) {
       int index = indices.get(i);
-      flags[index] |= MODIFIED_MASK;
+      int block = findBlock(index);
+      if (flags[block] == myFlags[block]) flags[block] = myFlags[block].clone();
+      flags[block][index - myBlockLines[block]] |= MODIFIED_MASK;
     }
-    return new LineSet(myStarts, flags, myLength);
+    return new LineSet(myStarts, flags, myShifts, myBlockLines, myLength);
   }
 
   @NotNull
@@ -247,11 +363,15 @@ public class LineSet{
     if (isLastEmptyLine(endLine - 1)) endLine--;
     if (startLine >= endLine) return this;
 
-    byte[] flags = myFlags.clone();
-    for (int i = startLine; i < endLine; i++) {
-      flags[i] &= ~MODIFIED_MASK;
+    byte[][] flags = myFlags.clone();
+    for (int block = findBlock(startLine); block < flags.length && myBlockLines[block] < endLine; block++) {
+      int blockStart = myBlockLines[block];
+      byte[] blockFlags = flags[block] = myFlags[block].clone();
+      for (int i = Math.max(startLine, blockStart); i < Math.min(endLine, myBlockLines[block + 1]); i++) {
+        blockFlags[i - blockStart] &= ~MODIFIED_MASK;
+      }
     }
-    return new LineSet(myStarts, flags, myLength);
+    return new LineSet(myStarts, flags, myShifts, myBlockLines, myLength);
   }
 
   @NotNull
@@ -265,11 +385,12 @@ public class LineSet{
   }
 
   private int getSeparatorLengthUnsafe(int index) {
-    return index < myFlags.length ? myFlags[index] & SEPARATOR_MASK : 0;
+    return index < getStoredLineCount() ? getFlags(index) & SEPARATOR_MASK : 0;
   }
 
   final int getLineCount() {
-    return myStarts.length + (isLastEmptyLine(myStarts.length) ? 1 : 0);
+    int count = getStoredLineCount();
+    return count + (isLastEmptyLine(count) ? 1 : 0);
   }
 
   int getLength() {
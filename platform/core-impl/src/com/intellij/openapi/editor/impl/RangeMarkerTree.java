@@ -13,6 +13,7 @@ import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -66,6 +67,7 @@ class RangeMarkerTree<T extends RangeMarkerEx> extends IntervalTreeImpl<T> imple
     document.removeDocumentListener(this);
   }
 
+  private static final int REBUILD_THRESHOLD = 1000; // min number of nodes affected by a change to build the tree anew instead of re-inserting them
   private static final int DUPLICATE_LIMIT = 30; // assertion: no more than DUPLICATE_LIMIT range markers are allowed to be registered at given (start, end)
   @NotNull
   @Override
@@ -171,7 +173,10 @@ class RangeMarkerTree<T extends RangeMarkerEx> extends IntervalTreeImpl<T> imple
       collectAffectedMarkersAndShiftSubtrees(getRoot(), e, affected);
       checkMax(false);
 
-      if (!affected.isEmpty()) {
+      if (affected.size() >= REBUILD_THRESHOLD && affected.size() > nodeSize() / 8) {
+        updateAllMarkersAndRebuild(e);
+      }
+      else if (!affected.isEmpty()) {
         // reverse direction to visit leaves first - it's cheaper to compute maxEndOf for them first
         for (int i = affected.size() - 1; i >= 0; i--) {
           IntervalNode<T> node = affected.get(i);
@@ -228,6 +233,67 @@ class RangeMarkerTree<T extends RangeMarkerEx> extends IntervalTreeImpl<T> imple
     }
   }
 
+  /**
+   * Updates markers affected by a change which touches a large part of the tree (e.g. whole text replacement after reformat)
+   * and builds the tree anew instead of removing and re-inserting every affected node.
+   */
+  private void updateAllMarkersAndRebuild(@NotNull DocumentEvent e) {
+    List<IntervalNode<T>> nodes = detachAll();
+    List<IntervalNode<T>> unaffected = new ArrayList<>(nodes.size());
+    List<IntervalNode<T>> changed = new ArrayList<>();
+    for (IntervalNode<T> node : nodes) {
+      if (node.isValid() && node.hasAliveKey(false)) {
+        unaffected.add(node); // the tree order is preserved, they were either shifted all together or not moved at all
+        continue;
+      }
+
+      node.setValid(true);
+      List<Getter<T>> keys = node.intervals;
+      RangeMarkerImpl marker = null;
+      for (int i = keys.size() - 1; i >= 0; i--) {
+        Getter<T> key = keys.get(i);
+        marker = (RangeMarkerImpl)key.get();
+        if (marker != null) {
+          if (!marker.isValid()) {
+            // marker can become invalid on its own, e.g. FoldRegion
+            node.removeIntervalInternal(i);
+            marker = null;
+            continue;
+          }
+          break;
+        }
+      }
+      if (marker == null) continue; // node remains removed from the tree
+      marker.documentChanged(e);
+      if (marker.isValid()) {
+        changed.add(node);
+      }
+      else {
+        node.setValid(false);
+        ((RMNode)node).onRemoved();
+      }
+    }
+
+    Comparator<IntervalNode<T>> comparator = (n1, n2) -> {
+      int d = n1.intervalStart() - n2.intervalStart();
+      return d != 0 ? d : compareEqualStartIntervals(n1, n2);
+    };
+    changed.sort(comparator);
+
+    List<IntervalNode<T>> sorted = new ArrayList<>(unaffected.size() + changed.size());
+    int i = 0;
+    int j = 0;
+    while (i < unaffected.size() || j < changed.size()) {
+      if (j == changed.size() || i < unaffected.size() && comparator.compare(unaffected.get(i), changed.get(j)) <= 0) {
+        sorted.add(unaffected.get(i++));
+      }
+      else {
+        sorted.add(changed.get(j++));
+      }
+    }
+    attachAll(sorted);
+  }
+
   private void findOrInsertWithIntervals(IntervalNode<T> node) {
     IntervalNode<T> insertedNode = findOrInsert(node);
     // can change if two range become the one
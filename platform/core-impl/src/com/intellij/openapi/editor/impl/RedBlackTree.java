@@ -20,6 +20,7 @@ import com.intellij.util.Processor;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 
 
@@ -457,4 +458,36 @@ public abstract class RedBlackTree<K> extends AtomicInteger {
     root = null;
     nodeSize = 0;
   }
+
+  /**
+   * Replaces the tree content with the given distinct detached nodes sorted in the tree order. Builds balanced tree in linear time.
+   */
+  void buildFromSorted(@NotNull List<? extends Node<K>> nodes) {
+    incModCount();
+
+    root = buildFromSorted(nodes, 0, nodes.size() - 1, null, 0, computeRedLevel(nodes.size()));
+    nodeSize = nodes.size();
+    verifyProperties();
+  }
+
+  private static <K> Node<K> buildFromSorted(@NotNull List<? extends Node<K>> nodes, int lo, int hi, @Nullable Node<K> parent,
+                                             int level, int redLevel) {
+    if (hi < lo) return null;
+    int mid = (lo + hi) >>> 1;
+    Node<K> node = nodes.get(mid);
+    node.setParent(parent);
+    node.setLeft(buildFromSorted(nodes, lo, mid - 1, node, level + 1, redLevel));
+    node.setRight(buildFromSorted(nodes, mid + 1, hi, node, level + 1, redLevel));
+    // only the nodes on the deepest level (which may be incomplete) are red, so all paths have the same number of black nodes
+    node.setColor(level != redLevel);
+    return node;
+  }
+
+  private static int computeRedLevel(int size) {
+    int level = 0;
+    for (int m = size - 1; m >= 0; m = m / 2 - 1) {
+      level++;
+    }
+    return level;
+  }
 }
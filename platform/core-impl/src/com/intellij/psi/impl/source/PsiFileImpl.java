@@ -686,11 +686,21 @@ public abstract class PsiFileImpl extends ElementBase implements PsiFileEx, PsiF
     if (isKeepTreeElementByHardReference()) {
       return treeElement;
     }
-    return myManager.isBatchFilesProcessingMode()
+    return myManager.isBatchFilesProcessingMode() || isUnopenedArchivedFile()
                  ? new PatchedWeakReference<>(treeElement)
                  : new SoftReference<>(treeElement);
   }
 
+  /**
+   * Files from archives (e.g. library sources in jars) without a loaded document are mostly visited briefly by navigation or resolve,
+   * so their trees shouldn't stay in the heap until it's almost full. Their PSI survives reparse through the stub-based spine.
+   * Read-only local files aren't included: all project sources are read-only in some VCS checkouts.
+   */
+  private boolean isUnopenedArchivedFile() {
+    VirtualFile vFile = getViewProvider().getVirtualFile();
+    return vFile.getFileSystem().isReadOnly() && FileDocumentManager.getInstance().getCachedDocument(vFile) == null;
+  }
+
   @Override
   public final PsiManager getManager() {
     return myManager;
@@ -16,8 +16,10 @@
 
 package com.intellij.psi.impl.source.resolve;
 
+import com.intellij.openapi.Disposable;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.components.ServiceManager;
+import com.intellij.openapi.diagnostic.Logger;
 import com.intellij.openapi.progress.ProgressIndicatorProvider;
 import com.intellij.openapi.project.Project;
 import com.intellij.openapi.util.Pair;
@@ -29,6 +31,7 @@ import com.intellij.psi.impl.AnyPsiChangeListener;
 import com.intellij.psi.impl.PsiManagerImpl;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.ObjectUtils;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.ConcurrentWeakKeySoftValueHashMap;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.messages.MessageBus;
@@ -39,9 +42,12 @@ import java.lang.ref.ReferenceQueue;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicReferenceArray;
 
-public class ResolveCache {
+public class ResolveCache implements Disposable {
+  private static final Logger LOG = Logger.getInstance(ResolveCache.class);
   private final AtomicReferenceArray<Map> myPhysicalMaps = new AtomicReferenceArray<>(4); //boolean incompleteCode, boolean isPoly
   private final AtomicReferenceArray<Map> myNonPhysicalMaps = new AtomicReferenceArray<>(4); //boolean incompleteCode, boolean isPoly
+  @Nullable private volatile ResolveCacheStatistics myStatistics =
+    SystemProperties.getBooleanProperty("idea.resolve.cache.statistics", false) ? new ResolveCacheStatistics() : null;
 
   public static ResolveCache getInstance(Project project) {
     ProgressIndicatorProvider.checkCanceled(); // We hope this method is being called often enough to cancel daemon processes smoothly
@@ -114,15 +120,50 @@ public class ResolveCache {
   }
 
   public void clearCache(boolean isPhysical) {
+    int dropped = 0;
     if (isPhysical) {
-      clearArray(myPhysicalMaps);
+      dropped += clearArray(myPhysicalMaps);
+    }
+    dropped += clearArray(myNonPhysicalMaps);
+
+    ResolveCacheStatistics statistics = myStatistics;
+    if (statistics != null && dropped > 0) {
+      statistics.cleared(dropped);
     }
-    clearArray(myNonPhysicalMaps);
   }
 
-  private static void clearArray(AtomicReferenceArray<?> array) {
+  // returns the number of dropped results
+  private static int clearArray(AtomicReferenceArray<Map> array) {
+    int dropped = 0;
     for (int i = 0; i < array.length(); i++) {
-      array.set(i, null);
+      Map map = array.getAndSet(i, null);
+      if (map != null) {
+        dropped += map.size();
+      }
+    }
+    return dropped;
+  }
+
+  /**
+   * Starts collecting new statistics of the cache or stops collecting them
+   */
+  public void setStatisticsEnabled(boolean enabled) {
+    myStatistics = enabled ? new ResolveCacheStatistics() : null;
+  }
+
+  /**
+   * @return statistics collected since they were enabled, or null when they aren't collected
+   */
+  @Nullable
+  public ResolveCacheStatistics getStatistics() {
+    return myStatistics;
+  }
+
+  @Override
+  public void dispose() {
+    ResolveCacheStatistics statistics = myStatistics;
+    if (statistics != null) {
+      LOG.debug(statistics.toString());
     }
   }
 
@@ -140,13 +181,17 @@ public class ResolveCache {
     int index = getIndex(incompleteCode, isPoly);
     Map<TRef, TResult> map = getMap(isPhysical, index);
     TResult result = map.get(ref);
+    ResolveCacheStatistics statistics = myStatistics;
     if (result != null) {
+      if (statistics != null) statistics.hit(ref.getClass());
       return result;
     }
 
+    long start = statistics == null ? 0 : System.nanoTime();
     RecursionGuard.StackStamp stamp = RecursionManager.markStack();
     result = needToPreventRecursion ? RecursionManager.doPreventingRecursion(Trinity.create(ref, incompleteCode, isPoly), true,
                                                                     () -> resolver.resolve(ref, incompleteCode)) : resolver.resolve(ref, incompleteCode);
+    if (statistics != null) statistics.miss(ref.getClass(), System.nanoTime() - start);
     if (result instanceof ResolveResult) {
       ensureValidPsi((ResolveResult)result);
     }
@@ -193,13 +238,17 @@ public class ResolveCache {
     int index = getIndex(incompleteCode, true);
     Map<T, ResolveResult[]> map = getMap(physical, index);
     ResolveResult[] result = map.get(ref);
+    ResolveCacheStatistics statistics = myStatistics;
     if (result != null) {
+      if (statistics != null) statistics.hit(ref.getClass());
       return result;
     }
 
+    long start = statistics == null ? 0 : System.nanoTime();
     RecursionGuard.StackStamp stamp = RecursionManager.markStack();
     result = needToPreventRecursion ? RecursionManager.doPreventingRecursion(Pair.create(ref, incompleteCode), true,
                                                                     () -> resolver.resolve(ref, containingFile, incompleteCode)) : resolver.resolve(ref, containingFile, incompleteCode);
+    if (statistics != null) statistics.miss(ref.getClass(), System.nanoTime() - start);
     if (result != null) {
       ensureValidResults(result);
     }
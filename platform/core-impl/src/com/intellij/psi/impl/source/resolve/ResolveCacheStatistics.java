@@ -0,0 +1,112 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.psi.impl.source.resolve;
+
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hits, misses and time spent resolving on misses of {@link ResolveCache}, per reference class, and the number of results dropped
+ * when the cache is cleared after PSI changes. Collected only when enabled by {@link ResolveCache#setStatisticsEnabled(boolean)}
+ * or {@code idea.resolve.cache.statistics} property, e.g. to find out which references are resolved again and again while highlighting.
+ * Statistics collected for a project are logged at debug level when it's closed.
+ */
+public final class ResolveCacheStatistics {
+  private final ConcurrentMap<Class<?>, Counters> myCounters = ContainerUtil.newConcurrentMap();
+  private final AtomicLong myClearCount = new AtomicLong();
+  private final AtomicLong myDroppedResultCount = new AtomicLong();
+
+  public static final class Counters {
+    private final AtomicLong myHits = new AtomicLong();
+    private final AtomicLong myMisses = new AtomicLong();
+    private final AtomicLong myResolveTimeNanos = new AtomicLong();
+
+    public long getHits() {
+      return myHits.get();
+    }
+
+    public long getMisses() {
+      return myMisses.get();
+    }
+
+    /**
+     * @return total time spent computing results which weren't cached, including resolve of other references it needed
+     */
+    public long getResolveTimeNanos() {
+      return myResolveTimeNanos.get();
+    }
+
+    @Override
+    public String toString() {
+      long hits = getHits();
+      long total = hits + getMisses();
+      return "hits=" + hits + ", misses=" + getMisses() + ", hit rate=" + (total == 0 ? 0 : hits * 100 / total) + "%" +
+             ", resolve time=" + TimeUnit.NANOSECONDS.toMillis(getResolveTimeNanos()) + "ms";
+    }
+  }
+
+  ResolveCacheStatistics() {
+  }
+
+  @NotNull
+  private Counters getCounters(@NotNull Class<?> refClass) {
+    Counters counters = myCounters.get(refClass);
+    return counters != null ? counters : myCounters.computeIfAbsent(refClass, __ -> new Counters());
+  }
+
+  void hit(@NotNull Class<?> refClass) {
+    getCounters(refClass).myHits.incrementAndGet();
+  }
+
+  void miss(@NotNull Class<?> refClass, long resolveTimeNanos) {
+    Counters counters = getCounters(refClass);
+    counters.myMisses.incrementAndGet();
+    counters.myResolveTimeNanos.addAndGet(resolveTimeNanos);
+  }
+
+  void cleared(int droppedResults) {
+    myClearCount.incrementAndGet();
+    myDroppedResultCount.addAndGet(droppedResults);
+  }
+
+  /**
+   * @return counters per class of resolved references
+   */
+  @NotNull
+  public Map<Class<?>, Counters> getCounters() {
+    return Collections.unmodifiableMap(myCounters);
+  }
+
+  /**
+   * @return how many times a non-empty cache was cleared
+   */
+  public long getClearCount() {
+    return myClearCount.get();
+  }
+
+  /**
+   * @return how many cached results were dropped by clearing
+   */
+  public long getDroppedResultCount() {
+    return myDroppedResultCount.get();
+  }
+
+  @Override
+  public String toString() {
+    List<Map.Entry<Class<?>, Counters>> entries = new ArrayList<>(myCounters.entrySet());
+    entries.sort((e1, e2) -> Long.compare(e2.getValue().getResolveTimeNanos(), e1.getValue().getResolveTimeNanos()));
+    StringBuilder result = new StringBuilder();
+    result.append("Resolve cache cleared ").append(getClearCount()).append(" times, dropped ").append(getDroppedResultCount()).append(" results");
+    for (Map.Entry<Class<?>, Counters> entry : entries) {
+      result.append("\n  ").append(entry.getKey().getName()).append(": ").append(entry.getValue());
+    }
+    return result.toString();
+  }
+}
@@ -28,7 +28,7 @@ import java.util.*;
 /**
  * @author Eugene Zhuravlev
  */
-public final class TodoIndex extends FileBasedIndexExtension<TodoIndexEntry, Integer> {
+public final class TodoIndex extends FileBasedIndexExtension<TodoIndexEntry, Integer> implements SettingsDependentIndex {
   @NonNls
   public static final ID<TodoIndexEntry, Integer> NAME = ID.create("TodoIndex");
 
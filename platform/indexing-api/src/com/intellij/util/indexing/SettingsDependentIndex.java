@@ -0,0 +1,12 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.indexing;
+
+import org.jetbrains.annotations.ApiStatus;
+
+/**
+ * Marker interface of index whose data depends not only on file content but also on settings which aren't reflected in its version,
+ * e.g. TODO patterns. Data of such index built elsewhere (e.g. prebuilt for the same content on another machine) can't be reused.
+ */
+@ApiStatus.Experimental
+public interface SettingsDependentIndex {
+}
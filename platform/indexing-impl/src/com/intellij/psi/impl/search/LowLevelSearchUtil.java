@@ -21,14 +21,14 @@ import com.intellij.psi.util.PsiTreeUtil;
 import com.intellij.util.ArrayUtilRt;
 import com.intellij.util.ConcurrencyUtil;
 import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.text.MultiStringSearcher;
 import com.intellij.util.text.StringSearcher;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntProcedure;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-import java.util.List;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.ConcurrentMap;
 
 public class LowLevelSearchUtil {
@@ -271,6 +271,47 @@ public class LowLevelSearchUtil {
     return offsets.toNativeArray();
   }
 
+  /**
+   * Finds occurrences of all the searchers in the whole text in one pass and caches them, so the following calls of
+   * {@link #getTextOccurrencesInScope} with these searchers don't scan the text once per searcher
+   */
+  static void cacheTextOccurrences(@NotNull CharSequence text, @NotNull Collection<StringSearcher> searchers) {
+    Map<StringSearcher, int[]> cachedMap = cache.get(text);
+    for (boolean caseSensitive : new boolean[]{true, false}) {
+      List<StringSearcher> toScan = new ArrayList<>();
+      for (StringSearcher searcher : new LinkedHashSet<>(searchers)) {
+        int[] cachedOccurrences = cachedMap == null ? null : cachedMap.get(searcher);
+        if (searcher.isCaseSensitive() == caseSensitive &&
+            (cachedOccurrences == null || cachedOccurrences[0] > 0 || cachedOccurrences[1] < text.length())) {
+          toScan.add(searcher);
+        }
+      }
+      if (toScan.size() < 2) continue; // a single pattern is found faster by StringSearcher itself
+
+      TIntArrayList[] occurrences = new TIntArrayList[toScan.size()];
+      for (int i = 0; i < occurrences.length; i++) {
+        occurrences[i] = new TIntArrayList();
+        occurrences[i].add(0);
+        occurrences[i].add(text.length());
+      }
+      MultiStringSearcher multiSearcher = new MultiStringSearcher(ContainerUtil.map(toScan, StringSearcher::getPattern), caseSensitive);
+      multiSearcher.processOccurrences(text, 0, text.length(), (patternIndex, offset) -> {
+        ProgressManager.checkCanceled();
+        if (checkJavaIdentifier(text, 0, text.length(), toScan.get(patternIndex), offset)) {
+          occurrences[patternIndex].add(offset);
+        }
+        return true;
+      });
+
+      if (cachedMap == null) {
+        cachedMap = ConcurrencyUtil.cacheOrGet(cache, text, ContainerUtil.createConcurrentSoftMap());
+      }
+      for (int i = 0; i < occurrences.length; i++) {
+        cachedMap.put(toScan.get(i), occurrences[i].toNativeArray());
+      }
+    }
+  }
+
   private static boolean checkJavaIdentifier(@NotNull CharSequence text,
                                              int startOffset,
                                              int endOffset,
@@ -687,20 +687,22 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
       }
 
       final Set<String> allWords = new TreeSet<>();
+      final Map<RequestWithProcessor, StringSearcher> searchers = new THashMap<>();
       for (RequestWithProcessor singleRequest : localProcessors.keySet()) {
         ProgressManager.checkCanceled();
         allWords.add(singleRequest.request.word);
+        searchers.put(singleRequest, createSearcher(singleRequest.request));
       }
       progress.setText(PsiBundle.message("psi.search.for.word.progress", getPresentableWordsDescription(allWords)));
 
       if (intersectionCandidateFiles.isEmpty()) {
-        result = processCandidates(localProcessors, restCandidateFiles, progress, restCandidateFiles.size(), 0);
+        result = processCandidates(localProcessors, searchers, restCandidateFiles, progress, restCandidateFiles.size(), 0);
       }
       else {
         int totalSize = restCandidateFiles.size() + intersectionCandidateFiles.size();
-        result = processCandidates(localProcessors, intersectionCandidateFiles, progress, totalSize, 0);
+        result = processCandidates(localProcessors, searchers, intersectionCandidateFiles, progress, totalSize, 0);
         if (result) {
-          result = processCandidates(localProcessors, restCandidateFiles, progress, totalSize, intersectionCandidateFiles.size());
+          result = processCandidates(localProcessors, searchers, restCandidateFiles, progress, totalSize, intersectionCandidateFiles.size());
         }
       }
     }
@@ -712,6 +714,7 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
   }
 
   private <X> boolean processCandidates(@NotNull final Map<X, Processor<? super PsiElement>> localProcessors,
+                                        @NotNull final Map<X, StringSearcher> searchers,
                                         @NotNull final Map<VirtualFile, Collection<X>> candidateFiles,
                                         @NotNull ProgressIndicator progress,
                                         int totalSize,
@@ -720,7 +723,12 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
 
     return processPsiFileRoots(files, totalSize, alreadyProcessedFiles, progress, psiRoot -> {
       final VirtualFile vfile = psiRoot.getVirtualFile();
-      for (final X singleRequest : candidateFiles.get(vfile)) {
+      Collection<X> requests = candidateFiles.get(vfile);
+      if (requests.size() > 1 && !(psiRoot instanceof PsiCompiledElement)) {
+        // find all the words in one pass instead of scanning the file for every request
+        LowLevelSearchUtil.cacheTextOccurrences(psiRoot.getViewProvider().getContents(), ContainerUtil.map(requests, searchers::get));
+      }
+      for (final X singleRequest : requests) {
         ProgressManager.checkCanceled();
         Processor<? super PsiElement> localProcessor = localProcessors.get(singleRequest);
         if (!localProcessor.process(psiRoot)) {
@@ -905,7 +913,7 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
       for (RequestWithProcessor singleRequest : entry.getValue()) {
         ProgressManager.checkCanceled();
         PsiSearchRequest primitive = singleRequest.request;
-        StringSearcher searcher = new StringSearcher(primitive.word, primitive.caseSensitive, true, false);
+        StringSearcher searcher = createSearcher(primitive);
         BulkOccurrenceProcessor adapted = adaptProcessor(primitive, singleRequest.refProcessor);
 
         Processor<PsiElement> localProcessor = localProcessor(progress, searcher, adapted);
@@ -916,6 +924,11 @@ public class PsiSearchHelperImpl implements PsiSearchHelper {
     }
   }
 
+  @NotNull
+  private static StringSearcher createSearcher(@NotNull PsiSearchRequest request) {
+    return new StringSearcher(request.word, request.caseSensitive, true, false);
+  }
+
   private static void registerRequest(@NotNull Collection<RequestWithProcessor> collection,
                                       @NotNull PsiSearchRequest primitive,
                                       @NotNull Processor<? super PsiReference> processor) {
@@ -3,6 +3,7 @@
 package com.intellij.codeInsight.actions;
 
 import com.intellij.codeInsight.CodeInsightBundle;
+import com.intellij.concurrency.JobLauncher;
 import com.intellij.lang.LanguageFormatting;
 import com.intellij.notification.Notification;
 import com.intellij.notification.NotificationType;
@@ -39,7 +40,6 @@ import com.intellij.psi.PsiDocumentManager;
 import com.intellij.psi.PsiFile;
 import com.intellij.util.ExceptionUtil;
 import com.intellij.util.IncorrectOperationException;
-import com.intellij.util.SequentialTask;
 import com.intellij.util.SmartList;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.diff.FilesTooBigForDiffException;
@@ -432,7 +432,10 @@ public abstract class AbstractLayoutCodeProcessor {
     return all;
   }
 
-  private class ReformatFilesTask implements SequentialTask {
+  private static final int FILES_BATCH_SIZE = 32;
+  private static final long EDT_BATCH_TIME_MS = 100;
+
+  private class ReformatFilesTask {
     private final List<AbstractLayoutCodeProcessor> myProcessors;
 
     private final FileRecursiveIterator myFileTreeIterator;
@@ -443,7 +446,6 @@ public abstract class AbstractLayoutCodeProcessor {
     private int myTotalFiles;
     private int myFilesProcessed;
     private boolean myStopFormatting;
-    private PsiFile next;
 
     ReformatFilesTask(@NotNull ProgressIndicator indicator) {
       myFileTreeIterator = ReadAction.compute(() -> build());
@@ -452,12 +454,7 @@ public abstract class AbstractLayoutCodeProcessor {
       myProgressIndicator = indicator;
     }
 
-    @Override
-    public void prepare() {
-    }
-
-    @Override
-    public boolean isDone() {
+    private boolean isDone() {
       return myStopFormatting;
     }
 
@@ -465,43 +462,10 @@ public abstract class AbstractLayoutCodeProcessor {
       myTotalFiles++;
     }
 
-    @Override
-    public boolean iteration() {
-      if (myStopFormatting) {
-        return true;
-      }
-
-      updateIndicatorFraction(myFilesProcessed);
-
-      if (next != null) {
-        PsiFile file = next;
-        myFilesProcessed++;
-
-        if (shouldProcessFile(file)) {
-          updateIndicatorText(ApplicationBundle.message("bulk.reformat.process.progress.text"), getPresentablePath(file));
-          DumbService.getInstance(myProject).withAlternativeResolveEnabled(() -> performFileProcessing(file));
-        }
-      }
-
-      return true;
-    }
-
     private Boolean shouldProcessFile(PsiFile file) {
       return ReadAction.compute(() -> file.isWritable() && canBeFormatted(file) && acceptedByFilters(file));
     }
 
-    private void performFileProcessing(@NotNull PsiFile file) {
-      for (AbstractLayoutCodeProcessor processor : myProcessors) {
-        FutureTask<Boolean> writeTask = ReadAction.compute(() -> processor.prepareTask(file, myProcessChangedTextOnly));
-
-        ProgressIndicatorProvider.checkCanceled();
-
-        ApplicationManager.getApplication().invokeAndWait(() -> WriteCommandAction.runWriteCommandAction(myProject, myCommandName, null, writeTask));
-
-        checkStop(writeTask, file);
-      }
-    }
-
     private void checkStop(FutureTask<Boolean> task, PsiFile file) {
       try {
         if (!task.get() || task.isCancelled()) {
@@ -528,13 +492,8 @@ public abstract class AbstractLayoutCodeProcessor {
       return vFile != null ? ProjectUtil.calcRelativeToProjectPath(vFile, myProject) : file.getName();
     }
 
-    private void updateIndicatorFraction(int processed) {
-      myProgressIndicator.setFraction((double)processed / myTotalFiles);
-    }
-
-    @Override
-    public void stop() {
-      myStopFormatting = true;
+    private void updateIndicatorFraction(double processed) {
+      myProgressIndicator.setFraction(processed / myTotalFiles);
     }
 
     public boolean process() {
@@ -544,11 +503,76 @@ public abstract class AbstractLayoutCodeProcessor {
         return !isDone();
       });
 
-      return myFileTreeIterator.processAll(file -> {
-        next = file;
-        iteration();
+      List<PsiFile> batch = new ArrayList<>(FILES_BATCH_SIZE);
+      myFileTreeIterator.processAll(file -> {
+        batch.add(file);
+        if (batch.size() == FILES_BATCH_SIZE) {
+          processBatch(batch);
+          batch.clear();
+        }
         return !isDone();
       });
+      if (!isDone()) {
+        processBatch(batch);
+      }
+      return !isDone();
+    }
+
+    /**
+     * Loads trees of the files concurrently, then applies processors one by one: a processor prepares its tasks for all files
+     * in background read actions and then runs them in as few EDT events as possible, returning to the background thread
+     * every {@link #EDT_BATCH_TIME_MS} to keep the progress responsive.
+     */
+    private void processBatch(@NotNull List<PsiFile> files) {
+      loadTreesConcurrently(files);
+
+      List<PsiFile> toProcess = ContainerUtil.filter(files, file -> shouldProcessFile(file));
+      int processedBefore = myFilesProcessed;
+      for (int p = 0; p < myProcessors.size() && !isDone(); p++) {
+        AbstractLayoutCodeProcessor processor = myProcessors.get(p);
+        List<FutureTask<Boolean>> tasks = new ArrayList<>(toProcess.size());
+        for (int i = 0; i < toProcess.size(); i++) {
+          PsiFile file = toProcess.get(i);
+          ProgressIndicatorProvider.checkCanceled();
+          updateIndicatorFraction(processedBefore + (double)(p * toProcess.size() + i) / myProcessors.size());
+          updateIndicatorText(ApplicationBundle.message("bulk.reformat.process.progress.text"), getPresentablePath(file));
+          tasks.add(DumbService.getInstance(myProject).computeWithAlternativeResolveEnabled(
+            () -> ReadAction.compute(() -> processor.prepareTask(file, myProcessChangedTextOnly))));
+        }
+        runWriteTasks(toProcess, tasks);
+      }
+      myFilesProcessed = processedBefore + files.size();
+    }
+
+    private void runWriteTasks(@NotNull List<PsiFile> files, @NotNull List<FutureTask<Boolean>> tasks) {
+      int[] index = {0};
+      while (index[0] < tasks.size() && !isDone()) {
+        ProgressIndicatorProvider.checkCanceled();
+        ApplicationManager.getApplication().invokeAndWait(() -> {
+          long deadline = System.currentTimeMillis() + EDT_BATCH_TIME_MS;
+          do {
+            int i = index[0]++;
+            FutureTask<Boolean> task = tasks.get(i);
+            WriteCommandAction.runWriteCommandAction(myProject, myCommandName, null, task);
+            checkStop(task, files.get(i));
+          }
+          while (index[0] < tasks.size() && !isDone() && !myProgressIndicator.isCanceled() && System.currentTimeMillis() < deadline);
+        });
+      }
+    }
+
+    private void loadTreesConcurrently(@NotNull List<PsiFile> files) {
+      if (files.size() < 2) return;
+      JobLauncher.getInstance().invokeConcurrentlyUnderProgress(files, myProgressIndicator, file -> {
+        ReadAction.run(() -> {
+          if (shouldProcessFile(file)) {
+            for (PsiFile root : file.getViewProvider().getAllFiles()) {
+              root.getNode();
+            }
+          }
+        });
+        return true;
+      });
     }
   }
 
@@ -31,6 +31,7 @@ import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.fileEditor.FileEditorManager;
 import com.intellij.openapi.fileEditor.TextEditor;
 import com.intellij.openapi.fileEditor.ex.FileEditorManagerEx;
+import com.intellij.openapi.fileEditor.impl.EditorHistoryManager;
 import com.intellij.openapi.fileEditor.impl.text.AsyncEditorLoader;
 import com.intellij.openapi.fileEditor.impl.text.TextEditorProvider;
 import com.intellij.openapi.fileTypes.FileType;
@@ -53,6 +54,7 @@ import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.*;
 import com.intellij.util.concurrency.EdtExecutorService;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.io.storage.HeavyProcessLatch;
 import com.intellij.util.ui.UIUtil;
 import gnu.trove.THashMap;
@@ -79,6 +81,8 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzerEx implements Pers
   private static final Logger LOG = Logger.getInstance("#com.intellij.codeInsight.daemon.impl.DaemonCodeAnalyzerImpl");
 
   private static final Key<List<HighlightInfo>> FILE_LEVEL_HIGHLIGHTS = Key.create("FILE_LEVEL_HIGHLIGHTS");
+  private static final Key<Long> PREHIGHLIGHTED_PSI_STAMP = Key.create("PREHIGHLIGHTED_PSI_STAMP");
+  private static final int MAX_PREHIGHLIGHTED_EDITORS = 2;
   private final Project myProject;
   private final DaemonCodeAnalyzerSettings mySettings;
   @NotNull private final EditorTracker myEditorTracker;
@@ -280,6 +284,13 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzerEx implements Pers
     Disposer.register(parent, () -> mustWaitForSmartMode = old);
   }
 
+  private volatile boolean prehighlightingInTests;
+  @TestOnly
+  public void enablePrehighlighting(@NotNull Disposable parent) {
+    prehighlightingInTests = true;
+    Disposer.register(parent, () -> prehighlightingInTests = false);
+  }
+
   @TestOnly
   public void runPasses(@NotNull PsiFile file,
                         @NotNull Document document,
@@ -743,6 +754,80 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzerEx implements Pers
     }
   }
 
+  private void schedulePrehighlighting() {
+    if (myDisposed || ApplicationManager.getApplication().isUnitTestMode() && !prehighlightingInTests) return;
+    myAlarm.schedule(this::prehighlightBackgroundEditors, mySettings.getAutoReparseDelay(), TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Runs passes for a few editors in background tabs when everything visible is highlighted, so switching to them shows results at once.
+   * Results are applied to document markup and {@link FileStatusMap} as usual; any restart of the daemon cancels the progress.
+   */
+  private void prehighlightBackgroundEditors() {
+    ApplicationManager.getApplication().assertIsDispatchThread();
+    if (myDisposed ||
+        myProject.isDisposed() ||
+        !isUpdateByTimerEnabled() ||
+        PowerSaveMode.isEnabled() ||
+        isRunning() ||
+        !myUpdateRunnableFuture.isDone() ||
+        ApplicationManager.getApplication().isWriteAccessAllowed() ||
+        ApplicationManager.getApplication().getCurrentModalityState() != ModalityState.NON_MODAL ||
+        myPsiDocumentManager.hasUncommitedDocuments() ||
+        HeavyProcessLatch.INSTANCE.isRunning() ||
+        DumbService.isDumb(myProject)) {
+      return;
+    }
+
+    long psiStamp = PsiModificationTracker.SERVICE.getInstance(myProject).getModificationCount();
+    Map<FileEditor, HighlightingPass[]> passes = new THashMap<>();
+    for (TextEditor textEditor : getEditorsToPrehighlight(psiStamp)) {
+      // the same document isn't tried again until PSI changes, even if some passes don't mark it up-to-date in a background tab
+      textEditor.getEditor().getDocument().putUserData(PREHIGHLIGHTED_PSI_STAMP, psiStamp);
+      BackgroundEditorHighlighter highlighter = textEditor.getBackgroundHighlighter();
+      HighlightingPass[] highlightingPasses = highlighter == null ? TextEditorHighlightingPass.EMPTY_ARRAY : highlighter.createPassesForEditor();
+      if (highlightingPasses.length != 0) {
+        passes.put(textEditor, highlightingPasses);
+        if (passes.size() == MAX_PREHIGHLIGHTED_EDITORS) break;
+      }
+    }
+    if (passes.isEmpty()) return;
+
+    DaemonProgressIndicator progress = createUpdateProgress(passes.keySet(), true);
+    myPassExecutorService.submitPasses(passes, progress);
+  }
+
+  /**
+   * @return editors of files open in background tabs which aren't analyzed yet, most recently used first
+   */
+  @NotNull
+  private List<TextEditor> getEditorsToPrehighlight(long psiStamp) {
+    FileEditorManager fileEditorManager = FileEditorManager.getInstance(myProject);
+    Set<FileEditor> selectedEditors = ContainerUtil.set(fileEditorManager.getSelectedEditors());
+    List<VirtualFile> recentFiles = EditorHistoryManager.getInstance(myProject).getFileList();
+    List<VirtualFile> openFiles = new ArrayList<>(Arrays.asList(fileEditorManager.getOpenFiles()));
+    openFiles.sort(Comparator.comparingInt(file -> -recentFiles.indexOf(file)));
+
+    List<TextEditor> result = new ArrayList<>();
+    for (VirtualFile file : openFiles) {
+      FileEditor[] fileEditors = fileEditorManager.getEditors(file);
+      if (ContainerUtil.exists(fileEditors, selectedEditors::contains)) continue;
+      FileEditor textEditor = ContainerUtil.find(fileEditors, fileEditor -> fileEditor instanceof TextEditor && fileEditor.isValid());
+      if (textEditor == null) continue;
+
+      Document document = ((TextEditor)textEditor).getEditor().getDocument();
+      Long stamp = document.getUserData(PREHIGHLIGHTED_PSI_STAMP);
+      if ((stamp == null || stamp != psiStamp) && !myFileStatusMap.allDirtyScopesAreNull(document)) {
+        result.add((TextEditor)textEditor);
+      }
+    }
+    return result;
+  }
+
+  static boolean isPrehighlighting(@NotNull DaemonProgressIndicator progress) {
+    return progress instanceof MyDaemonProgressIndicator && ((MyDaemonProgressIndicator)progress).myPrehighlighting;
+  }
+
   // made this class static and fields cleareable to avoid leaks when this object stuck in invokeLater queue
   private static class UpdateRunnable implements Runnable {
     private Project myProject;
@@ -817,7 +902,7 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzerEx implements Pers
       // cancel all after calling createPasses() since there are perverts {@link com.intellij.util.xml.ui.DomUIFactoryImpl} who are changing PSI there
       dca.cancelUpdateProgress(true, "Cancel by alarm");
       dca.myUpdateRunnableFuture.cancel(false);
-      DaemonProgressIndicator progress = dca.createUpdateProgress(passes.keySet());
+      DaemonProgressIndicator progress = dca.createUpdateProgress(passes.keySet(), false);
       dca.myPassExecutorService.submitPasses(passes, progress);
     }
 
@@ -827,12 +912,12 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzerEx implements Pers
   }
 
   @NotNull
-  private synchronized DaemonProgressIndicator createUpdateProgress(@NotNull Collection<FileEditor> fileEditors) {
+  private synchronized DaemonProgressIndicator createUpdateProgress(@NotNull Collection<FileEditor> fileEditors, boolean prehighlighting) {
     DaemonProgressIndicator old = myUpdateProgress;
     if (!old.isCanceled()) {
       old.cancel();
     }
-    DaemonProgressIndicator progress = new MyDaemonProgressIndicator(myProject, fileEditors);
+    DaemonProgressIndicator progress = new MyDaemonProgressIndicator(myProject, fileEditors, prehighlighting);
     progress.setModalityProgress(null);
     progress.start();
     myProject.getMessageBus().syncPublisher(DAEMON_EVENT_TOPIC).daemonStarting(fileEditors);
@@ -842,19 +927,25 @@ public class DaemonCodeAnalyzerImpl extends DaemonCodeAnalyzerEx implements Pers
 
   private static class MyDaemonProgressIndicator extends DaemonProgressIndicator {
     private final Project myProject;
+    private final boolean myPrehighlighting;
     private Collection<FileEditor> myFileEditors;
 
-    MyDaemonProgressIndicator(@NotNull Project project, @NotNull Collection<FileEditor> fileEditors) {
+    MyDaemonProgressIndicator(@NotNull Project project, @NotNull Collection<FileEditor> fileEditors, boolean prehighlighting) {
       myFileEditors = fileEditors;
       myProject = project;
+      myPrehighlighting = prehighlighting;
     }
 
     @Override
     public void stopIfRunning() {
+      boolean finished = isRunning() && !isCanceled();
       super.stopIfRunning();
       myProject.getMessageBus().syncPublisher(DAEMON_EVENT_TOPIC).daemonFinished(myFileEditors);
       myFileEditors = null;
       HighlightingSessionImpl.clearProgressIndicator(this);
+      if (finished && !myProject.isDisposed()) {
+        ((DaemonCodeAnalyzerImpl)DaemonCodeAnalyzer.getInstance(myProject)).schedulePrehighlighting();
+      }
     }
   }
 
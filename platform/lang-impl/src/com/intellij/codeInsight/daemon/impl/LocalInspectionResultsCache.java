@@ -0,0 +1,388 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeInspection.FileLocalInspectionTool;
+import com.intellij.codeInspection.InspectionManager;
+import com.intellij.codeInspection.LocalQuickFix;
+import com.intellij.codeInspection.ProblemDescriptor;
+import com.intellij.codeInspection.ProblemHighlightType;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.ide.plugins.IdeaPluginDescriptor;
+import com.intellij.ide.plugins.PluginManager;
+import com.intellij.ide.plugins.PluginManagerCore;
+import com.intellij.openapi.application.ApplicationInfo;
+import com.intellij.openapi.application.PathManager;
+import com.intellij.openapi.Disposable;
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.extensions.PluginId;
+import com.intellij.openapi.util.Disposer;
+import com.intellij.openapi.util.JDOMUtil;
+import com.intellij.openapi.util.ShutDownTracker;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.WriteExternalException;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.psi.PsiElement;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.util.PsiTreeUtil;
+import com.intellij.util.Function;
+import com.intellij.util.SystemProperties;
+import com.intellij.util.io.*;
+import gnu.trove.THashSet;
+import org.jdom.Element;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * On-disk cache of problems found in batch mode by {@link FileLocalInspectionTool}s, so repeated runs, e.g. nightly ones on CI,
+ * analyze only changed files. A key is a hash of the file name, language and text and of the class, settings and plugin version
+ * of every cached tool.
+ * <p>
+ * Every key changes with the file text, so entries not used for {@code idea.batch.inspections.cache.max.age.days} (30 by default)
+ * expire. Removed keys would stay in the map files, so once a quarter of entries expired the map is rebuilt with live ones on open.
+ * <p>
+ * Restored problems have no quick fixes, so the cache is used only when {@code idea.batch.inspections.cache} property is set.
+ */
+final class LocalInspectionResultsCache {
+  private static final Logger LOG = Logger.getInstance(LocalInspectionResultsCache.class);
+  private static final boolean ENABLED = SystemProperties.getBooleanProperty("idea.batch.inspections.cache", false);
+  private static final int VERSION = 2;
+  private static final int MAX_AGE_DAYS = SystemProperties.getIntProperty("idea.batch.inspections.cache.max.age.days", 30);
+
+  private static volatile LocalInspectionResultsCache ourInstance;
+  private static volatile LocalInspectionResultsCache ourTestInstance;
+  private static boolean ourFailedToOpen; // guarded by LocalInspectionResultsCache.class
+
+  private final PersistentHashMap<String, CachedProblems> myMap;
+  private final int myToday;
+  private boolean myClosed; // guarded by this
+
+  static final class Problem {
+    final String toolShortName;
+    final int startOffset; // of the problem element, or of the start element and the end element together
+    final int endOffset;
+    @Nullable final TextRange rangeInElement;
+    final String descriptionTemplate;
+    final ProblemHighlightType highlightType;
+    final boolean afterEndOfLine;
+
+    Problem(@NotNull String toolShortName,
+            int startOffset,
+            int endOffset,
+            @Nullable TextRange rangeInElement,
+            @NotNull String descriptionTemplate,
+            @NotNull ProblemHighlightType highlightType,
+            boolean afterEndOfLine) {
+      this.toolShortName = toolShortName;
+      this.startOffset = startOffset;
+      this.endOffset = endOffset;
+      this.rangeInElement = rangeInElement;
+      this.descriptionTemplate = descriptionTemplate;
+      this.highlightType = highlightType;
+      this.afterEndOfLine = afterEndOfLine;
+    }
+
+    /**
+     * @return problem data or null if the descriptor doesn't point to elements of the file
+     */
+    @Nullable
+    static Problem create(@NotNull String toolShortName, @NotNull ProblemDescriptor descriptor, @NotNull PsiFile file) {
+      PsiElement startElement = descriptor.getStartElement();
+      PsiElement endElement = descriptor.getEndElement();
+      if (startElement == null || endElement == null || startElement.getContainingFile() != file || endElement.getContainingFile() != file) {
+        return null;
+      }
+      TextRange range = startElement.getTextRange().union(endElement.getTextRange());
+      TextRange rangeInElement = startElement == endElement ? descriptor.getTextRangeInElement() : null;
+      return new Problem(toolShortName, range.getStartOffset(), range.getEndOffset(), rangeInElement, descriptor.getDescriptionTemplate(),
+                         descriptor.getHighlightType(), descriptor.isAfterEndOfLine());
+    }
+
+    @NotNull
+    ProblemDescriptor toDescriptor(@NotNull PsiFile file, @NotNull InspectionManager manager) {
+      PsiElement element = PsiTreeUtil.findElementOfClassAtRange(file, startOffset, endOffset, PsiElement.class);
+      TextRange rangeInElement = this.rangeInElement;
+      if (element == null || element.getTextRange().getEndOffset() != endOffset) {
+        element = file;
+        rangeInElement = rangeInElement == null
+                         ? new TextRange(startOffset, endOffset)
+                         : rangeInElement.shiftRight(startOffset);
+      }
+      if (afterEndOfLine) {
+        return manager.createProblemDescriptor(element, descriptionTemplate, LocalQuickFix.EMPTY_ARRAY, highlightType, false, true);
+      }
+      return manager.createProblemDescriptor(element, rangeInElement, descriptionTemplate, highlightType, false);
+    }
+  }
+
+  private static final class CachedProblems {
+    final int lastUsedDay;
+    final List<Problem> problems;
+
+    CachedProblems(int lastUsedDay, @NotNull List<Problem> problems) {
+      this.lastUsedDay = lastUsedDay;
+      this.problems = problems;
+    }
+  }
+
+  private LocalInspectionResultsCache(@NotNull File directory, int today) throws IOException {
+    myToday = today;
+    myMap = IOUtil.openCleanOrResetBroken(() -> openPruned(directory, today), () -> FileUtil.delete(directory));
+  }
+
+  private static int currentDay() {
+    return (int)(System.currentTimeMillis() / TimeUnit.DAYS.toMillis(1));
+  }
+
+  @NotNull
+  private static PersistentHashMap<String, CachedProblems> open(@NotNull File directory) throws IOException {
+    return new PersistentHashMap<>(new File(directory, "problems"), EnumeratorStringDescriptor.INSTANCE, new CachedProblemsExternalizer(),
+                                   4096, VERSION);
+  }
+
+  @NotNull
+  private static PersistentHashMap<String, CachedProblems> openPruned(@NotNull File directory, int today) throws IOException {
+    PersistentHashMap<String, CachedProblems> map = open(directory);
+    File newDirectory = new File(directory.getPath() + ".new");
+    int count;
+    int expired;
+    try {
+      Collection<String> keys = map.getAllKeysWithExistingMapping();
+      Set<String> live = new THashSet<>();
+      for (String key : keys) {
+        CachedProblems value = map.get(key);
+        if (value != null && today - value.lastUsedDay <= MAX_AGE_DAYS) live.add(key);
+      }
+      count = keys.size();
+      expired = count - live.size();
+      if (expired == 0 || expired * 4L < count) return map;
+
+      FileUtil.delete(newDirectory);
+      PersistentHashMap<String, CachedProblems> newMap = open(newDirectory);
+      try {
+        for (String key : live) {
+          newMap.put(key, map.get(key));
+        }
+      }
+      finally {
+        newMap.close();
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      map.close();
+      throw e;
+    }
+    map.close();
+    FileUtil.delete(directory);
+    if (!newDirectory.renameTo(directory)) {
+      throw new IOException("Cannot rename " + newDirectory + " to " + directory);
+    }
+    LOG.info("Inspection results cache rebuilt, " + expired + " of " + count + " entries expired");
+    return open(directory);
+  }
+
+  @Nullable
+  static LocalInspectionResultsCache getInstance() {
+    LocalInspectionResultsCache testCache = ourTestInstance;
+    if (testCache != null) return testCache;
+    if (!ENABLED) return null;
+    LocalInspectionResultsCache cache = ourInstance;
+    if (cache != null) return cache;
+
+    synchronized (LocalInspectionResultsCache.class) {
+      if (ourInstance == null && !ourFailedToOpen) {
+        File directory = new File(PathManager.getSystemPath(), "inspectionResults");
+        try {
+          LocalInspectionResultsCache newCache = new LocalInspectionResultsCache(directory, currentDay());
+          ShutDownTracker.getInstance().registerShutdownTask(newCache::close);
+          ourInstance = newCache;
+        }
+        catch (IOException e) {
+          LOG.warn("Cannot open inspection results cache " + directory, e);
+          ourFailedToOpen = true;
+        }
+      }
+      return ourInstance;
+    }
+  }
+
+  /**
+   * Enables the cache stored in the given directory until the disposable is disposed, closing the cache enabled before.
+   * Entries are used as if it's the given day since the epoch.
+   */
+  @TestOnly
+  static void enableInTests(@NotNull File directory, int today, @NotNull Disposable parentDisposable) throws IOException {
+    LocalInspectionResultsCache previous = ourTestInstance;
+    if (previous != null) previous.close();
+    LocalInspectionResultsCache cache = new LocalInspectionResultsCache(directory, today);
+    ourTestInstance = cache;
+    Disposer.register(parentDisposable, () -> {
+      if (ourTestInstance == cache) ourTestInstance = null;
+      cache.close();
+    });
+  }
+
+  static boolean isCacheable(@NotNull LocalInspectionToolWrapper toolWrapper) {
+    return toolWrapper.getTool() instanceof FileLocalInspectionTool;
+  }
+
+  @NotNull
+  static String computeKey(@NotNull PsiFile file, @NotNull List<? extends LocalInspectionToolWrapper> toolWrappers) {
+    return computeKey(file, toolWrappers, LocalInspectionResultsCache::getPluginVersion);
+  }
+
+  @NotNull
+  static String computeKey(@NotNull PsiFile file,
+                           @NotNull List<? extends LocalInspectionToolWrapper> toolWrappers,
+                           @NotNull Function<? super LocalInspectionToolWrapper, String> pluginVersion) {
+    MessageDigest digest = DigestUtil.sha1();
+    update(digest, file.getName());
+    update(digest, file.getLanguage().getID());
+    update(digest, file.getViewProvider().getContents().toString());
+
+    List<LocalInspectionToolWrapper> sorted = new ArrayList<>(toolWrappers);
+    sorted.sort(Comparator.comparing(LocalInspectionToolWrapper::getShortName));
+    for (LocalInspectionToolWrapper toolWrapper : sorted) {
+      update(digest, toolWrapper.getShortName());
+      update(digest, toolWrapper.getTool().getClass().getName());
+      update(digest, pluginVersion.fun(toolWrapper));
+      update(digest, getSettings(toolWrapper));
+    }
+    return StringUtil.toHexString(digest.digest());
+  }
+
+  private static void update(@NotNull MessageDigest digest, @NotNull String value) {
+    digest.update(value.getBytes(StandardCharsets.UTF_8));
+    digest.update((byte)0);
+  }
+
+  @NotNull
+  private static String getPluginVersion(@NotNull LocalInspectionToolWrapper toolWrapper) {
+    PluginId pluginId = PluginManagerCore.getPluginByClassName(toolWrapper.getTool().getClass().getName());
+    IdeaPluginDescriptor plugin = pluginId == null ? null : PluginManager.getPlugin(pluginId);
+    String version = plugin == null ? null : plugin.getVersion();
+    return version != null ? version : ApplicationInfo.getInstance().getBuild().asString();
+  }
+
+  @NotNull
+  private static String getSettings(@NotNull LocalInspectionToolWrapper toolWrapper) {
+    Element element = new Element("settings");
+    try {
+      toolWrapper.getTool().writeSettings(element);
+    }
+    catch (WriteExternalException e) {
+      LOG.debug(e);
+    }
+    return JDOMUtil.writeElement(element);
+  }
+
+  @Nullable
+  synchronized List<Problem> get(@NotNull String key) {
+    try {
+      CachedProblems value = myMap.get(key);
+      if (value == null) return null;
+      if (value.lastUsedDay != myToday) {
+        myMap.put(key, new CachedProblems(myToday, value.problems));
+      }
+      return value.problems;
+    }
+    catch (IOException e) {
+      LOG.warn("Cannot read inspection results cache", e);
+      return null;
+    }
+  }
+
+  synchronized void put(@NotNull String key, @NotNull List<Problem> problems) {
+    try {
+      myMap.put(key, new CachedProblems(myToday, problems));
+    }
+    catch (IOException e) {
+      LOG.warn("Cannot write inspection results cache", e);
+    }
+  }
+
+  private synchronized void close() {
+    if (myClosed) return;
+    myClosed = true;
+    try {
+      myMap.close();
+    }
+    catch (IOException e) {
+      LOG.warn("Cannot close inspection results cache", e);
+    }
+  }
+
+  private static class CachedProblemsExternalizer implements DataExternalizer<CachedProblems> {
+    private final ProblemsExternalizer myProblemsExternalizer = new ProblemsExternalizer();
+
+    @Override
+    public void save(@NotNull DataOutput out, CachedProblems value) throws IOException {
+      DataInputOutputUtil.writeINT(out, value.lastUsedDay);
+      myProblemsExternalizer.save(out, value.problems);
+    }
+
+    @Override
+    public CachedProblems read(@NotNull DataInput in) throws IOException {
+      int lastUsedDay = DataInputOutputUtil.readINT(in);
+      return new CachedProblems(lastUsedDay, myProblemsExternalizer.read(in));
+    }
+  }
+
+  static class ProblemsExternalizer implements DataExternalizer<List<Problem>> {
+    @Override
+    public void save(@NotNull DataOutput out, List<Problem> problems) throws IOException {
+      DataInputOutputUtil.writeINT(out, problems.size());
+      for (Problem problem : problems) {
+        IOUtil.writeUTF(out, problem.toolShortName);
+        DataInputOutputUtil.writeINT(out, problem.startOffset);
+        DataInputOutputUtil.writeINT(out, problem.endOffset - problem.startOffset);
+        TextRange rangeInElement = problem.rangeInElement;
+        out.writeBoolean(rangeInElement != null);
+        if (rangeInElement != null) {
+          DataInputOutputUtil.writeINT(out, rangeInElement.getStartOffset());
+          DataInputOutputUtil.writeINT(out, rangeInElement.getLength());
+        }
+        IOUtil.writeUTF(out, problem.descriptionTemplate);
+        IOUtil.writeUTF(out, problem.highlightType.name());
+        out.writeBoolean(problem.afterEndOfLine);
+      }
+    }
+
+    @Override
+    public List<Problem> read(@NotNull DataInput in) throws IOException {
+      int size = DataInputOutputUtil.readINT(in);
+      List<Problem> problems = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        String toolShortName = IOUtil.readUTF(in);
+        int startOffset = DataInputOutputUtil.readINT(in);
+        int endOffset = startOffset + DataInputOutputUtil.readINT(in);
+        TextRange rangeInElement = null;
+        if (in.readBoolean()) {
+          int start = DataInputOutputUtil.readINT(in);
+          rangeInElement = new TextRange(start, start + DataInputOutputUtil.readINT(in));
+        }
+        String descriptionTemplate = IOUtil.readUTF(in);
+        ProblemHighlightType highlightType;
+        try {
+          highlightType = ProblemHighlightType.valueOf(IOUtil.readUTF(in));
+        }
+        catch (IllegalArgumentException e) {
+          throw new IOException(e);
+        }
+        boolean afterEndOfLine = in.readBoolean();
+        problems.add(new Problem(toolShortName, startOffset, endOffset, rangeInElement, descriptionTemplate, highlightType, afterEndOfLine));
+      }
+      return problems;
+    }
+  }
+}
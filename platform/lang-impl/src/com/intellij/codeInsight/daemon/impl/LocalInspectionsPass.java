@@ -74,6 +74,11 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
   private final InspectionProfileWrapper myProfileWrapper;
   private final Map<String, Set<PsiElement>> mySuppressedElements = new ConcurrentHashMap<>();
   private final boolean myInspectInjectedPsi;
+  /**
+   * Average time of a tool on a file, by tool short name. The slowest tools are started first, so they run in parallel with the rest
+   * instead of being picked up last and becoming the critical path of the pass.
+   */
+  private static final ConcurrentMap<String, Long> ourToolTimes = ContainerUtil.newConcurrentMap();
 
   public LocalInspectionsPass(@NotNull PsiFile file,
                               @Nullable Document document,
@@ -132,7 +137,33 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                @NotNull final InspectionManager iManager,
                                @NotNull final List<? extends LocalInspectionToolWrapper> toolWrappers) {
     final ProgressIndicator progress = ProgressManager.getInstance().getProgressIndicator();
-    inspect(new ArrayList<>(toolWrappers), iManager, false, progress);
+    LocalInspectionResultsCache cache = myRestrictRange.equals(getFile().getTextRange()) ? LocalInspectionResultsCache.getInstance() : null;
+    List<LocalInspectionToolWrapper> cachedTools =
+      cache == null ? Collections.emptyList() : ContainerUtil.filter(toolWrappers, LocalInspectionResultsCache::isCacheable);
+    String cacheKey = cachedTools.isEmpty() ? null : LocalInspectionResultsCache.computeKey(getFile(), cachedTools);
+    List<LocalInspectionResultsCache.Problem> cachedProblems = cacheKey == null ? null : cache.get(cacheKey);
+    if (cachedProblems != null) {
+      inspect(ContainerUtil.filter(toolWrappers, wrapper -> !cachedTools.contains(wrapper)), iManager, false, progress);
+      // injected fragments aren't a part of the cached data: they depend on injection settings rather than on the file text
+      inspectInjectedPsi(getElementsToInspect(), false, progress, iManager, false, cachedTools, Collections.emptySet());
+      Map<String, LocalInspectionToolWrapper> shortNameToTool = ContainerUtil.newMapFromValues(cachedTools.iterator(), LocalInspectionToolWrapper::getShortName);
+      Map<LocalInspectionToolWrapper, List<ProblemDescriptor>> restored = new LinkedHashMap<>();
+      for (LocalInspectionResultsCache.Problem problem : cachedProblems) {
+        LocalInspectionToolWrapper toolWrapper = shortNameToTool.get(problem.toolShortName);
+        if (toolWrapper != null) {
+          restored.computeIfAbsent(toolWrapper, __ -> new ArrayList<>()).add(problem.toDescriptor(getFile(), iManager));
+        }
+      }
+      restored.forEach((toolWrapper, descriptors) -> appendDescriptors(getFile(), descriptors, toolWrapper));
+      myInfos = new ArrayList<>();
+      addHighlightsFromResults(myInfos);
+    }
+    else {
+      inspect(new ArrayList<>(toolWrappers), iManager, false, progress);
+      if (cacheKey != null) {
+        cacheProblems(cache, cacheKey, cachedTools);
+      }
+    }
     addDescriptorsFromInjectedResults(context);
     List<InspectionResult> resultList = result.get(getFile());
     if (resultList == null) return;
@@ -154,6 +185,31 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     }
   }
 
+  private void cacheProblems(@NotNull LocalInspectionResultsCache cache,
+                             @NotNull String cacheKey,
+                             @NotNull List<LocalInspectionToolWrapper> cachedTools) {
+    List<LocalInspectionResultsCache.Problem> problems = new ArrayList<>();
+    List<InspectionResult> resultList = result.get(getFile());
+    if (resultList != null) {
+      for (InspectionResult inspectionResult : resultList) {
+        if (!cachedTools.contains(inspectionResult.tool)) continue;
+        for (ProblemDescriptor descriptor : inspectionResult.foundProblems) {
+          LocalInspectionResultsCache.Problem problem = LocalInspectionResultsCache.Problem.create(inspectionResult.tool.getShortName(), descriptor, getFile());
+          if (problem == null) return;
+          problems.add(problem);
+        }
+      }
+    }
+    cache.put(cacheKey, problems);
+  }
+
+  @NotNull
+  private List<PsiElement> getElementsToInspect() {
+    List<Divider.DividedElements> allDivided = new ArrayList<>();
+    Divider.divideInsideAndOutsideAllRoots(myFile, myRestrictRange, myPriorityRange, SHOULD_INSPECT_FILTER, new CommonProcessors.CollectProcessor<>(allDivided));
+    return ContainerUtil.concat((List<List<PsiElement>>)ContainerUtil.map(allDivided, d -> ContainerUtil.concat(d.inside, d.outside, d.parents)));
+  }
+
   private void addDescriptors(@NotNull LocalInspectionToolWrapper toolWrapper,
                               @NotNull ProblemDescriptor descriptor,
                               @NotNull GlobalInspectionContextImpl context) {
@@ -256,6 +312,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                                                                @NotNull final Set<String> elementDialectIds) {
     final List<InspectionContext> init = new ArrayList<>();
     List<Map.Entry<LocalInspectionToolWrapper, Set<String>>> entries = new ArrayList<>(toolToSpecifiedLanguageIds.entrySet());
+    entries.sort(Comparator.comparingLong((Map.Entry<LocalInspectionToolWrapper, Set<String>> entry) -> getToolTime(entry.getKey())).reversed());
 
     PsiFile file = session.getFile();
     Processor<Map.Entry<LocalInspectionToolWrapper, Set<String>>> processor = pair ->
@@ -294,11 +351,13 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
         }
     };
 
+    long start = System.nanoTime();
     PsiElementVisitor visitor = InspectionEngine.createVisitorAndAcceptElements(tool, holder, isOnTheFly, session, elements, elementDialectIds,
                                                                                 dialectIdsSpecifiedForTool);
+    long time = System.nanoTime() - start;
 
     synchronized (init) {
-      init.add(new InspectionContext(toolWrapper, holder, holder.getResultCount(), visitor, dialectIdsSpecifiedForTool));
+      init.add(new InspectionContext(toolWrapper, holder, holder.getResultCount(), visitor, dialectIdsSpecifiedForTool, time));
     }
     advanceProgress(1);
 
@@ -317,11 +376,13 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
       context -> {
         ProgressManager.checkCanceled();
         ApplicationManager.getApplication().assertReadAccessAllowed();
+        long start = System.nanoTime();
         AstLoadingFilter.disallowTreeLoading(
           () -> InspectionEngine.acceptElements(elements, context.visitor, elementDialectIds, context.dialectIdsSpecifiedForTool)
         );
         advanceProgress(1);
         context.tool.getTool().inspectionFinished(session, context.holder);
+        recordToolTime(context.tool, context.priorityTime + System.nanoTime() - start);
 
         if (context.holder.hasResults()) {
           List<ProblemDescriptor> allProblems = context.holder.getResults();
@@ -330,12 +391,22 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
         }
         return true;
       };
-    boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(init, indicator, processor);
+    List<InspectionContext> contexts = new ArrayList<>(init);
+    contexts.sort(Comparator.comparingLong((InspectionContext context) -> getToolTime(context.tool)).reversed());
+    boolean result = JobLauncher.getInstance().invokeConcurrentlyUnderProgress(contexts, indicator, processor);
     if (!result) {
       throw new ProcessCanceledException();
     }
   }
 
+  private static long getToolTime(@NotNull LocalInspectionToolWrapper tool) {
+    return ourToolTimes.getOrDefault(tool.getShortName(), 0L);
+  }
+
+  private static void recordToolTime(@NotNull LocalInspectionToolWrapper tool, long time) {
+    ourToolTimes.merge(tool.getShortName(), time, (oldTime, newTime) -> (oldTime + newTime) / 2);
+  }
+
   @NotNull
   Set<PsiFile> inspectInjectedPsi(@NotNull final List<? extends PsiElement> elements,
                                   final boolean onTheFly,
@@ -781,12 +852,14 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
                               @NotNull ProblemsHolder holder,
                               int problemsSize, // need this to diff between found problems in visible part and the rest
                               @NotNull PsiElementVisitor visitor,
-                              @Nullable Set<String> dialectIdsSpecifiedForTool) {
+                              @Nullable Set<String> dialectIdsSpecifiedForTool,
+                              long priorityTime) {
       this.tool = tool;
       this.holder = holder;
       this.problemsSize = problemsSize;
       this.visitor = visitor;
       this.dialectIdsSpecifiedForTool = dialectIdsSpecifiedForTool;
+      this.priorityTime = priorityTime;
     }
 
     @NotNull private final LocalInspectionToolWrapper tool;
@@ -794,6 +867,7 @@ public class LocalInspectionsPass extends ProgressableTextEditorHighlightingPass
     private final int problemsSize;
     @NotNull private final PsiElementVisitor visitor;
     @Nullable private final Set<String> dialectIdsSpecifiedForTool;
+    private final long priorityTime; // time of visiting elements in the priority range
   }
 
   public static class InspectionHighlightInfoType extends HighlightInfoType.HighlightInfoTypeImpl {
@@ -494,7 +494,9 @@ class PassExecutorService implements Disposable {
       }
       Document document = pass.getDocument();
       try {
-        if (fileEditor.getComponent().isDisplayable() || ApplicationManager.getApplication().isHeadlessEnvironment()) {
+        if (fileEditor.getComponent().isDisplayable() ||
+            ApplicationManager.getApplication().isHeadlessEnvironment() ||
+            DaemonCodeAnalyzerImpl.isPrehighlighting(updateProgress)) {
           pass.applyInformationToEditor();
           repaintErrorStripeAndIcon(fileEditor);
           FileStatusMap fileStatusMap = DaemonCodeAnalyzerEx.getInstanceEx(myProject).getFileStatusMap();
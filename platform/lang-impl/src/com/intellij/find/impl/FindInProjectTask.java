@@ -5,10 +5,13 @@ import com.intellij.find.FindBundle;
 import com.intellij.find.FindModel;
 import com.intellij.find.findInProject.FindInProjectManager;
 import com.intellij.find.ngrams.TrigramIndex;
+import com.intellij.find.ngrams.TrigramQuery;
 import com.intellij.openapi.application.ApplicationManager;
 import com.intellij.openapi.application.ApplicationNamesInfo;
 import com.intellij.openapi.application.ReadAction;
 import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.fileEditor.FileEditorManager;
+import com.intellij.openapi.fileEditor.ex.IdeDocumentHistory;
 import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.fileTypes.FileTypeManager;
 import com.intellij.openapi.module.Module;
@@ -43,6 +46,7 @@ import com.intellij.usages.UsageLimitUtil;
 import com.intellij.usages.impl.UsageViewManagerImpl;
 import com.intellij.util.Processor;
 import com.intellij.util.Processors;
+import com.intellij.util.SystemProperties;
 import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.indexing.FileBasedIndex;
 import com.intellij.util.indexing.FileBasedIndexImpl;
@@ -80,6 +84,14 @@ class FindInProjectTask {
   private final Set<? extends VirtualFile> myFilesToScanInitially;
   private final AtomicLong myTotalFilesSize = new AtomicLong();
   private final String myStringToFindInIndices;
+  @Nullable private final TrigramQuery myRegExpTrigramQuery; // null if the search isn't a regexp one or the index can't narrow it
+  private final int myMaxOccurrences = SystemProperties.getIntProperty("idea.find.in.path.max.occurrences", 1_000_000);
+  private final AtomicInteger myOccurrenceCount = new AtomicInteger(); // passed to the consumer over the whole search
+  private final AtomicLong myFirstOccurrenceTime = new AtomicLong();
+  private final AtomicInteger mySearchedFileCount = new AtomicInteger();
+  private final AtomicLong mySearchedFilesSize = new AtomicLong();
+  private volatile boolean myOccurrenceLimitReached;
+  private volatile boolean mySearchStopped; // the consumer refused an occurrence or the limit is reached
 
   FindInProjectTask(@NotNull final FindModel findModel, @NotNull final Project project, @NotNull Set<? extends VirtualFile> filesToScanInitially) {
     myFindModel = findModel;
@@ -102,41 +114,49 @@ class FindInProjectTask {
 
     String stringToFind = myFindModel.getStringToFind();
 
+    TrigramQuery regExpTrigramQuery = null;
     if (myFindModel.isRegularExpressions()) {
+      if (TrigramIndex.ENABLED) {
+        regExpTrigramQuery = TrigramQuery.fromRegExp(stringToFind);
+        if (regExpTrigramQuery.isAll()) regExpTrigramQuery = null;
+      }
       stringToFind = FindInProjectUtil.buildStringToFindForIndicesFromRegExp(stringToFind, myProject);
     }
 
+    myRegExpTrigramQuery = regExpTrigramQuery;
+
     myStringToFindInIndices = stringToFind;
     TooManyUsagesStatus.createFor(myProgress);
   }
 
   public void findUsages(@NotNull FindUsagesProcessPresentation processPresentation, @NotNull Processor<? super UsageInfo> consumer) {
+    long searchStart = System.currentTimeMillis();
+    // occurrences are retained by the consumer (e.g. a usage view) until the search ends, so their number is limited
+    Processor<UsageInfo> limitingConsumer = info -> {
+      if (myOccurrenceCount.incrementAndGet() > myMaxOccurrences) {
+        myOccurrenceLimitReached = true;
+        mySearchStopped = true;
+        return false;
+      }
+      myFirstOccurrenceTime.compareAndSet(0, System.currentTimeMillis());
+      if (consumer.process(info)) return true;
+      mySearchStopped = true;
+      return false;
+    };
     try {
       myProgress.setIndeterminate(true);
       myProgress.setText("Scanning indexed files...");
+      List<VirtualFile> filesToSearchFirst = ReadAction.compute(this::getFilesToSearchFirst);
       Set<VirtualFile> filesForFastWordSearch = ReadAction.compute(this::getFilesForFastWordSearch);
       myProgress.setIndeterminate(false);
       if (LOG.isDebugEnabled()) {
         LOG.debug("Searching for " + myFindModel.getStringToFind() + " in " + filesForFastWordSearch.size() + " indexed files");
       }
 
-      searchInFiles(filesForFastWordSearch, processPresentation, consumer);
-
-      myProgress.setIndeterminate(true);
-      myProgress.setText("Scanning non-indexed files...");
-      boolean canRelyOnIndices = canRelyOnIndices();
-      final Collection<VirtualFile> otherFiles = collectFilesInScope(filesForFastWordSearch, canRelyOnIndices);
-      myProgress.setIndeterminate(false);
-
-      if (LOG.isDebugEnabled()) {
-        LOG.debug("Searching for " + myFindModel.getStringToFind() + " in " + otherFiles.size() + " non-indexed files");
-      }
+      searchInFiles(filesForFastWordSearch, filesToSearchFirst, processPresentation, limitingConsumer);
       myProgress.checkCanceled();
-      long start = System.currentTimeMillis();
-      searchInFiles(otherFiles, processPresentation, consumer);
-      if (canRelyOnIndices && otherFiles.size() > 1000) {
-        long time = System.currentTimeMillis() - start;
-        logStats(otherFiles, time);
+      if (!mySearchStopped) {
+        searchInNonIndexedFiles(filesForFastWordSearch, filesToSearchFirst, processPresentation, limitingConsumer);
       }
     }
     catch (ProcessCanceledException e) {
@@ -146,6 +166,17 @@ class FindInProjectTask {
       }
     }
 
+    if (mySearchStopped && !myOccurrenceLimitReached) {
+      processPresentation.setCanceled(true);
+    }
+    if (myOccurrenceLimitReached) {
+      LOG.warn("Search for " + myFindModel.getStringToFind() + " stopped after " + myMaxOccurrences + " occurrences");
+      processPresentation.setOccurrenceLimitReached(myMaxOccurrences);
+    }
+    if (LOG.isDebugEnabled()) {
+      logSearchMetrics(searchStart);
+    }
+
     if (!myLargeFiles.isEmpty()) {
       processPresentation.setLargeFilesWereNotScanned(myLargeFiles);
     }
@@ -155,6 +186,28 @@ class FindInProjectTask {
     }
   }
 
+  private void searchInNonIndexedFiles(@NotNull Set<VirtualFile> indexedFiles,
+                                       @NotNull List<? extends VirtualFile> filesToSearchFirst,
+                                       @NotNull FindUsagesProcessPresentation processPresentation,
+                                       @NotNull Processor<? super UsageInfo> consumer) {
+    myProgress.setIndeterminate(true);
+    myProgress.setText("Scanning non-indexed files...");
+    boolean canRelyOnIndices = canRelyOnIndices();
+    final Collection<VirtualFile> otherFiles = collectFilesInScope(indexedFiles, canRelyOnIndices);
+    myProgress.setIndeterminate(false);
+
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Searching for " + myFindModel.getStringToFind() + " in " + otherFiles.size() + " non-indexed files");
+    }
+    myProgress.checkCanceled();
+    long start = System.currentTimeMillis();
+    searchInFiles(otherFiles, filesToSearchFirst, processPresentation, consumer);
+    if (canRelyOnIndices && otherFiles.size() > 1000) {
+      long time = System.currentTimeMillis() - start;
+      logStats(otherFiles, time);
+    }
+  }
+
   private static void logStats(@NotNull Collection<? extends VirtualFile> otherFiles, long time) {
     Map<String, Long> extensionToCount = otherFiles.stream()
       .collect(Collectors.groupingBy(file -> StringUtil.toLowerCase(StringUtil.notNullize(file.getExtension())), Collectors.counting()));
@@ -170,13 +223,67 @@ class FindInProjectTask {
              "Most frequent non-indexed file extensions: " + topExtensions);
   }
 
+  private void logSearchMetrics(long searchStart) {
+    long time = System.currentTimeMillis() - searchStart;
+    long firstOccurrenceTime = myFirstOccurrenceTime.get();
+    long millis = Math.max(time, 1);
+    LOG.debug("Search for " + myFindModel.getStringToFind() + " took " + time + "ms" +
+              (firstOccurrenceTime == 0 ? ", nothing found" : ", first occurrence in " + (firstOccurrenceTime - searchStart) + "ms") +
+              ", " + Math.min(myOccurrenceCount.get(), myMaxOccurrences) + " occurrences" +
+              ", " + mySearchedFileCount.get() + " files searched (" + mySearchedFileCount.get() * 1000L / millis + " files/s" +
+              ", " + UsageViewManagerImpl.presentableSize(mySearchedFilesSize.get() * 1000 / millis) + "/s)");
+  }
+
+  /**
+   * Files the user is likely to look at: the hint passed by the caller, open editors and recently changed files, most relevant first.
+   * They are searched before the others, so their occurrences are shown at once even if the whole search takes long.
+   */
+  @NotNull
+  private List<VirtualFile> getFilesToSearchFirst() {
+    Set<VirtualFile> result = new LinkedHashSet<>(myFilesToScanInitially);
+    FileEditorManager editorManager = FileEditorManager.getInstance(myProject);
+    Collections.addAll(result, editorManager.getSelectedFiles());
+    Collections.addAll(result, editorManager.getOpenFiles());
+    VirtualFile[] changedFiles = IdeDocumentHistory.getInstance(myProject).getChangedFiles();
+    for (int i = changedFiles.length - 1; i >= 0; i--) { // the most recently changed file is the last one
+      result.add(changedFiles[i]);
+    }
+    return new ArrayList<>(result);
+  }
+
+  @NotNull
+  private static List<VirtualFile> orderFilesToSearch(@NotNull Collection<? extends VirtualFile> virtualFiles,
+                                                      @NotNull List<? extends VirtualFile> filesToSearchFirst) {
+    List<VirtualFile> sorted = ContainerUtil.sorted(virtualFiles, SEARCH_RESULT_FILE_COMPARATOR);
+    if (filesToSearchFirst.isEmpty()) return sorted;
+
+    Set<VirtualFile> first = new CompactVirtualFileSet();
+    first.addAll(filesToSearchFirst);
+    Set<VirtualFile> firstToSearch = new CompactVirtualFileSet();
+    for (VirtualFile file : sorted) {
+      if (first.contains(file)) firstToSearch.add(file);
+    }
+    if (firstToSearch.isEmpty()) return sorted;
+
+    List<VirtualFile> result = new ArrayList<>(sorted.size());
+    for (VirtualFile file : filesToSearchFirst) {
+      if (firstToSearch.remove(file)) result.add(file);
+    }
+    for (VirtualFile file : sorted) {
+      if (!first.contains(file)) result.add(file);
+    }
+    return result;
+  }
+
   private void searchInFiles(@NotNull Collection<? extends VirtualFile> virtualFiles,
+                             @NotNull List<? extends VirtualFile> filesToSearchFirst,
                              @NotNull FindUsagesProcessPresentation processPresentation,
                              @NotNull final Processor<? super UsageInfo> consumer) {
     AtomicInteger occurrenceCount = new AtomicInteger();
     AtomicInteger processedFileCount = new AtomicInteger();
 
     Processor<VirtualFile> processor = virtualFile -> {
+      if (mySearchStopped) return false;
       if (!virtualFile.isValid()) return true;
 
       long fileLength = UsageViewManagerImpl.getFileLength(virtualFile);
@@ -202,9 +309,12 @@ class FindInProjectTask {
 
       Pair.NonNull<PsiFile, VirtualFile> pair = ReadAction.compute(() -> findFile(virtualFile));
       if (pair == null) return true;
+      mySearchedFileCount.incrementAndGet();
+      mySearchedFilesSize.addAndGet(fileLength);
       PsiFile psiFile = pair.first;
       VirtualFile sourceVirtualFile = pair.second;
       int countInFile = FindInProjectUtil.processUsagesInFile(psiFile, sourceVirtualFile, myFindModel, info -> skipProjectFile || consumer.process(info));
+      if (mySearchStopped) return false;
 
       if (countInFile > 0 && skipProjectFile) {
         processPresentation.projectFileUsagesFound(() -> {
@@ -243,8 +353,8 @@ class FindInProjectTask {
       }
       return true;
     };
-    List<VirtualFile> sorted = ContainerUtil.sorted(virtualFiles, SEARCH_RESULT_FILE_COMPARATOR);
-    PsiSearchHelperImpl.processFilesConcurrentlyDespiteWriteActions(myProject, sorted, myProgress, new AtomicBoolean(), processor);
+    List<VirtualFile> ordered = orderFilesToSearch(virtualFiles, filesToSearchFirst);
+    PsiSearchHelperImpl.processFilesConcurrentlyDespiteWriteActions(myProject, ordered, myProgress, new AtomicBoolean(), processor);
   }
 
   // must return non-binary files
@@ -254,7 +364,7 @@ class FindInProjectTask {
     final GlobalSearchScope globalCustomScope = customScope == null ? null : GlobalSearchScopeUtil.toGlobalSearchScope(customScope, myProject);
 
     final ProjectFileIndex fileIndex = ProjectFileIndex.SERVICE.getInstance(myProject);
-    final boolean hasTrigrams = hasTrigrams(myStringToFindInIndices);
+    final boolean hasTrigrams = myRegExpTrigramQuery != null || hasTrigrams(myStringToFindInIndices);
 
     class EnumContentIterator implements ContentIterator {
       private final Set<VirtualFile> myFiles = new CompactVirtualFileSet();
@@ -357,6 +467,8 @@ class FindInProjectTask {
     // a local scope may be over a non-indexed file
     if (myFindModel.getCustomScope() instanceof LocalSearchScope) return false;
 
+    if (myRegExpTrigramQuery != null) return true;
+
     String text = myStringToFindInIndices;
     if (StringUtil.isEmptyOrSpaces(text)) return false;
 
@@ -383,7 +495,7 @@ class FindInProjectTask {
   private Set<VirtualFile> getFilesForFastWordSearch() {
     String stringToFind = myStringToFindInIndices;
 
-    if (stringToFind.isEmpty() || DumbService.getInstance(myProject).isDumb()) {
+    if (stringToFind.isEmpty() && myRegExpTrigramQuery == null || DumbService.getInstance(myProject).isDumb()) {
       return Collections.emptySet();
     }
 
@@ -397,6 +509,18 @@ class FindInProjectTask {
     final GlobalSearchScope scope = GlobalSearchScopeUtil.toGlobalSearchScope(FindInProjectUtil.getScopeFromModel(myProject, myFindModel),
                                                                               myProject);
 
+    if (myRegExpTrigramQuery != null) {
+      Set<VirtualFile> hits = myRegExpTrigramQuery.findFiles(scope);
+      if (hits != null) {
+        for (VirtualFile hit : hits) {
+          if (myFileMask.value(hit)) {
+            resultFiles.add(hit);
+          }
+        }
+        return resultFiles;
+      }
+    }
+
     if (TrigramIndex.ENABLED) {
       final Set<Integer> keys = new THashSet<>();
       TrigramBuilder.processTrigrams(stringToFind, new TrigramBuilder.TrigramProcessor() {
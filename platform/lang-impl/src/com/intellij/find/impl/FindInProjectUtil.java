@@ -16,7 +16,6 @@ import com.intellij.openapi.fileEditor.FileDocumentManager;
 import com.intellij.openapi.fileEditor.FileEditor;
 import com.intellij.openapi.module.Module;
 import com.intellij.openapi.module.ModuleManager;
-import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressManager;
 import com.intellij.openapi.progress.util.ProgressWrapper;
@@ -230,21 +229,19 @@ public class FindInProjectUtil {
     new FindInProjectTask(findModel, project, filesToStart).findUsages(processPresentation, consumer);
   }
 
-  // returns number of hits
+  // returns number of hits, the search in the file stops at the first occurrence the consumer refuses
   static int processUsagesInFile(@NotNull final PsiFile psiFile,
                                  @NotNull final VirtualFile virtualFile,
                                  @NotNull final FindModel findModel,
                                  @NotNull final Processor<? super UsageInfo> consumer) {
     if (findModel.getStringToFind().isEmpty()) {
-      if (!ReadAction.compute(() -> consumer.process(new UsageInfo(psiFile)))) {
-        throw new ProcessCanceledException();
-      }
-      return 1;
+      return ReadAction.compute(() -> consumer.process(new UsageInfo(psiFile))) ? 1 : 0;
     }
     if (virtualFile.getFileType().isBinary()) return 0; // do not decompile .class files
     final Document document = ReadAction.compute(() -> virtualFile.isValid() ? FileDocumentManager.getInstance().getDocument(virtualFile) : null);
     if (document == null) return 0;
     final int[] offset = {0};
+    final boolean[] stopped = {false};
     int count = 0;
     int found;
     ProgressIndicator indicator = ProgressWrapper.unwrap(ProgressManager.getInstance().getProgressIndicator());
@@ -253,11 +250,11 @@ public class FindInProjectUtil {
       tooManyUsagesStatus.pauseProcessingIfTooManyUsages(); // wait for user out of read action
       found = ReadAction.compute(() -> {
         if (!psiFile.isValid()) return 0;
-        return addToUsages(document, findModel, psiFile, offset, USAGES_PER_READ_ACTION, consumer);
+        return addToUsages(document, findModel, psiFile, offset, stopped, USAGES_PER_READ_ACTION, consumer);
       });
       count += found;
     }
-    while (found != 0);
+    while (found != 0 && !stopped[0]);
     return count;
   }
 
@@ -265,6 +262,7 @@ public class FindInProjectUtil {
                                  @NotNull FindModel findModel,
                                  @NotNull final PsiFile psiFile,
                                  @NotNull int[] offsetRef,
+                                 @NotNull boolean[] stoppedRef,
                                  int maxUsages,
                                  @NotNull Processor<? super UsageInfo> consumer) {
     int count = 0;
@@ -293,7 +291,8 @@ public class FindInProjectUtil {
       }
       UsageInfo info = new FindResultUsageInfo(findManager, psiFile, prevOffset, findModel, result);
       if (!consumer.process(info)){
-        throw new ProcessCanceledException();
+        stoppedRef[0] = true;
+        break;
       }
       count++;
 
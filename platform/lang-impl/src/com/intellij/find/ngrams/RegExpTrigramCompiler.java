@@ -0,0 +1,463 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.find.ngrams;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Builds a {@link TrigramQuery} from a {@link java.util.regex.Pattern} regexp, as Russ Cox's codesearch does: for every node of
+ * the regexp it computes the set of exact strings it matches if the set is small, or sets of prefixes and suffixes of its matches
+ * and a query for the trigrams every match contains. Anything that can't be analyzed is approximated by "any string", so the query
+ * never rejects a file with a match.
+ */
+final class RegExpTrigramCompiler {
+  private static final int MAX_SET_SIZE = 16;
+
+  private final String myText;
+  private int myPos;
+
+  private RegExpTrigramCompiler(@NotNull String text) {
+    myText = text;
+  }
+
+  @NotNull
+  static TrigramQuery compile(@NotNull String regexp) {
+    RegExpTrigramCompiler compiler = new RegExpTrigramCompiler(regexp);
+    try {
+      Info info = compiler.parseAlternation();
+      if (compiler.myPos < regexp.length()) return TrigramQuery.ALL;
+      info = info.inexact();
+      return info.match.and(TrigramQuery.anyOf(info.prefix)).and(TrigramQuery.anyOf(info.suffix));
+    }
+    catch (UnsupportedRegExpException e) {
+      return TrigramQuery.ALL;
+    }
+  }
+
+  /**
+   * What is known about strings matched by a part of a regexp
+   */
+  private static final class Info {
+    final boolean canEmpty;
+    final Set<String> exact; // all matched strings, or null if there are too many of them
+    final Set<String> prefix; // every match starts with one of them
+    final Set<String> suffix; // every match ends with one of them
+    final TrigramQuery match; // every match contains these trigrams
+
+    private Info(boolean canEmpty, Set<String> exact, @NotNull Set<String> prefix, @NotNull Set<String> suffix, @NotNull TrigramQuery match) {
+      this.canEmpty = canEmpty;
+      this.exact = exact;
+      this.prefix = prefix;
+      this.suffix = suffix;
+      this.match = match;
+    }
+
+    @NotNull
+    static Info exact(@NotNull Set<String> strings, @NotNull TrigramQuery match) {
+      return new Info(strings.contains(""), strings, strings, strings, match);
+    }
+
+    @NotNull
+    static Info literal(@NotNull String text) {
+      return exact(Collections.singleton(text), TrigramQuery.ALL);
+    }
+
+    @NotNull
+    static Info anyChar() {
+      return new Info(false, null, Collections.singleton(""), Collections.singleton(""), TrigramQuery.ALL);
+    }
+
+    @NotNull
+    static Info anyString() {
+      return new Info(true, null, Collections.singleton(""), Collections.singleton(""), TrigramQuery.ALL);
+    }
+
+    @NotNull
+    Info inexact() {
+      return exact == null ? this : new Info(canEmpty, null, exact, exact, match.and(TrigramQuery.anyOf(exact)));
+    }
+  }
+
+  @NotNull
+  private static Info concat(@NotNull Info x, @NotNull Info y) {
+    TrigramQuery match = x.match.and(y.match);
+    if (x.exact != null && y.exact != null) {
+      Set<String> strings = cross(x.exact, y.exact);
+      if (strings.size() <= MAX_SET_SIZE) return Info.exact(strings, match);
+    }
+
+    if (x.exact != null) match = match.and(TrigramQuery.anyOf(x.exact));
+    if (y.exact != null) match = match.and(TrigramQuery.anyOf(y.exact));
+    // every match has a suffix of x followed by a prefix of y
+    match = match.and(TrigramQuery.anyOf(cross(x.suffix, y.prefix)));
+
+    Set<String> prefix = x.prefix;
+    if (x.exact != null) {
+      Set<String> strings = cross(x.exact, y.prefix);
+      if (strings.size() <= MAX_SET_SIZE) prefix = strings;
+    }
+    if (x.canEmpty) prefix = union(prefix, y.prefix);
+
+    Set<String> suffix = y.suffix;
+    if (y.exact != null) {
+      Set<String> strings = cross(x.suffix, y.exact);
+      if (strings.size() <= MAX_SET_SIZE) suffix = strings;
+    }
+    if (y.canEmpty) suffix = union(suffix, x.suffix);
+
+    return simplify(x.canEmpty && y.canEmpty, prefix, suffix, match);
+  }
+
+  @NotNull
+  private static Info alternate(@NotNull Info x, @NotNull Info y) {
+    if (x.exact != null && y.exact != null) {
+      Set<String> strings = union(x.exact, y.exact);
+      if (strings.size() <= MAX_SET_SIZE) return Info.exact(strings, x.match.or(y.match));
+    }
+    x = x.inexact();
+    y = y.inexact();
+    return simplify(x.canEmpty || y.canEmpty, union(x.prefix, y.prefix), union(x.suffix, y.suffix), x.match.or(y.match));
+  }
+
+  /**
+   * Moves trigrams of long prefixes and suffixes into the match query and keeps only their outer 2 characters, which can still form
+   * trigrams with neighbours. Sets which are still too large are replaced with the empty string, which is a prefix of anything.
+   */
+  @NotNull
+  private static Info simplify(boolean canEmpty, @NotNull Set<String> prefix, @NotNull Set<String> suffix, @NotNull TrigramQuery match) {
+    for (int length = 2; length >= 0 && prefix.size() > 1 && needsTrimming(prefix, length); length--) {
+      match = match.and(TrigramQuery.anyOf(prefix));
+      prefix = trim(prefix, length, true);
+    }
+    for (int length = 2; length >= 0 && suffix.size() > 1 && needsTrimming(suffix, length); length--) {
+      match = match.and(TrigramQuery.anyOf(suffix));
+      suffix = trim(suffix, length, false);
+    }
+    return new Info(canEmpty, null, prefix, suffix, match);
+  }
+
+  private static boolean needsTrimming(@NotNull Set<String> strings, int length) {
+    return strings.size() > MAX_SET_SIZE || length == 2 && strings.stream().anyMatch(s -> s.length() > length);
+  }
+
+  @NotNull
+  private static Set<String> trim(@NotNull Set<String> strings, int length, boolean keepStart) {
+    Set<String> result = new LinkedHashSet<>();
+    for (String s : strings) {
+      if (s.length() <= length) result.add(s);
+      else result.add(keepStart ? s.substring(0, length) : s.substring(s.length() - length));
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Set<String> cross(@NotNull Set<String> strings1, @NotNull Set<String> strings2) {
+    Set<String> result = new LinkedHashSet<>();
+    for (String s1 : strings1) {
+      for (String s2 : strings2) {
+        result.add(s1 + s2);
+      }
+    }
+    return result;
+  }
+
+  @NotNull
+  private static Set<String> union(@NotNull Set<String> strings1, @NotNull Set<String> strings2) {
+    Set<String> result = new LinkedHashSet<>(strings1);
+    result.addAll(strings2);
+    return result;
+  }
+
+  @NotNull
+  private Info parseAlternation() {
+    Info result = parseConcatenation();
+    while (myPos < myText.length() && myText.charAt(myPos) == '|') {
+      myPos++;
+      result = alternate(result, parseConcatenation());
+    }
+    return result;
+  }
+
+  @NotNull
+  private Info parseConcatenation() {
+    Info result = Info.literal("");
+    while (myPos < myText.length()) {
+      char c = myText.charAt(myPos);
+      if (c == '|' || c == ')') break;
+      result = concat(result, parseQuantified());
+    }
+    return result;
+  }
+
+  @NotNull
+  private Info parseQuantified() {
+    Info result = parseAtom();
+    while (myPos < myText.length()) {
+      char c = myText.charAt(myPos);
+      if (c == '*') {
+        result = Info.anyString();
+      }
+      else if (c == '+') {
+        result = concat(result, Info.anyString());
+      }
+      else if (c == '?') {
+        result = alternate(result, Info.literal(""));
+      }
+      else if (c == '{') {
+        result = parseRepetition(result);
+      }
+      else {
+        break;
+      }
+      myPos++;
+      if (myPos < myText.length() && (myText.charAt(myPos) == '?' || myText.charAt(myPos) == '+')) myPos++; // reluctant or possessive
+    }
+    return result;
+  }
+
+  /**
+   * Parses {@code {n}}, {@code {n,}} or {@code {n,m}} leaving the position at the closing brace
+   */
+  @NotNull
+  private Info parseRepetition(@NotNull Info atom) {
+    myPos++;
+    int min = parseNumber();
+    int max = min;
+    if (myPos < myText.length() && myText.charAt(myPos) == ',') {
+      myPos++;
+      max = myPos < myText.length() && Character.isDigit(myText.charAt(myPos)) ? parseNumber() : Integer.MAX_VALUE;
+    }
+    if (myPos >= myText.length() || myText.charAt(myPos) != '}') throw new UnsupportedRegExpException();
+
+    if (max == 0) return Info.literal("");
+    if (min == 0) return max == 1 ? alternate(atom, Info.literal("")) : Info.anyString();
+    return max == 1 ? atom : concat(atom, Info.anyString());
+  }
+
+  private int parseNumber() {
+    int start = myPos;
+    while (myPos < myText.length() && Character.isDigit(myText.charAt(myPos))) myPos++;
+    if (start == myPos || myPos - start > 9) throw new UnsupportedRegExpException();
+    return Integer.parseInt(myText.substring(start, myPos));
+  }
+
+  @NotNull
+  private Info parseAtom() {
+    char c = myText.charAt(myPos++);
+    switch (c) {
+      case '(':
+        return parseGroup();
+      case '[':
+        skipCharacterClass();
+        return Info.anyChar();
+      case '.':
+        return Info.anyChar();
+      case '^':
+      case '$':
+        return Info.literal("");
+      case '\\':
+        return parseEscape();
+      case '*':
+      case '+':
+      case '?':
+      case '{':
+        throw new UnsupportedRegExpException();
+      default:
+        if (Character.isHighSurrogate(c) && myPos < myText.length() && Character.isLowSurrogate(myText.charAt(myPos))) {
+          return Info.literal(myText.substring(myPos - 1, ++myPos));
+        }
+        return Info.literal(String.valueOf(c));
+    }
+  }
+
+  @NotNull
+  private Info parseGroup() {
+    boolean lookaround = false;
+    if (myPos < myText.length() && myText.charAt(myPos) == '?') {
+      myPos++;
+      char c = next();
+      if (c == '=' || c == '!') {
+        lookaround = true;
+      }
+      else if (c == '<') {
+        if (myPos < myText.length() && (myText.charAt(myPos) == '=' || myText.charAt(myPos) == '!')) {
+          myPos++;
+          lookaround = true;
+        }
+        else {
+          skipTo('>');
+        }
+      }
+      else if (c != ':' && c != '>') {
+        // inline flags: (?idmsux-idmsux) or (?idmsux-idmsux:X)
+        myPos--;
+        while (myPos < myText.length() && (Character.isLetter(myText.charAt(myPos)) || myText.charAt(myPos) == '-')) {
+          // whitespace and comments are allowed in the comments mode, and it isn't worth supporting them
+          if (myText.charAt(myPos) == 'x') throw new UnsupportedRegExpException();
+          myPos++;
+        }
+        if (next() == ')') return Info.literal("");
+        if (myText.charAt(myPos - 1) != ':') throw new UnsupportedRegExpException();
+      }
+    }
+
+    Info result = parseAlternation();
+    if (myPos >= myText.length() || myText.charAt(myPos) != ')') throw new UnsupportedRegExpException();
+    myPos++;
+    return lookaround ? Info.literal("") : result;
+  }
+
+  private void skipCharacterClass() {
+    int depth = 1;
+    if (myPos < myText.length() && myText.charAt(myPos) == '^') myPos++;
+    if (myPos < myText.length() && myText.charAt(myPos) == ']') myPos++;
+    while (myPos < myText.length()) {
+      char c = myText.charAt(myPos++);
+      if (c == '\\') {
+        if (myPos < myText.length() && myText.charAt(myPos) == 'Q') {
+          skipQuotation();
+        }
+        else {
+          myPos++;
+        }
+      }
+      else if (c == '[') {
+        depth++;
+      }
+      else if (c == ']' && --depth == 0) {
+        return;
+      }
+    }
+    throw new UnsupportedRegExpException();
+  }
+
+  @NotNull
+  private Info parseEscape() {
+    char c = next();
+    switch (c) {
+      case 'Q':
+        myPos--;
+        return Info.literal(skipQuotation());
+      case 'd': case 'D': case 'w': case 'W': case 's': case 'S': case 'h': case 'H': case 'v': case 'V':
+        return Info.anyChar();
+      case 'p': case 'P': case 'N':
+        if (myPos < myText.length() && myText.charAt(myPos) == '{') skipTo('}');
+        else next();
+        return Info.anyChar();
+      case 'R': case 'X':
+        return Info.anyString();
+      case 'b':
+        if (myPos < myText.length() && myText.charAt(myPos) == '{') skipTo('}');
+        return Info.literal("");
+      case 'B': case 'A': case 'G': case 'Z': case 'z':
+        return Info.literal("");
+      case 'k':
+        if (next() != '<') throw new UnsupportedRegExpException();
+        skipTo('>');
+        return Info.anyString();
+      case 't':
+        return Info.literal("\t");
+      case 'n':
+        return Info.literal("\n");
+      case 'r':
+        return Info.literal("\r");
+      case 'f':
+        return Info.literal("\f");
+      case 'a':
+        return Info.literal("\u0007");
+      case 'e':
+        return Info.literal("\u001B");
+      case 'c':
+        return Info.literal(String.valueOf((char)(next() ^ 64)));
+      case '0':
+        return Info.literal(codePointToString(parseOctal()));
+      case 'x':
+        if (myPos < myText.length() && myText.charAt(myPos) == '{') {
+          int end = myText.indexOf('}', myPos);
+          if (end < 0) throw new UnsupportedRegExpException();
+          int codePoint = parseHex(myPos + 1, end);
+          myPos = end + 1;
+          return Info.literal(codePointToString(codePoint));
+        }
+        return Info.literal(codePointToString(parseHex(myPos, myPos += 2)));
+      case 'u':
+        return Info.literal(codePointToString(parseHex(myPos, myPos += 4)));
+      default:
+        if (c >= '1' && c <= '9') {
+          // back reference
+          while (myPos < myText.length() && Character.isDigit(myText.charAt(myPos))) myPos++;
+          return Info.anyString();
+        }
+        if (Character.isLetterOrDigit(c)) throw new UnsupportedRegExpException();
+        return Info.literal(String.valueOf(c));
+    }
+  }
+
+  /**
+   * Skips {@code \Q...\E} starting at the {@code Q}
+   *
+   * @return quoted text
+   */
+  @NotNull
+  private String skipQuotation() {
+    int start = myPos + 1;
+    int end = myText.indexOf("\\E", start);
+    if (end < 0) {
+      myPos = myText.length();
+      return myText.substring(start);
+    }
+    myPos = end + 2;
+    return myText.substring(start, end);
+  }
+
+  private int parseOctal() {
+    int value = 0;
+    int digits = 0;
+    while (digits < 3 && myPos < myText.length()) {
+      char c = myText.charAt(myPos);
+      if (c < '0' || c > '7' || value * 8 + (c - '0') > 0377) break;
+      value = value * 8 + (c - '0');
+      digits++;
+      myPos++;
+    }
+    if (digits == 0) throw new UnsupportedRegExpException();
+    return value;
+  }
+
+  private int parseHex(int start, int end) {
+    if (start >= end || end > myText.length() || end - start > 6) throw new UnsupportedRegExpException();
+    try {
+      int codePoint = Integer.parseInt(myText.substring(start, end), 16);
+      if (!Character.isValidCodePoint(codePoint)) throw new UnsupportedRegExpException();
+      return codePoint;
+    }
+    catch (NumberFormatException e) {
+      throw new UnsupportedRegExpException();
+    }
+  }
+
+  @NotNull
+  private static String codePointToString(int codePoint) {
+    return new String(Character.toChars(codePoint));
+  }
+
+  private char next() {
+    if (myPos >= myText.length()) throw new UnsupportedRegExpException();
+    return myText.charAt(myPos++);
+  }
+
+  private void skipTo(char c) {
+    int index = myText.indexOf(c, myPos);
+    if (index < 0) throw new UnsupportedRegExpException();
+    myPos = index + 1;
+  }
+
+  private static class UnsupportedRegExpException extends RuntimeException {
+    UnsupportedRegExpException() {
+      super(null, null, false, false);
+    }
+  }
+}
@@ -0,0 +1,205 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import com.intellij.openapi.vfs.CompactVirtualFileSet;
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.Processors;
+import com.intellij.util.indexing.FileBasedIndex;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.*;
+
+/**
+ * Boolean query over trigrams of {@link TrigramIndex}: a file may contain a match only if it has the trigrams the query requires.
+ * Queries are built from regular expressions by {@link #fromRegExp(String)}, so a regexp search scans only candidate files
+ * instead of every file in scope.
+ */
+public final class TrigramQuery {
+  private enum Op {ALL, NONE, AND, OR}
+
+  static final TrigramQuery ALL = new TrigramQuery(Op.ALL, new TIntHashSet(), Collections.emptyList());
+  static final TrigramQuery NONE = new TrigramQuery(Op.NONE, new TIntHashSet(), Collections.emptyList());
+
+  private final Op myOp;
+  private final TIntHashSet myTrigrams; // all of them are required for AND, any of them for OR
+  private final List<TrigramQuery> mySubQueries;
+
+  private TrigramQuery(@NotNull Op op, @NotNull TIntHashSet trigrams, @NotNull List<TrigramQuery> subQueries) {
+    myOp = op;
+    myTrigrams = trigrams;
+    mySubQueries = subQueries;
+  }
+
+  /**
+   * @return query matching all files that may contain a match of the given regexp,
+   * or a query matching everything when the regexp has no required trigrams or isn't supported
+   */
+  @NotNull
+  public static TrigramQuery fromRegExp(@NotNull String regexp) {
+    return RegExpTrigramCompiler.compile(regexp);
+  }
+
+  /**
+   * @return true if any file matches the query, so the index can't narrow a search
+   */
+  public boolean isAll() {
+    return myOp == Op.ALL;
+  }
+
+  @NotNull
+  static TrigramQuery allOf(@NotNull CharSequence text) {
+    TIntHashSet trigrams = new TIntHashSet();
+    TrigramBuilder.processTrigrams(text, new TrigramBuilder.TrigramProcessor() {
+      @Override
+      public boolean execute(int value) {
+        trigrams.add(value);
+        return true;
+      }
+    });
+    return trigrams.isEmpty() ? ALL : new TrigramQuery(Op.AND, trigrams, Collections.emptyList());
+  }
+
+  /**
+   * @return query requiring at least one of the strings
+   */
+  @NotNull
+  static TrigramQuery anyOf(@NotNull Collection<String> strings) {
+    TrigramQuery result = NONE;
+    for (String string : strings) {
+      result = result.or(allOf(string));
+      if (result.isAll()) break;
+    }
+    return result;
+  }
+
+  @NotNull
+  TrigramQuery and(@NotNull TrigramQuery other) {
+    if (myOp == Op.NONE || other.myOp == Op.ALL) return this;
+    if (other.myOp == Op.NONE || myOp == Op.ALL) return other;
+    return combine(Op.AND, this, other);
+  }
+
+  @NotNull
+  TrigramQuery or(@NotNull TrigramQuery other) {
+    if (myOp == Op.ALL || other.myOp == Op.NONE) return this;
+    if (other.myOp == Op.ALL || myOp == Op.NONE) return other;
+    return combine(Op.OR, this, other);
+  }
+
+  @NotNull
+  private static TrigramQuery combine(@NotNull Op op, @NotNull TrigramQuery q1, @NotNull TrigramQuery q2) {
+    TIntHashSet trigrams = new TIntHashSet();
+    List<TrigramQuery> subQueries = new ArrayList<>();
+    for (TrigramQuery query : new TrigramQuery[]{q1, q2}) {
+      if (query.myOp == op || query.mySubQueries.isEmpty() && query.myTrigrams.size() == 1) {
+        trigrams.addAll(query.myTrigrams.toArray());
+        subQueries.addAll(query.mySubQueries);
+      }
+      else if (!subQueries.contains(query)) {
+        subQueries.add(query);
+      }
+    }
+    return new TrigramQuery(op, trigrams, subQueries);
+  }
+
+  /**
+   * @return true if a text with the given trigrams may match
+   */
+  boolean matches(@NotNull TIntHashSet trigrams) {
+    switch (myOp) {
+      case ALL:
+        return true;
+      case NONE:
+        return false;
+      case AND:
+        return trigrams.containsAll(myTrigrams.toArray()) && mySubQueries.stream().allMatch(query -> query.matches(trigrams));
+      default:
+        return !myTrigrams.forEach(trigram -> !trigrams.contains(trigram)) || mySubQueries.stream().anyMatch(query -> query.matches(trigrams));
+    }
+  }
+
+  /**
+   * @return files in scope which have trigrams required by the query, or null when the query matches everything
+   */
+  @Nullable
+  public Set<VirtualFile> findFiles(@NotNull GlobalSearchScope scope) {
+    switch (myOp) {
+      case ALL:
+        return null;
+      case NONE:
+        return Collections.emptySet();
+      case AND:
+        Set<VirtualFile> result = myTrigrams.isEmpty() ? null : getFilesWithAll(myTrigrams.toArray(), scope);
+        for (TrigramQuery query : mySubQueries) {
+          if (result != null && result.isEmpty()) break;
+          Set<VirtualFile> files = query.findFiles(scope);
+          if (files == null) continue;
+          if (result == null) {
+            result = files;
+          }
+          else {
+            result.retainAll(files);
+          }
+        }
+        return result;
+      default:
+        Set<VirtualFile> union = new CompactVirtualFileSet();
+        for (int trigram : myTrigrams.toArray()) {
+          union.addAll(getFilesWithAll(new int[]{trigram}, scope));
+        }
+        for (TrigramQuery query : mySubQueries) {
+          Set<VirtualFile> files = query.findFiles(scope);
+          if (files == null) return null;
+          union.addAll(files);
+        }
+        return union;
+    }
+  }
+
+  @NotNull
+  private static Set<VirtualFile> getFilesWithAll(@NotNull int[] trigrams, @NotNull GlobalSearchScope scope) {
+    Set<Integer> keys = new HashSet<>(trigrams.length);
+    for (int trigram : trigrams) {
+      keys.add(trigram);
+    }
+    Set<VirtualFile> files = new CompactVirtualFileSet();
+    FileBasedIndex.getInstance().getFilesWithKey(TrigramIndex.INDEX_ID, keys, Processors.cancelableCollectProcessor(files), scope);
+    return files;
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (o == null || getClass() != o.getClass()) return false;
+    TrigramQuery query = (TrigramQuery)o;
+    return myOp == query.myOp && myTrigrams.equals(query.myTrigrams) && mySubQueries.equals(query.mySubQueries);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(myOp, myTrigrams, mySubQueries);
+  }
+
+  @Override
+  public String toString() {
+    if (myOp == Op.ALL || myOp == Op.NONE) return myOp.name();
+    List<String> operands = new ArrayList<>();
+    for (int trigram : myTrigrams.toArray()) {
+      operands.add(trigramToString(trigram));
+    }
+    Collections.sort(operands);
+    for (TrigramQuery query : mySubQueries) {
+      operands.add("(" + query + ")");
+    }
+    return String.join(myOp == Op.AND ? " & " : " | ", operands);
+  }
+
+  @NotNull
+  private static String trigramToString(int trigram) {
+    return new String(new char[]{(char)((trigram >> 16) & 0xFF), (char)((trigram >> 8) & 0xFF), (char)(trigram & 0xFF)});
+  }
+}
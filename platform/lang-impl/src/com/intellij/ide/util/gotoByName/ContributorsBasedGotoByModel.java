@@ -17,9 +17,12 @@ import com.intellij.openapi.project.DumbService;
 import com.intellij.openapi.project.IndexNotReadyException;
 import com.intellij.openapi.project.PossiblyDumbAware;
 import com.intellij.openapi.project.Project;
+import com.intellij.openapi.roots.ProjectRootManager;
 import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.openapi.vfs.VirtualFileManager;
 import com.intellij.pom.PomTargetPsiElement;
 import com.intellij.psi.PsiElement;
+import com.intellij.psi.util.PsiModificationTracker;
 import com.intellij.psi.util.PsiUtilCore;
 import com.intellij.util.ArrayUtil;
 import com.intellij.util.ArrayUtilRt;
@@ -71,6 +74,7 @@ public abstract class ContributorsBasedGotoByModel implements ChooseByNameModelE
   }
 
   private final ConcurrentMap<ChooseByNameContributor, TIntHashSet> myContributorToItsSymbolsMap = ContainerUtil.newConcurrentMap();
+  private final ConcurrentMap<ChooseByNameContributor, NameSnapshot> myContributorToItsNamesMap = ContainerUtil.newConcurrentMap();
 
   @Override
   public void processNames(@NotNull Processor<? super String> nameProcessor, @NotNull FindSymbolParameters parameters) {
@@ -115,25 +119,45 @@ public abstract class ContributorsBasedGotoByModel implements ChooseByNameModelE
                                       @NotNull FindSymbolParameters parameters,
                                       @NotNull Processor<? super String> nameProcessor) {
     TIntHashSet filter = new TIntHashSet(1000);
-    if (contributor instanceof ChooseByNameContributorEx) {
-      ((ChooseByNameContributorEx)contributor).processNames(s -> {
-        if (nameProcessor.process(s)) {
-          filter.add(s.hashCode());
-        }
-        return true;
-      }, parameters.getSearchScope(), parameters.getIdFilter());
+    Processor<String> processor = s -> {
+      if (nameProcessor.process(s)) {
+        filter.add(s.hashCode());
+      }
+      return true;
+    };
+    // names are loaded from indices once and then reused while the user types a pattern, until the project changes
+    long modificationCount = getNamesModificationCount();
+    NameSnapshot snapshot = myContributorToItsNamesMap.get(contributor);
+    if (snapshot != null && snapshot.isUpToDate(parameters, modificationCount)) {
+      snapshot.processNames(NameSnapshot.getRequiredCharMask(nameProcessor), processor);
     }
     else {
-      String[] names = contributor.getNames(myProject, parameters.isSearchInLibraries());
-      for (String element : names) {
-        if (nameProcessor.process(element)) {
-          filter.add(element.hashCode());
+      List<String> names = new ArrayList<>();
+      if (contributor instanceof ChooseByNameContributorEx) {
+        ((ChooseByNameContributorEx)contributor).processNames(s -> {
+          names.add(s);
+          return processor.process(s);
+        }, parameters.getSearchScope(), parameters.getIdFilter());
+      }
+      else {
+        for (String element : contributor.getNames(myProject, parameters.isSearchInLibraries())) {
+          names.add(element);
+          processor.process(element);
         }
       }
+      if (!DumbService.isDumb(myProject)) {
+        myContributorToItsNamesMap.put(contributor, new NameSnapshot(names, parameters, modificationCount));
+      }
     }
     myContributorToItsSymbolsMap.put(contributor, filter);
   }
 
+  private long getNamesModificationCount() {
+    return PsiModificationTracker.SERVICE.getInstance(myProject).getModificationCount() +
+           VirtualFileManager.getInstance().getModificationCount() +
+           ProjectRootManager.getInstance(myProject).getModificationCount();
+  }
+
   IdFilter getIdFilter(boolean withLibraries) {
     return IdFilter.getProjectIdFilter(myProject, withLibraries);
   }
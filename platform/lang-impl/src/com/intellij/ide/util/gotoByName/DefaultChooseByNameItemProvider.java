@@ -13,6 +13,7 @@ import com.intellij.psi.PsiCompiledElement;
 import com.intellij.psi.PsiElement;
 import com.intellij.psi.SmartPointerManager;
 import com.intellij.psi.SmartPsiElementPointer;
+import com.intellij.psi.codeStyle.FixingLayoutMatcher;
 import com.intellij.psi.codeStyle.MinusculeMatcher;
 import com.intellij.psi.codeStyle.NameUtil;
 import com.intellij.psi.search.GlobalSearchScope;
@@ -162,14 +163,24 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameInScopeItemP
       long started = System.currentTimeMillis();
       String fullPattern = parameters.getCompletePattern();
       MinusculeMatcher matcher = buildPatternMatcher(namePattern);
-      ((ChooseByNameModelEx)model).processNames(sequence -> {
-        indicator.checkCanceled();
-        MatchResult result = matches(base, fullPattern, matcher, sequence);
-        if (result != null) {
-          collect.consume(result);
-          return true;
+      // names without letters or digits of the pattern are skipped by models which can do it cheaply, see NameSnapshot
+      long requiredCharMask = canSkipNamesWithoutPatternChars(model, matcher) ? NameSnapshot.getCharMask(namePattern) : 0;
+      ((ChooseByNameModelEx)model).processNames(new NameSnapshot.CandidateProcessor() {
+        @Override
+        public long getRequiredCharMask() {
+          return requiredCharMask;
+        }
+
+        @Override
+        public boolean process(String sequence) {
+          indicator.checkCanceled();
+          MatchResult result = matches(base, fullPattern, matcher, sequence);
+          if (result != null) {
+            collect.consume(result);
+            return true;
+          }
+          return false;
         }
-        return false;
       }, parameters);
       if (LOG.isDebugEnabled()) {
         LOG.debug("loaded + matched:"+ (System.currentTimeMillis() - started)+ "," + collect.getResult().size());
@@ -189,6 +200,15 @@ public class DefaultChooseByNameItemProvider implements ChooseByNameInScopeItemP
     return namesList;
   }
 
+  /**
+   * {@link com.intellij.psi.codeStyle.MinusculeMatcherImpl} matches only names containing every letter and digit of its pattern,
+   * in any case, and so does {@link FixingLayoutMatcher} whose fallback pattern keeps all ASCII characters.
+   * Typo-tolerant and custom matchers may accept other names.
+   */
+  private static boolean canSkipNamesWithoutPatternChars(@NotNull ChooseByNameModel model, @NotNull MinusculeMatcher matcher) {
+    return !(model instanceof CustomMatcherModel) && matcher instanceof FixingLayoutMatcher;
+  }
+
   @NotNull
   private static FindSymbolParameters createParameters(@NotNull ChooseByNameViewModel base, @NotNull String pattern, boolean everywhere) {
     ChooseByNameModel model = base.getModel();
@@ -0,0 +1,82 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.ide.util.gotoByName;
+
+import com.intellij.psi.search.GlobalSearchScope;
+import com.intellij.util.ArrayUtilRt;
+import com.intellij.util.Processor;
+import com.intellij.util.indexing.FindSymbolParameters;
+import com.intellij.util.indexing.IdFilter;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.List;
+
+/**
+ * Names of a {@link com.intellij.navigation.ChooseByNameContributor} collected for some scope, so a goto popup doesn't load them
+ * from indices again on every typed character while nothing changes. Every name has a mask of ASCII letters and digits it contains:
+ * a name without some letter or digit of a pattern can't match it, so most names are rejected without running a matcher.
+ */
+final class NameSnapshot {
+  private final String[] myNames;
+  private final long[] myCharMasks;
+  private final GlobalSearchScope myScope;
+  @Nullable private final IdFilter myIdFilter;
+  private final long myModificationCount;
+
+  /**
+   * Name processor which needs only names containing letters and digits of {@link #getRequiredCharMask()}
+   */
+  interface CandidateProcessor extends Processor<String> {
+    long getRequiredCharMask();
+  }
+
+  NameSnapshot(@NotNull List<String> names, @NotNull FindSymbolParameters parameters, long modificationCount) {
+    myNames = ArrayUtilRt.toStringArray(names);
+    myCharMasks = new long[myNames.length];
+    for (int i = 0; i < myNames.length; i++) {
+      myCharMasks[i] = myNames[i] == null ? 0 : getCharMask(myNames[i]);
+    }
+    myScope = parameters.getSearchScope();
+    myIdFilter = parameters.getIdFilter();
+    myModificationCount = modificationCount;
+  }
+
+  boolean isUpToDate(@NotNull FindSymbolParameters parameters, long modificationCount) {
+    return myModificationCount == modificationCount && myIdFilter == parameters.getIdFilter() && myScope.equals(parameters.getSearchScope());
+  }
+
+  /**
+   * @return mask of ASCII letters (ignoring case) and digits in the text
+   */
+  static long getCharMask(@NotNull CharSequence text) {
+    long mask = 0;
+    for (int i = 0; i < text.length(); i++) {
+      char c = text.charAt(i);
+      if (c >= 'a' && c <= 'z') {
+        mask |= 1L << (c - 'a');
+      }
+      else if (c >= 'A' && c <= 'Z') {
+        mask |= 1L << (c - 'A');
+      }
+      else if (c >= '0' && c <= '9') {
+        mask |= 1L << (c - '0' + 26);
+      }
+    }
+    return mask;
+  }
+
+  static long getRequiredCharMask(@NotNull Processor<?> processor) {
+    return processor instanceof CandidateProcessor ? ((CandidateProcessor)processor).getRequiredCharMask() : 0;
+  }
+
+  /**
+   * Passes the processor names which contain all letters and digits of the mask
+   */
+  void processNames(long requiredCharMask, @NotNull Processor<? super String> processor) {
+    for (int i = 0; i < myNames.length; i++) {
+      if ((myCharMasks[i] & requiredCharMask) == requiredCharMask) {
+        processor.process(myNames[i]);
+      }
+    }
+  }
+}
@@ -104,12 +104,21 @@ class LazyStubData {
   private final AbstractStringEnumerator myStorage;
   private final MostlyUShortIntList myParentsAndStarts;
   private final byte[] mySerializedStubs;
+  private final int mySerializedStubsOffset;
+  private final int mySerializedStubsLength;
   private final BitSet myAllStarts;
 
-  LazyStubData(AbstractStringEnumerator storage, MostlyUShortIntList parentsAndStarts, byte[] serializedStubs, BitSet allStarts) {
+  LazyStubData(AbstractStringEnumerator storage,
+               MostlyUShortIntList parentsAndStarts,
+               byte[] serializedStubs,
+               int serializedStubsOffset,
+               int serializedStubsLength,
+               BitSet allStarts) {
     myStorage = storage;
     myParentsAndStarts = parentsAndStarts;
     mySerializedStubs = serializedStubs;
+    mySerializedStubsOffset = serializedStubsOffset;
+    mySerializedStubsLength = serializedStubsLength;
     myAllStarts = allStarts;
   }
 
@@ -137,7 +146,7 @@ class LazyStubData {
     if (start == 0) return new ByteArrayInputStream(ArrayUtilRt.EMPTY_BYTE_ARRAY);
 
     int end = myAllStarts.nextSetBit(start + 1);
-    if (end < 0) end = mySerializedStubs.length + 1;
-    return new ByteArrayInputStream(mySerializedStubs, start - 1, end - start);
+    if (end < 0) end = mySerializedStubsLength + 1;
+    return new ByteArrayInputStream(mySerializedStubs, mySerializedStubsOffset + start - 1, end - start);
   }
 }
\ No newline at end of file
@@ -0,0 +1,27 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.psi.stubs;
+
+import com.intellij.util.io.UnsyncByteArrayInputStream;
+import org.jetbrains.annotations.NotNull;
+
+/**
+ * Stream over bytes of a {@link SerializedStubTree} which lets lazily deserialized stubs refer to the bytes instead of copying them.
+ * The array must not be modified afterwards.
+ */
+final class SerializedStubInputStream extends UnsyncByteArrayInputStream {
+  private final int myLength;
+
+  SerializedStubInputStream(@NotNull byte[] bytes, int length) {
+    super(bytes, 0, length);
+    myLength = length;
+  }
+
+  @NotNull
+  byte[] getBytes() {
+    return myBuffer;
+  }
+
+  int getPosition() {
+    return myLength - available();
+  }
+}
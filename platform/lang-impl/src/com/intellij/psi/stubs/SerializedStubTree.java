@@ -103,7 +103,7 @@ public class SerializedStubTree {
       myStubElement = null;
       if (willIndexStub) return stubElement;
     }
-    return serializationManager.deserialize(new UnsyncByteArrayInputStream(myBytes));
+    return serializationManager.deserialize(new SerializedStubInputStream(myBytes, myLength));
   }
 
   public void indexTree() throws SerializerNotFoundException {
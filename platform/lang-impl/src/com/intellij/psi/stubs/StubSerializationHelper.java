@@ -165,11 +165,11 @@ class StubSerializationHelper {
       Logger.getInstance(getClass()).error("Incorrect stub files count during deserialization:"+stubFilesCount);
     }
 
-    Stub baseStub = deserializeRoot(inputStream, storage, serializerLocalEnumerator);
+    Stub baseStub = deserializeRoot(stream, inputStream, storage, serializerLocalEnumerator);
     final List<PsiFileStub> stubs = new ArrayList<>(stubFilesCount);
     if (baseStub instanceof PsiFileStub) stubs.add((PsiFileStub)baseStub);
     for (int j = 1; j < stubFilesCount; j++) {
-      Stub deserialize = deserializeRoot(inputStream, storage, serializerLocalEnumerator);
+      Stub deserialize = deserializeRoot(stream, inputStream, storage, serializerLocalEnumerator);
       if (deserialize instanceof PsiFileStub) {
         final PsiFileStub fileStub = (PsiFileStub)deserialize;
         stubs.add(fileStub);
@@ -187,7 +187,8 @@ class StubSerializationHelper {
     return baseStub;
   }
 
-  private Stub deserializeRoot(StubInputStream inputStream,
+  private Stub deserializeRoot(InputStream rawStream,
+                               StubInputStream inputStream,
                                FileLocalStringEnumerator storage,
                                IntEnumerator serializerLocalEnumerator) throws IOException, SerializerNotFoundException {
     ObjectStubSerializer<?, Stub> serializer = getClassById(DataInputOutputUtil.readINT(inputStream), null, serializerLocalEnumerator);
@@ -195,7 +196,7 @@ class StubSerializationHelper {
     try {
       Stub stub = serializer.deserialize(inputStream, null);
       if (stub instanceof StubBase) {
-        deserializeStubList((StubBase)stub, serializer, inputStream, storage, serializerLocalEnumerator);
+        deserializeStubList((StubBase)stub, serializer, rawStream, inputStream, storage, serializerLocalEnumerator);
       } else {
         deserializeChildren(inputStream, stub, serializerLocalEnumerator);
       }
@@ -224,6 +225,7 @@ class StubSerializationHelper {
 
   private void deserializeStubList(StubBase<?> root,
                                    ObjectStubSerializer rootType,
+                                   InputStream rawStream,
                                    StubInputStream inputStream,
                                    FileLocalStringEnumerator storage,
                                    IntEnumerator serializerLocalEnumerator)
@@ -268,8 +270,7 @@ class StubSerializationHelper {
         deserializeChildren(0);
       }
     }.deserializeRoot();
-    byte[] serializedStubs = readByteArray(inputStream);
-    stubList.setStubData(new LazyStubData(storage, parentsAndStarts, serializedStubs, allStarts));
+    stubList.setStubData(readStubData(rawStream, inputStream, storage, parentsAndStarts, allStarts));
   }
 
   private void serializeStubList(StubList stubList,
@@ -308,16 +309,31 @@ class StubSerializationHelper {
     return tempBuffer.size() == 0 ? ArrayUtilRt.EMPTY_BYTE_ARRAY : tempBuffer.toByteArray();
   }
 
-  private byte[] readByteArray(StubInputStream inputStream) throws IOException {
+  @NotNull
+  private LazyStubData readStubData(InputStream rawStream,
+                                    StubInputStream inputStream,
+                                    FileLocalStringEnumerator storage,
+                                    MostlyUShortIntList parentsAndStarts,
+                                    BitSet allStarts) throws IOException {
     int length = DataInputOutputUtil.readINT(inputStream);
-    if (length == 0) return ArrayUtilRt.EMPTY_BYTE_ARRAY;
+    if (length == 0) return new LazyStubData(storage, parentsAndStarts, ArrayUtilRt.EMPTY_BYTE_ARRAY, 0, 0, allStarts);
+
+    if (rawStream instanceof SerializedStubInputStream) {
+      // stub data stays in the serialized tree bytes, the rest of the stream is not buffered, so the position is exact
+      SerializedStubInputStream bytesStream = (SerializedStubInputStream)rawStream;
+      int offset = bytesStream.getPosition();
+      if (bytesStream.skip(length) != length) {
+        Logger.getInstance(getClass()).error("Serialized array length mismatch");
+      }
+      return new LazyStubData(storage, parentsAndStarts, bytesStream.getBytes(), offset, length, allStarts);
+    }
 
     byte[] array = new byte[length];
     int read = inputStream.read(array);
     if (read != array.length) {
       Logger.getInstance(getClass()).error("Serialized array length mismatch");
     }
-    return array;
+    return new LazyStubData(storage, parentsAndStarts, array, 0, length, allStarts);
   }
 
   private static void writeByteArray(DataOutput out, byte[] array, int len) throws IOException {
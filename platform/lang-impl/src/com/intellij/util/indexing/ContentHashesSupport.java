@@ -19,6 +19,8 @@ import com.intellij.openapi.fileTypes.FileType;
 import com.intellij.openapi.util.ShutDownTracker;
 import com.intellij.openapi.vfs.newvfs.persistent.ContentHashesUtil;
 import com.intellij.openapi.vfs.newvfs.persistent.FlushingDaemon;
+import com.intellij.util.containers.ConcurrentIntObjectMap;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.io.IOUtil;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -27,12 +29,27 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.Charset;
 import java.security.MessageDigest;
+import java.util.Objects;
 
 /**
  * @author Maxim.Mossienko
  */
 class ContentHashesSupport {
   private static volatile ContentHashesUtil.HashEnumerator ourHashesWithFileType;
+  // VFS stores identical contents once, so hashes computed for a VFS content id are valid for every file sharing it
+  private static final ConcurrentIntObjectMap<VfsContentHash> ourVfsContentHashes = ContainerUtil.createConcurrentIntObjectSoftValueMap();
+
+  private static class VfsContentHash {
+    final String myFileTypeName;
+    final String myCharsetName;
+    final byte[] myHash;
+
+    VfsContentHash(@NotNull String fileTypeName, @Nullable String charsetName, @NotNull byte[] hash) {
+      myFileTypeName = fileTypeName;
+      myCharsetName = charsetName;
+      myHash = hash;
+    }
+  }
 
   static void initContentHashesEnumerator() throws IOException {
     if (ourHashesWithFileType != null) return;
@@ -68,6 +85,33 @@ class ContentHashesSupport {
     return messageDigest.digest();
   }
 
+  /**
+   * Same as {@link #calcContentHash(byte[], FileType)} for binary files and {@link #calcContentHashWithFileType(byte[], Charset, FileType)}
+   * otherwise, but the hash is computed once per deduplicated VFS content
+   *
+   * @param vfsContentId id of VFS content the bytes were loaded from or 0 if unknown
+   */
+  @NotNull
+  static byte[] calcContentHash(int vfsContentId,
+                                @NotNull byte[] bytes,
+                                @Nullable Charset charset,
+                                @NotNull FileType fileType,
+                                boolean binary) {
+    if (vfsContentId <= 0) {
+      return binary ? calcContentHash(bytes, fileType) : calcContentHashWithFileType(bytes, charset, fileType);
+    }
+
+    String charsetName = binary ? null : charset != null ? charset.name() : "null_charset";
+    VfsContentHash cached = ourVfsContentHashes.get(vfsContentId);
+    if (cached != null && cached.myFileTypeName.equals(fileType.getName()) && Objects.equals(cached.myCharsetName, charsetName)) {
+      return cached.myHash;
+    }
+
+    byte[] hash = binary ? calcContentHash(bytes, fileType) : calcContentHashWithFileType(bytes, charset, fileType);
+    ourVfsContentHashes.put(vfsContentId, new VfsContentHash(fileType.getName(), charsetName, hash));
+    return hash;
+  }
+
   static int calcContentHashIdWithFileType(@NotNull byte[] bytes, @Nullable Charset charset, @NotNull FileType fileType) throws IOException {
     return enumerateHash(calcContentHashWithFileType(bytes, charset, fileType));
   }
@@ -80,6 +124,11 @@ class ContentHashesSupport {
     return ourHashesWithFileType.enumerate(digest);
   }
 
+  @NotNull
+  static byte[] getHash(int hashId) throws IOException {
+    return ourHashesWithFileType.valueOf(hashId);
+  }
+
   static byte[] calcContentHashWithFileType(@NotNull byte[] bytes, @Nullable Charset charset, @NotNull FileType fileType) {
     MessageDigest messageDigest = ContentHashesUtil.HASHER_CACHE.getValue();
 
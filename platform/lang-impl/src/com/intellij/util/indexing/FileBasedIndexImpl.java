@@ -41,6 +41,7 @@ import com.intellij.openapi.vfs.newvfs.ManagingFS;
 import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
 import com.intellij.openapi.vfs.newvfs.events.VFileEvent;
 import com.intellij.openapi.vfs.newvfs.impl.VirtualFileSystemEntry;
+import com.intellij.openapi.vfs.newvfs.persistent.FSRecords;
 import com.intellij.openapi.vfs.newvfs.persistent.FlushingDaemon;
 import com.intellij.openapi.vfs.newvfs.persistent.PersistentFS;
 import com.intellij.psi.PsiDocumentManager;
@@ -1530,8 +1531,18 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
   }
 
   public void indexFileContent(@Nullable Project project, @NotNull com.intellij.ide.caches.FileContent content) {
+    indexFileContent(project, content, null);
+  }
+
+  /**
+   * @param batcher if not null, collects updates of indices to be written later, the file is reported as indexed after they are written
+   */
+  void indexFileContent(@Nullable Project project,
+                        @NotNull com.intellij.ide.caches.FileContent content,
+                        @Nullable IndexUpdateBatcher batcher) {
     VirtualFile file = content.getVirtualFile();
     final int fileId = Math.abs(getIdMaskingNonIdBasedFile(file));
+    IndexUpdateBatcher.FileUpdates fileUpdates = batcher != null ? batcher.startFile(() -> fileIndexed(fileId, file)) : null;
 
     try {
       // if file was scheduled for update due to vfs events then it is present in myFilesToUpdate
@@ -1542,22 +1553,44 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
       if (!file.isValid() || isTooLarge(file)) {
         removeDataFromIndicesForFile(fileId, file);
         if (file instanceof DeletedVirtualFileStub && ((DeletedVirtualFileStub)file).isResurrected()) {
-          doIndexFileContent(project, new com.intellij.ide.caches.FileContent(((DeletedVirtualFileStub)file).getOriginalFile()));
+          doIndexFileContent(project, new com.intellij.ide.caches.FileContent(((DeletedVirtualFileStub)file).getOriginalFile()), null);
         }
       }
       else {
-        doIndexFileContent(project, content);
+        doIndexFileContent(project, content, fileUpdates);
       }
     }
     finally {
       IndexingStamp.flushCache(fileId);
     }
 
+    if (fileUpdates != null) {
+      fileUpdates.allScheduled();
+    }
+    else {
+      fileIndexed(fileId, file);
+    }
+  }
+
+  private void fileIndexed(int fileId, @NotNull VirtualFile file) {
     myChangedFilesCollector.removeFileIdFromFilesScheduledForUpdate(fileId);
     if (file instanceof VirtualFileSystemEntry) ((VirtualFileSystemEntry)file).setFileIndexed(true);
   }
 
-  private void doIndexFileContent(@Nullable Project project, @NotNull final com.intellij.ide.caches.FileContent content) {
+  /**
+   * @return id of the deduplicated VFS content the loaded bytes belong to or 0 if it can't be determined reliably,
+   * e.g. the file has been changed after its bytes were loaded
+   */
+  private static int getUpToDateContentId(@NotNull com.intellij.ide.caches.FileContent content, @NotNull byte[] bytes) {
+    VirtualFile file = content.getVirtualFile();
+    if (!FSRecords.WE_HAVE_CONTENT_HASHES || !(file instanceof VirtualFileWithId)) return 0;
+    if (file.getTimeStamp() != content.getTimeStamp() || file.getLength() != bytes.length) return 0;
+    return PersistentFS.getInstance().getUpToDateContentId(file);
+  }
+
+  private void doIndexFileContent(@Nullable Project project,
+                                  @NotNull final com.intellij.ide.caches.FileContent content,
+                                  @Nullable IndexUpdateBatcher.FileUpdates fileUpdates) {
     final VirtualFile file = content.getVirtualFile();
     myFileTypeManager.freezeFileTypeTemporarilyIn(file, () -> {
       final FileType fileType = file.getFileType();
@@ -1584,13 +1617,11 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
 
             if (IdIndex.ourSnapshotMappingsEnabled) {
               FileType substituteFileType = SubstitutedFileType.substituteFileType(file, fileType, finalProject);
-              byte[] hash = fileType.isBinary() ?
-                            ContentHashesSupport.calcContentHash(currentBytes, substituteFileType) :
-                            ContentHashesSupport.calcContentHashWithFileType(
-                              currentBytes,
-                              fc.getCharset(),
-                              substituteFileType
-                            );
+              byte[] hash = ContentHashesSupport.calcContentHash(getUpToDateContentId(content, currentBytes),
+                                                                 currentBytes,
+                                                                 fileType.isBinary() ? null : fc.getCharset(),
+                                                                 substituteFileType,
+                                                                 fileType.isBinary());
               fc.setHash(hash);
             }
 
@@ -1600,7 +1631,7 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
 
           try {
             ProgressManager.checkCanceled();
-            updateSingleIndex(indexId, file, inputId, fc);
+            updateSingleIndex(indexId, file, inputId, fc, fileUpdates);
             currentIndexedStates.remove(indexId);
           }
           catch (ProcessCanceledException e) {
@@ -1617,7 +1648,7 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
       for(ID<?, ?> indexId:currentIndexedStates) {
         if(!getIndex(indexId).isIndexedStateForFile(inputId, file)) {
           ProgressManager.checkCanceled();
-          updateSingleIndex(indexId, file, inputId, null);
+          updateSingleIndex(indexId, file, inputId, null, fileUpdates);
         }
       }
     });
@@ -1653,6 +1684,14 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
   }
 
   private void updateSingleIndex(@NotNull ID<?, ?> indexId, VirtualFile file, final int inputId, @Nullable FileContent currentFC) {
+    updateSingleIndex(indexId, file, inputId, currentFC, null);
+  }
+
+  private void updateSingleIndex(@NotNull ID<?, ?> indexId,
+                                 VirtualFile file,
+                                 final int inputId,
+                                 @Nullable FileContent currentFC,
+                                 @Nullable IndexUpdateBatcher.FileUpdates fileUpdates) {
     if (!myExtensionsRelatedDataWasLoaded) reportUnexpectedAsyncInitState();
     if (!RebuildStatus.isOk(indexId) && !myIsUnitTestMode) {
       return; // the index is scheduled for rebuild, no need to update
@@ -1673,7 +1712,15 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
       final Computable<Boolean> update = index.update(inputId, currentFC);
       updateCalculated = true;
 
-      scheduleUpdate(indexId, update, file, inputId, hasContent);
+      if (fileUpdates != null) {
+        fileUpdates.add(indexId, update, () -> {
+          updateIndexedState(indexId, file, inputId, hasContent);
+          IndexingStamp.flushCache(inputId);
+        });
+      }
+      else {
+        scheduleUpdate(indexId, update, file, inputId, hasContent);
+      }
     }
     catch (RuntimeException exception) {
       Throwable causeToRebuildIndex = getCauseToRebuildIndex(exception);
@@ -1729,16 +1776,70 @@ public final class FileBasedIndexImpl extends FileBasedIndex implements Disposab
   }
   private void scheduleUpdate(@NotNull final ID<?, ?> indexId, @NotNull Computable<Boolean> update, VirtualFile file, final int inputId, final boolean hasContent) {
     if (runUpdate(false, update)) {
-      ConcurrencyUtil.withLock(myReadLock, ()->{
-        UpdatableIndex<?, ?, FileContent> index = getIndex(indexId);
-        if (hasContent) {
-          index.setIndexedStateForFile(inputId, file);
-        }
-        else {
-          index.resetIndexedStateForFile(inputId);
+      updateIndexedState(indexId, file, inputId, hasContent);
+    }
+  }
+
+  private void updateIndexedState(@NotNull ID<?, ?> indexId, VirtualFile file, int inputId, boolean hasContent) {
+    ConcurrencyUtil.withLock(myReadLock, ()->{
+      UpdatableIndex<?, ?, FileContent> index = getIndex(indexId);
+      if (hasContent) {
+        index.setIndexedStateForFile(inputId, file);
+      }
+      else {
+        index.resetIndexedStateForFile(inputId);
+      }
+    });
+  }
+
+  /**
+   * Creates a batcher for bulk indexing of many files by {@link UnindexedFilesUpdater}: updates computed by its indexing threads
+   * are written to every index in batches under single write lock acquisition, all of them are written by {@link IndexUpdateBatcher#flush()}
+   */
+  @NotNull
+  IndexUpdateBatcher createUpdateBatcher() {
+    return new IndexUpdateBatcher(new IndexUpdateBatcher.IndexUpdateWriter() {
+      @NotNull
+      @Override
+      public Lock getWriteLock(@NotNull ID<?, ?> indexId) {
+        return getIndex(indexId).getWriteLock();
+      }
+
+      @Override
+      public void write(@NotNull ID<?, ?> indexId, @NotNull List<IndexUpdateBatcher.PendingUpdate> updates) {
+        writeUpdatesBatch(indexId, updates);
+      }
+    });
+  }
+
+  private void writeUpdatesBatch(@NotNull ID<?, ?> indexId, @NotNull List<IndexUpdateBatcher.PendingUpdate> updates) {
+    boolean[] written = new boolean[updates.size()];
+    try {
+      runUpdate(false, () -> {
+        boolean rebuildRequested = false;
+        for (int i = 0; i < written.length; i++) {
+          try {
+            written[i] = updates.get(i).update.compute();
+          }
+          catch (RuntimeException exception) {
+            // files of the failed updates stay unindexed, the rest of the batch is still written
+            if (getCauseToRebuildIndex(exception) == null) {
+              LOG.error(exception);
+            }
+            else if (!rebuildRequested) {
+              rebuildRequested = true;
+              requestRebuild(indexId, exception);
+            }
+          }
         }
+        return true;
       });
     }
+    finally {
+      for (int i = 0; i < written.length; i++) {
+        updates.get(i).written(written[i]);
+      }
+    }
   }
 
   private boolean needsFileContentLoading(@NotNull ID<?, ?> indexId) {
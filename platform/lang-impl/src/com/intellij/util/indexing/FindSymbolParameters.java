@@ -11,6 +11,8 @@ import com.intellij.util.ObjectUtils;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.Objects;
+
 public class FindSymbolParameters {
   private final String myCompletePattern;
   private final String myLocalPatternName;
@@ -88,11 +90,28 @@ public class FindSymbolParameters {
       project == null ? new EverythingGlobalScope() :
       searchInLibraries ? ProjectScope.getAllScope(project) : ProjectScope.getProjectScope(project);
 
-    return baseScope.intersectWith(new EverythingGlobalScope(project) {
-      @Override
-      public boolean contains(@NotNull VirtualFile file) {
-        return !(file.getFileSystem() instanceof HiddenFileSystem);
-      }
-    });
+    return baseScope.intersectWith(new NotHiddenFilesScope(project));
+  }
+
+  // equal for the same project, so scopes for the same parameters are equal too, and names collected for one of them can be reused
+  private static class NotHiddenFilesScope extends EverythingGlobalScope {
+    NotHiddenFilesScope(@Nullable Project project) {
+      super(project);
+    }
+
+    @Override
+    public boolean contains(@NotNull VirtualFile file) {
+      return !(file.getFileSystem() instanceof HiddenFileSystem);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      return o instanceof NotHiddenFilesScope && ((NotHiddenFilesScope)o).getProject() == getProject();
+    }
+
+    @Override
+    protected int calcHashCode() {
+      return Objects.hashCode(getProject());
+    }
   }
 }
@@ -0,0 +1,244 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.ByteArraySequence;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Read-only prebuilt data of a snapshot-mapping index keyed by content hash (see {@link ContentHashesSupport}), so the same JDK or
+ * library contents indexed once, e.g. on CI, can be reused on any machine and in any project without indexing them again.
+ * <p>
+ * Bundles are {@code <index name>.ibundle} files in directories listed in {@code idea.index.bundles} property. They are produced by
+ * running the IDE with {@code idea.index.bundles.export} property pointing to a directory: data of all contents indexed by the
+ * instance is written there when indices are closed. Indices marked with {@link SettingsDependentIndex} neither use nor produce bundles,
+ * and an index stops using them once it's rebuilt.
+ * <p>
+ * File format: header (magic, format version, index version, hash length, entry count), a table of (hash, data offset, data length)
+ * sorted by hash and serialized input data of every entry. The file is memory-mapped and looked up with a binary search.
+ */
+final class IndexBundle {
+  private static final Logger LOG = Logger.getInstance(IndexBundle.class);
+
+  static final String BUNDLES_PROPERTY = "idea.index.bundles";
+  static final String EXPORT_PROPERTY = "idea.index.bundles.export";
+  private static final String EXTENSION = ".ibundle";
+
+  private static final int MAGIC = 0x49425831;
+  private static final int FORMAT_VERSION = 1;
+  private static final int HEADER_SIZE = 5 * 4;
+
+  private static final ConcurrentMap<String, List<IndexBundle>> ourBundles = ContainerUtil.newConcurrentMap();
+
+  private final File myFile;
+  private final ByteBuffer myBuffer;
+  private final int myHashLength;
+  private final int myEntryCount;
+  private final int myEntrySize;
+
+  private IndexBundle(@NotNull File file, @NotNull ByteBuffer buffer, int hashLength, int entryCount) {
+    myFile = file;
+    myBuffer = buffer;
+    myHashLength = hashLength;
+    myEntryCount = entryCount;
+    myEntrySize = hashLength + 8 + 4;
+  }
+
+  /**
+   * @return bundles with data of the given index version, in order of {@code idea.index.bundles} directories
+   */
+  @NotNull
+  static List<IndexBundle> getBundles(@NotNull ID<?, ?> indexId, int indexVersion) {
+    String roots = System.getProperty(BUNDLES_PROPERTY);
+    if (StringUtil.isEmptyOrSpaces(roots)) return Collections.emptyList();
+    return ourBundles.computeIfAbsent(indexId.getName(), name -> {
+      List<IndexBundle> bundles = new ArrayList<>();
+      for (String root : StringUtil.split(roots, File.pathSeparator)) {
+        File file = new File(root.trim(), name + EXTENSION);
+        if (!file.isFile()) continue;
+        try {
+          IndexBundle bundle = open(file, indexVersion);
+          if (bundle != null) bundles.add(bundle);
+        }
+        catch (IOException | RuntimeException e) {
+          LOG.warn("Cannot open index bundle " + file, e);
+        }
+      }
+      if (!bundles.isEmpty()) LOG.info("Index bundles attached for " + name + ": " + bundles);
+      return bundles;
+    });
+  }
+
+  @Nullable
+  private static IndexBundle open(@NotNull File file, int indexVersion) throws IOException {
+    ByteBuffer buffer;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size < HEADER_SIZE || size > Integer.MAX_VALUE) throw new IOException("Unexpected size: " + size);
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+    }
+
+    if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION) throw new IOException("Unknown format");
+    if (buffer.getInt(8) != indexVersion) {
+      LOG.info("Index bundle " + file + " is skipped: it was built by another index version");
+      return null;
+    }
+    int hashLength = buffer.getInt(12);
+    int entryCount = buffer.getInt(16);
+    if (hashLength <= 0 || entryCount < 0 || HEADER_SIZE + (long)entryCount * (hashLength + 12) > buffer.limit()) {
+      throw new IOException("Corrupted header");
+    }
+    return new IndexBundle(file, buffer, hashLength, entryCount);
+  }
+
+  /**
+   * @return serialized input data of content with given hash or null if the bundle has no such content
+   */
+  @Nullable
+  ByteArraySequence find(@NotNull byte[] hash) {
+    if (hash.length != myHashLength) return null;
+
+    int low = 0;
+    int high = myEntryCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int entry = HEADER_SIZE + mid * myEntrySize;
+      int cmp = compareHash(entry, hash);
+      if (cmp < 0) {
+        low = mid + 1;
+      }
+      else if (cmp > 0) {
+        high = mid - 1;
+      }
+      else {
+        long offset = myBuffer.getLong(entry + myHashLength);
+        int length = myBuffer.getInt(entry + myHashLength + 8);
+        if (offset < 0 || offset + length > myBuffer.limit()) {
+          LOG.error("Corrupted entry in index bundle " + myFile);
+          return null;
+        }
+        byte[] data = new byte[length];
+        ByteBuffer duplicate = myBuffer.duplicate();
+        duplicate.position((int)offset);
+        duplicate.get(data);
+        return new ByteArraySequence(data);
+      }
+    }
+    return null;
+  }
+
+  private int compareHash(int entry, @NotNull byte[] hash) {
+    for (int i = 0; i < myHashLength; i++) {
+      int cmp = Integer.compare(myBuffer.get(entry + i) & 0xFF, hash[i] & 0xFF);
+      if (cmp != 0) return cmp;
+    }
+    return 0;
+  }
+
+  @Override
+  public String toString() {
+    return myFile.getPath() + " (" + myEntryCount + " entries)";
+  }
+
+  @NotNull
+  static File getBundleFile(@NotNull File directory, @NotNull ID<?, ?> indexId) {
+    return new File(directory, indexId.getName() + EXTENSION);
+  }
+
+  /**
+   * Collects data of a bundle in a temporary file and writes the bundle on close
+   */
+  static final class Writer implements Closeable {
+    private final File myFile;
+    private final File myDataFile;
+    private final int myIndexVersion;
+    private final DataOutputStream myData;
+    private final List<Entry> myEntries = new ArrayList<>();
+    private long myDataSize;
+
+    private static class Entry {
+      final byte[] hash;
+      final long offset;
+      final int length;
+
+      Entry(@NotNull byte[] hash, long offset, int length) {
+        this.hash = hash;
+        this.offset = offset;
+        this.length = length;
+      }
+    }
+
+    Writer(@NotNull File file, int indexVersion) throws IOException {
+      myFile = file;
+      myDataFile = new File(file.getPath() + ".data");
+      myIndexVersion = indexVersion;
+      FileUtil.createParentDirs(file);
+      myData = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myDataFile)));
+    }
+
+    void add(@NotNull byte[] hash, @NotNull ByteArraySequence data) throws IOException {
+      if (!myEntries.isEmpty() && myEntries.get(0).hash.length != hash.length) {
+        throw new IllegalArgumentException("Hashes of different length");
+      }
+      myData.write(data.getBytes(), data.getOffset(), data.getLength());
+      myEntries.add(new Entry(hash, myDataSize, data.getLength()));
+      myDataSize += data.getLength();
+    }
+
+    @Override
+    public void close() throws IOException {
+      myData.close();
+      try {
+        myEntries.sort((e1, e2) -> compareHashes(e1.hash, e2.hash));
+        List<Entry> entries = new ArrayList<>(myEntries.size());
+        for (Entry entry : myEntries) {
+          if (entries.isEmpty() || compareHashes(entries.get(entries.size() - 1).hash, entry.hash) != 0) entries.add(entry);
+        }
+
+        int hashLength = entries.isEmpty() ? 0 : entries.get(0).hash.length;
+        long dataStart = HEADER_SIZE + (long)entries.size() * (hashLength + 12);
+        if (dataStart + myDataSize > Integer.MAX_VALUE) throw new IOException("Index bundle is too large: " + myFile);
+
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(myFile)))) {
+          out.writeInt(MAGIC);
+          out.writeInt(FORMAT_VERSION);
+          out.writeInt(myIndexVersion);
+          out.writeInt(hashLength);
+          out.writeInt(entries.size());
+          for (Entry entry : entries) {
+            out.write(entry.hash);
+            out.writeLong(dataStart + entry.offset);
+            out.writeInt(entry.length);
+          }
+          try (InputStream in = new BufferedInputStream(new FileInputStream(myDataFile))) {
+            FileUtil.copy(in, out);
+          }
+        }
+      }
+      finally {
+        FileUtil.delete(myDataFile);
+      }
+    }
+
+    private static int compareHashes(@NotNull byte[] h1, @NotNull byte[] h2) {
+      for (int i = 0; i < h1.length; i++) {
+        int cmp = Integer.compare(h1[i] & 0xFF, h2[i] & 0xFF);
+        if (cmp != 0) return cmp;
+      }
+      return 0;
+    }
+  }
+}
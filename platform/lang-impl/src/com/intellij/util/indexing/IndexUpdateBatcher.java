@@ -0,0 +1,155 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.util.Computable;
+import com.intellij.openapi.util.registry.Registry;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Collects index updates computed by {@link UnindexedFilesUpdater} indexing threads and writes them to every index in batches,
+ * so the index write lock is taken once per batch instead of once per file. Indexing threads keep mapping file contents
+ * while one of them writes the accumulated batch. A file is reported as indexed only when updates of all its indices are written.
+ */
+class IndexUpdateBatcher {
+  private static final int BATCH_SIZE = Math.max(1, Registry.intValue("indexing.bulk.update.batch.size", 64));
+
+  private final Map<ID<?, ?>, IndexQueue> myQueues = new ConcurrentHashMap<>();
+
+  interface IndexUpdateWriter {
+    @NotNull
+    Lock getWriteLock(@NotNull ID<?, ?> indexId);
+
+    /**
+     * Writes all updates of the batch and reports result of each of them by {@link PendingUpdate#written(boolean)},
+     * write lock of the index is already held by the caller
+     */
+    void write(@NotNull ID<?, ?> indexId, @NotNull List<PendingUpdate> updates);
+  }
+
+  /**
+   * Updates of a single file: {@code onIndexed} is run once all of them are scheduled and successfully written
+   */
+  class FileUpdates {
+    private final Runnable myOnIndexed;
+    // one for the indexing thread until all updates are scheduled
+    private final AtomicInteger myPending = new AtomicInteger(1);
+    private volatile boolean myFailed;
+
+    private FileUpdates(@NotNull Runnable onIndexed) {
+      myOnIndexed = onIndexed;
+    }
+
+    void add(@NotNull ID<?, ?> indexId, @NotNull Computable<Boolean> update, @NotNull Runnable onSuccess) {
+      myPending.incrementAndGet();
+      IndexUpdateBatcher.this.add(indexId, new PendingUpdate(update, onSuccess, this));
+    }
+
+    void allScheduled() {
+      release();
+    }
+
+    private void release() {
+      if (myPending.decrementAndGet() == 0 && !myFailed) {
+        myOnIndexed.run();
+      }
+    }
+  }
+
+  static class PendingUpdate {
+    final Computable<Boolean> update;
+    private final Runnable myOnSuccess;
+    private final FileUpdates myFile;
+
+    private PendingUpdate(@NotNull Computable<Boolean> update, @NotNull Runnable onSuccess, @NotNull FileUpdates file) {
+      this.update = update;
+      myOnSuccess = onSuccess;
+      myFile = file;
+    }
+
+    void written(boolean success) {
+      if (success) {
+        myOnSuccess.run();
+      }
+      else {
+        myFile.myFailed = true;
+      }
+      myFile.release();
+    }
+  }
+
+  private static class IndexQueue {
+    final Queue<PendingUpdate> myUpdates = new ConcurrentLinkedQueue<>();
+    final AtomicInteger mySize = new AtomicInteger();
+    final Lock myWriting = new ReentrantLock();
+  }
+
+  private final IndexUpdateWriter myWriter;
+
+  IndexUpdateBatcher(@NotNull IndexUpdateWriter writer) {
+    myWriter = writer;
+  }
+
+  @NotNull
+  FileUpdates startFile(@NotNull Runnable onIndexed) {
+    return new FileUpdates(onIndexed);
+  }
+
+  private void add(@NotNull ID<?, ?> indexId, @NotNull PendingUpdate update) {
+    IndexQueue queue = myQueues.computeIfAbsent(indexId, __ -> new IndexQueue());
+    queue.myUpdates.add(update);
+    // only one thread writes particular index at a time, others proceed with indexing
+    if (queue.mySize.incrementAndGet() >= BATCH_SIZE && queue.myWriting.tryLock()) {
+      try {
+        drain(indexId, queue);
+      }
+      finally {
+        queue.myWriting.unlock();
+      }
+    }
+  }
+
+  /**
+   * Writes all pending updates, waiting for writes started by other threads
+   */
+  void flush() {
+    for (Map.Entry<ID<?, ?>, IndexQueue> entry : myQueues.entrySet()) {
+      IndexQueue queue = entry.getValue();
+      queue.myWriting.lock();
+      try {
+        drain(entry.getKey(), queue);
+      }
+      finally {
+        queue.myWriting.unlock();
+      }
+    }
+  }
+
+  private void drain(@NotNull ID<?, ?> indexId, @NotNull IndexQueue queue) {
+    List<PendingUpdate> batch = new ArrayList<>();
+    PendingUpdate update;
+    while ((update = queue.myUpdates.poll()) != null) {
+      queue.mySize.decrementAndGet();
+      batch.add(update);
+    }
+    if (batch.isEmpty()) return;
+
+    Lock writeLock = myWriter.getWriteLock(indexId);
+    writeLock.lock();
+    try {
+      myWriter.write(indexId, batch);
+    }
+    finally {
+      writeLock.unlock();
+    }
+  }
+}
@@ -23,6 +23,7 @@ import org.jetbrains.annotations.Nullable;
 import java.io.*;
 import java.nio.charset.Charset;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.stream.Stream;
@@ -32,6 +33,9 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
   private static final boolean doReadSavedPersistentData = SystemProperties.getBooleanProperty("idea.read.saved.persistent.index", true);
 
   private final ID<Key, Value> myIndexId;
+  private final int myIndexVersion;
+  private final boolean myBundlesApplicable;
+  private volatile List<IndexBundle> myBundles;
   private final InputMapExternalizer<Key, Value> myMapExternalizer;
   private final DataIndexer<Key, Value, Input> myIndexer;
   private final PersistentMapBasedForwardIndex myContents;
@@ -43,6 +47,10 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
 
   SnapshotInputMappings(IndexExtension<Key, Value, Input> indexExtension) throws IOException {
     myIndexId = (ID<Key, Value>)indexExtension.getName();
+    myIndexVersion = indexExtension.getVersion();
+    // bundles are keyed by content hash and index version only
+    myBundlesApplicable = !(indexExtension instanceof SettingsDependentIndex);
+    myBundles = myBundlesApplicable ? IndexBundle.getBundles(myIndexId, myIndexVersion) : Collections.emptyList();
     myIsPsiBackedIndex = FileBasedIndexImpl.isPsiDependentIndex(indexExtension);
     myMapExternalizer = new InputMapExternalizer<>(indexExtension);
     myIndexer = indexExtension.getIndexer();
@@ -144,6 +152,8 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
 
   @Override
   public void clear() throws IOException {
+    // the index is rebuilt, e.g. because settings its data depends on have changed, so prebuilt data can't be trusted either
+    myBundles = Collections.emptyList();
     try {
       if (myIndexingTrace != null) {
         File baseFile = myIndexingTrace.getBaseFile();
@@ -170,6 +180,16 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
 
   @Override
   public void close() throws IOException {
+    String exportDirectory = System.getProperty(IndexBundle.EXPORT_PROPERTY);
+    if (exportDirectory != null && myContents != null && myBundlesApplicable) {
+      try {
+        exportBundle(IndexBundle.getBundleFile(new File(exportDirectory), myIndexId));
+      }
+      catch (IOException e) {
+        LOG.error("Cannot export index bundle for " + myIndexId, e);
+      }
+    }
+
     Stream.of(myContents, myIndexingTrace).filter(Objects::nonNull).forEach(index -> {
       try {
         index.close();
@@ -216,7 +236,36 @@ class SnapshotInputMappings<Key, Value, Input> implements UpdatableSnapshotInput
     }
   }
 
+  private void exportBundle(@NotNull File file) throws IOException {
+    try (IndexBundle.Writer writer = new IndexBundle.Writer(file, myIndexVersion)) {
+      myContents.processKeys(hashId -> {
+        try {
+          ByteArraySequence contents = myContents.get(hashId);
+          if (contents != null) writer.add(ContentHashesSupport.getHash(hashId), contents);
+          return true;
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
+      });
+    }
+    LOG.info("Index bundle exported: " + file);
+  }
+
   private ByteArraySequence readContents(Integer hashId) throws IOException {
+    ByteArraySequence contents = readLocalContents(hashId);
+    List<IndexBundle> bundles = myBundles;
+    if (contents == null && !bundles.isEmpty() && hashId > 0) {
+      byte[] hash = ContentHashesSupport.getHash(hashId);
+      for (IndexBundle bundle : bundles) {
+        contents = bundle.find(hash);
+        if (contents != null) break;
+      }
+    }
+    return contents;
+  }
+
+  private ByteArraySequence readLocalContents(Integer hashId) throws IOException {
     if (SharedIndicesData.ourFileSharedIndicesEnabled) {
       if (SharedIndicesData.DO_CHECKS) {
         synchronized (myContents) {
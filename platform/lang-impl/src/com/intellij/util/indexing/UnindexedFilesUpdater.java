@@ -106,7 +106,13 @@ public class UnindexedFilesUpdater extends DumbModeTask {
   }
 
   private void indexFiles(ProgressIndicator indicator, List<VirtualFile> files) {
-    CacheUpdateRunner.processFiles(indicator, files, myProject, content -> myIndex.indexFileContent(myProject, content));
+    IndexUpdateBatcher batcher = myIndex.createUpdateBatcher();
+    try {
+      CacheUpdateRunner.processFiles(indicator, files, myProject, content -> myIndex.indexFileContent(myProject, content, batcher));
+    }
+    finally {
+      batcher.flush();
+    }
   }
 
   @Override
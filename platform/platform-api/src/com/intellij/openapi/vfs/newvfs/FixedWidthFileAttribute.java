@@ -0,0 +1,78 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.openapi.vfs.newvfs;
+
+import com.intellij.openapi.vfs.VirtualFile;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NonNls;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Set;
+
+/**
+ * Int or long valued file attribute. In contrast to {@link FileAttribute} the values are kept in a dense memory-mapped column indexed
+ * by file id, so reading or writing a value is a direct access without attribute storage lookups and stream decoding.
+ * <p>
+ * A value which has never been written reads as 0. Values are not guaranteed to survive an unclean shutdown or a version change,
+ * after which they read as 0 as well, so the attribute should hold data which can be recomputed.
+ */
+public final class FixedWidthFileAttribute {
+  private static final Set<String> ourRegisteredIds = ContainerUtil.newConcurrentSet();
+
+  private final String myId;
+  private final int myVersion;
+  private final int myWidth;
+
+  private FixedWidthFileAttribute(@NotNull String id, int version, int width) {
+    boolean added = ourRegisteredIds.add(id);
+    assert added : "Attribute id='" + id + "' is not unique";
+    myId = id;
+    myVersion = version;
+    myWidth = width;
+  }
+
+  @NotNull
+  public static FixedWidthFileAttribute intAttribute(@NonNls @NotNull String id, int version) {
+    return new FixedWidthFileAttribute(id, version, Integer.BYTES);
+  }
+
+  @NotNull
+  public static FixedWidthFileAttribute longAttribute(@NonNls @NotNull String id, int version) {
+    return new FixedWidthFileAttribute(id, version, Long.BYTES);
+  }
+
+  public int readInt(@NotNull VirtualFile file) {
+    assert myWidth == Integer.BYTES : myId;
+    return (int)ManagingFS.getInstance().readFixedWidthAttribute(file, this);
+  }
+
+  public void writeInt(@NotNull VirtualFile file, int value) {
+    assert myWidth == Integer.BYTES : myId;
+    ManagingFS.getInstance().writeFixedWidthAttribute(file, this, value);
+  }
+
+  public long readLong(@NotNull VirtualFile file) {
+    assert myWidth == Long.BYTES : myId;
+    return ManagingFS.getInstance().readFixedWidthAttribute(file, this);
+  }
+
+  public void writeLong(@NotNull VirtualFile file, long value) {
+    assert myWidth == Long.BYTES : myId;
+    ManagingFS.getInstance().writeFixedWidthAttribute(file, this, value);
+  }
+
+  @NotNull
+  public String getId() {
+    return myId;
+  }
+
+  public int getVersion() {
+    return myVersion;
+  }
+
+  /**
+   * @return size of a value in bytes
+   */
+  public int getWidth() {
+    return myWidth;
+  }
+}
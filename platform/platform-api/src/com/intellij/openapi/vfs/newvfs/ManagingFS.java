@@ -42,6 +42,10 @@ public abstract class ManagingFS implements FileSystemInterface {
   @NotNull
   public abstract DataOutputStream writeAttribute(@NotNull VirtualFile file, @NotNull FileAttribute att);
 
+  public abstract long readFixedWidthAttribute(@NotNull VirtualFile file, @NotNull FixedWidthFileAttribute att);
+
+  public abstract void writeFixedWidthAttribute(@NotNull VirtualFile file, @NotNull FixedWidthFileAttribute att, long value);
+
   /**
    * @return a number that's incremented every time something changes for the file: name, size, flags, content.
    * This number is persisted between IDE sessions and so it'll always increase. This method invocation means disk access, so it's not terribly cheap.
@@ -25,6 +25,7 @@ import com.intellij.openapi.progress.ProcessCanceledException;
 import com.intellij.openapi.progress.ProgressIndicator;
 import com.intellij.openapi.progress.ProgressIndicatorProvider;
 import com.intellij.openapi.progress.util.ProgressIndicatorUtils;
+import com.intellij.openapi.util.registry.Registry;
 import com.intellij.openapi.vfs.AsyncFileListener;
 import com.intellij.openapi.vfs.VfsBundle;
 import com.intellij.openapi.vfs.VirtualFile;
@@ -117,20 +118,38 @@ public class RefreshQueueImpl extends RefreshQueue implements Disposable {
     }
   }
 
+  /**
+   * Events of a large refresh (e.g. after a branch switch) are applied in batches, each in its own write action,
+   * so the EDT isn't blocked for the whole refresh and listeners get bounded chunks of events
+   */
   private void processAndFireEvents(@NotNull RefreshSessionImpl session, @Nullable TransactionId transaction) {
-    while (true) {
-      AtomicBoolean success = new AtomicBoolean();
-      ProgressIndicatorUtils.runWithWriteActionPriority(() -> success.set(tryProcessingEvents(session, transaction)), new SensitiveProgressWrapper(myRefreshIndicator));
-      if (success.get()) {
-        break;
-      }
+    List<? extends VFileEvent> allEvents = session.getEvents();
+    int batchSize = Math.max(1, Registry.intValue("vfs.refresh.events.batch.size", 10_000));
+    int start = 0;
+    do {
+      List<? extends VFileEvent> batch = allEvents.subList(start, Math.min(allEvents.size(), start + batchSize));
+      start += batch.size();
+      boolean lastBatch = start >= allEvents.size();
+      while (true) {
+        AtomicBoolean success = new AtomicBoolean();
+        ProgressIndicatorUtils.runWithWriteActionPriority(() -> success.set(tryProcessingEvents(session, batch, lastBatch, transaction)),
+                                                          new SensitiveProgressWrapper(myRefreshIndicator));
+        if (success.get()) {
+          break;
+        }
 
-      ProgressIndicatorUtils.yieldToPendingWriteActions();
+        ProgressIndicatorUtils.yieldToPendingWriteActions();
+      }
     }
+    while (start < allEvents.size());
   }
 
-  private static boolean tryProcessingEvents(@NotNull RefreshSessionImpl session, @Nullable TransactionId transaction) {
-    List<? extends VFileEvent> events = ContainerUtil.filter(session.getEvents(), e -> {
+  private static boolean tryProcessingEvents(@NotNull RefreshSessionImpl session,
+                                             @NotNull List<? extends VFileEvent> batch,
+                                             boolean lastBatch,
+                                             @Nullable TransactionId transaction) {
+    // files may have been invalidated by previous batches or by other write actions
+    List<? extends VFileEvent> events = ContainerUtil.filter(batch, e -> {
       VirtualFile file = e instanceof VFileCreateEvent ? ((VFileCreateEvent)e).getParent() : e.getFile();
       return file == null || file.isValid();
     });
@@ -140,7 +159,7 @@ public class RefreshQueueImpl extends RefreshQueue implements Disposable {
     Semaphore semaphore = new Semaphore(1);
     TransactionGuard.getInstance().submitTransaction(ApplicationManager.getApplication(), transaction, () -> {
       semaphore.up();
-      session.fireEvents(events, appliers);
+      session.fireEvents(events, appliers, lastBatch);
     });
 
     ProgressIndicator indicator = ProgressIndicatorProvider.getGlobalProgressIndicator();
@@ -44,6 +44,7 @@ class RefreshSessionImpl extends RefreshSession {
   private volatile boolean myCancelled;
   private final TransactionId myTransaction;
   private boolean myLaunched;
+  private boolean myFiringFailed;
 
   RefreshSessionImpl(boolean async, boolean recursive, @Nullable Runnable finishRunnable, @NotNull ModalityState context) {
     myIsAsync = async;
@@ -174,18 +175,35 @@ class RefreshSessionImpl extends RefreshSession {
   }
 
   void fireEvents(List<? extends VFileEvent> events, @Nullable List<AsyncFileListener.ChangeApplier> appliers) {
+    fireEvents(events, appliers, true);
+  }
+
+  /**
+   * Session events may be fired in several batches; the finish runnable is run and waiting threads are released after the last one.
+   * If firing of a batch fails, the rest of the batches are skipped.
+   */
+  void fireEvents(List<? extends VFileEvent> events, @Nullable List<AsyncFileListener.ChangeApplier> appliers, boolean lastBatch) {
+    boolean failed = true;
     try {
-      if ((myFinishRunnable != null || !events.isEmpty()) && !ApplicationManager.getApplication().isDisposed()) {
+      if (!myFiringFailed &&
+          (lastBatch && myFinishRunnable != null || !events.isEmpty()) &&
+          !ApplicationManager.getApplication().isDisposed()) {
         if (LOG.isDebugEnabled()) LOG.debug("events are about to fire: " + events);
-        WriteAction.run(() -> fireEventsInWriteAction(events, appliers));
+        WriteAction.run(() -> fireEventsInWriteAction(events, appliers, lastBatch));
       }
+      failed = false;
     }
     finally {
-      mySemaphore.up();
+      if (!myFiringFailed && (failed || lastBatch)) {
+        myFiringFailed = failed;
+        mySemaphore.up();
+      }
     }
   }
 
-  private void fireEventsInWriteAction(List<? extends VFileEvent> events, @Nullable List<AsyncFileListener.ChangeApplier> appliers) {
+  private void fireEventsInWriteAction(List<? extends VFileEvent> events,
+                                       @Nullable List<AsyncFileListener.ChangeApplier> appliers,
+                                       boolean lastBatch) {
     final VirtualFileManagerEx manager = (VirtualFileManagerEx)VirtualFileManager.getInstance();
 
     manager.fireBeforeRefreshStart(myIsAsync);
@@ -203,7 +221,7 @@ class RefreshSessionImpl extends RefreshSession {
         manager.fireAfterRefreshFinish(myIsAsync);
       }
       finally {
-        if (myFinishRunnable != null) {
+        if (lastBatch && myFinishRunnable != null) {
           myFinishRunnable.run();
         }
       }
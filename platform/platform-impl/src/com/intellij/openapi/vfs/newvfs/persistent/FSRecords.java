@@ -13,6 +13,7 @@ import com.intellij.openapi.util.io.FileAttributes;
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.openapi.vfs.newvfs.FileAttribute;
+import com.intellij.openapi.vfs.newvfs.FixedWidthFileAttribute;
 import com.intellij.openapi.vfs.newvfs.impl.FileNameCache;
 import com.intellij.openapi.vfs.newvfs.impl.VirtualDirectoryImpl;
 import com.intellij.openapi.vfs.newvfs.impl.VirtualFileSystemEntry;
@@ -57,6 +58,9 @@ public class FSRecords {
   private static final boolean useCompressionUtil = SystemProperties.getBooleanProperty("idea.use.lightweight.compression.for.vfs", false);
   private static final boolean useSmallAttrTable = SystemProperties.getBooleanProperty("idea.use.small.attr.table.for.vfs", true);
   private static final boolean ourStoreRootsSeparately = SystemProperties.getBooleanProperty("idea.store.roots.separately", false);
+  private static final boolean useRecordsJournal = SystemProperties.getBooleanProperty("idea.vfs.records.journal", true);
+  private static final long maxRecordsJournalSize = SystemProperties.getIntProperty("idea.vfs.records.journal.max.size.mb", 64) * 1024L * 1024L;
+  private static final boolean useTreeSnapshot = SystemProperties.getBooleanProperty("idea.vfs.tree.snapshot", true);
 
   //TODO[anyone] when bumping the version, please delete `ourSymlinkTargetAttr_old` and use it's value for `ourSymlinkTargetAttr`
   private static final int VERSION = 53 +
@@ -100,6 +104,8 @@ public class FSRecords {
   private static final int CONNECTED_MAGIC = 0x12ad34e4;
   private static final int SAFELY_CLOSED_MAGIC = 0x1f2f3f4f;
   private static final int CORRUPTED_MAGIC = 0xabcf7f7f;
+  // storages are forced and table writes are committed to the journal, but the table itself isn't forced
+  private static final int JOURNALED_MAGIC = 0x2e3e4e5e;
 
   private static final FileAttribute ourChildrenAttr = new FileAttribute("FsRecords.DIRECTORY_CHILDREN");
   private static final FileAttribute ourSymlinkTargetAttr = new FileAttribute("FsRecords.SYMLINK_TARGET_2");
@@ -157,12 +163,21 @@ public class FSRecords {
     private static Storage myAttributes;
     private static RefCountingStorage myContents;
     private static ResizeableMappedFile myRecords;
+    private static FSRecordsJournal myRecordsJournal;
+    private static FileAttributeColumns myAttributeColumns;
+    private static VfsTreeSnapshot myTreeSnapshot;
+    private static File myTreeSnapshotFile;
     private static PersistentBTreeEnumerator<byte[]> myContentHashesEnumerator;
     private static File myRootsFile;
     private static final VfsDependentEnum<String> myAttributesList = new VfsDependentEnum<>("attrib", EnumeratorStringDescriptor.INSTANCE, 1);
+    // FixedWidthFileAttribute ids are registered separately from FileAttribute ones, so the same id may be used by both
+    private static final VfsDependentEnum<String> myAttributeColumnsList =
+      new VfsDependentEnum<>("attribColumns", EnumeratorStringDescriptor.INSTANCE, 1);
     private static final TIntArrayList myFreeRecords = new TIntArrayList();
 
     private static volatile boolean myDirty;
+    /** header says {@link #JOURNALED_MAGIC}, accessed under {@link #r}/{@link #w} */
+    private static boolean myJournaled;
     /** accessed under {@link #r}/{@link #w} */
     private static ScheduledFuture<?> myFlushingFuture;
     /** accessed under {@link #r}/{@link #w} */
@@ -230,6 +245,9 @@ public class FSRecords {
       final File contentsFile = new File(basePath, "content" + VFS_FILES_EXTENSION);
       final File contentsHashesFile = new File(basePath, "contentHashes" + VFS_FILES_EXTENSION);
       final File recordsFile = new File(basePath, "records" + VFS_FILES_EXTENSION);
+      final File recordsJournalFile = new File(basePath, "records.journal");
+      final File attributeColumnsDir = new File(basePath, "attribColumns");
+      myTreeSnapshotFile = new File(basePath, "tree.snapshot");
       myRootsFile = ourStoreRootsSeparately ? new File(basePath, "roots" + VFS_FILES_EXTENSION) : null;
 
       final File vfsDependentEnumBaseFile = VfsDependentEnum.getBaseFile();
@@ -269,10 +287,18 @@ public class FSRecords {
         if (!aligned) LOG.error("Buffer size " + PagedFileStorage.BUFFER_SIZE + " is not aligned for record size " + RECORD_SIZE);
         myRecords = new ResizeableMappedFile(recordsFile, 20 * 1024, storageLockContext,
                                              PagedFileStorage.BUFFER_SIZE, aligned, IOUtil.BYTE_BUFFERS_USE_NATIVE_BYTE_ORDER);
+        if (useRecordsJournal) {
+          myRecordsJournal = new FSRecordsJournal(recordsJournalFile, maxRecordsJournalSize);
+        }
+        else {
+          FileUtil.delete(recordsJournalFile); // entries of a table modified since then must not be replayed if it's enabled again
+        }
+        myAttributeColumns = new FileAttributeColumns(attributeColumnsDir, storageLockContext);
 
         boolean initial = myRecords.length() == 0;
 
         if (initial) {
+          if (myRecordsJournal != null) myRecordsJournal.checkpoint(); // entries of the previous table are meaningless now
           cleanRecord(0); // Clean header
           cleanRecord(1); // Create root record
           setCurrentVersion();
@@ -283,13 +309,23 @@ public class FSRecords {
           throw new IOException("FS repository version mismatch: actual=" + version + " expected=" + VERSION);
         }
 
-        if (myRecords.getInt(HEADER_CONNECTION_STATUS_OFFSET) != SAFELY_CLOSED_MAGIC) {
-          throw new IOException("FS repository wasn't safely shut down");
-        }
-        if (initial) {
-          markDirty();
+        if (!initial) {
+          int connectionStatus = myRecords.getInt(HEADER_CONNECTION_STATUS_OFFSET);
+          if (connectionStatus != SAFELY_CLOSED_MAGIC && connectionStatus != JOURNALED_MAGIC) {
+            throw new IOException("FS repository wasn't safely shut down");
+          }
+          if (!recoverFromJournal(connectionStatus)) {
+            throw new IOException("FS repository records can't be recovered from journal");
+          }
         }
         scanFreeRecords();
+        if (useTreeSnapshot) {
+          myTreeSnapshot = VfsTreeSnapshot.load(myTreeSnapshotFile, VERSION, getTimestamp());
+          LOG.info("VFS tree snapshot loaded: " + myTreeSnapshot.size() + " directories");
+        }
+        else {
+          FileUtil.delete(myTreeSnapshotFile);
+        }
         getAttributeId(ourChildrenAttr.getId()); // trigger writing / loading of vfs attribute ids in top level write action
       }
       catch (Exception e) { // IOException, IllegalArgumentException
@@ -303,6 +339,9 @@ public class FSRecords {
           deleted &= AbstractStorage.deleteFiles(contentsFile.getPath());
           deleted &= IOUtil.deleteAllFilesStartingWith(contentsHashesFile);
           deleted &= IOUtil.deleteAllFilesStartingWith(recordsFile);
+          deleted &= FileUtil.delete(recordsJournalFile);
+          deleted &= FileUtil.delete(attributeColumnsDir);
+          deleted &= FileUtil.delete(myTreeSnapshotFile);
           deleted &= IOUtil.deleteAllFilesStartingWith(vfsDependentEnumBaseFile);
           deleted &= myRootsFile == null || IOUtil.deleteAllFilesStartingWith(myRootsFile);
 
@@ -345,6 +384,25 @@ public class FSRecords {
       }
     }
 
+    /**
+     * The header says that storages weren't modified after they had been forced and table writes had been committed to the journal.
+     * The mapped records table is forced only on flush, so an OS crash might have lost its pages written since: they are replayed
+     * from the journal, which must end with a commit of that point.
+     */
+    private static boolean recoverFromJournal(int connectionStatus) throws IOException {
+      if (myRecordsJournal == null) return connectionStatus == SAFELY_CLOSED_MAGIC;
+      int applied = myRecordsJournal.replay(myRecords);
+      if (applied < 0) return false;
+
+      if (applied > 0 || connectionStatus != SAFELY_CLOSED_MAGIC) {
+        myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, SAFELY_CLOSED_MAGIC);
+        myRecords.force();
+        LOG.info("VFS records recovered after unclean shutdown, " + applied + " journal entries replayed");
+      }
+      myRecordsJournal.checkpoint();
+      return true;
+    }
+
     private static void invalidateIndex(@NotNull String reason) {
       LOG.info("Marking VFS as corrupted: " + reason);
       final File indexRoot = PathManager.getIndexRoot();
@@ -366,8 +424,9 @@ public class FSRecords {
 
     private static void markDirty() {
       assert lock.isWriteLocked();
-      if (!myDirty) {
+      if (!myDirty || myJournaled) {
         myDirty = true;
+        myJournaled = false;
         myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, CONNECTED_MAGIC);
       }
     }
@@ -384,6 +443,9 @@ public class FSRecords {
           if (lastModCount == ourLocalModificationCount) {
             flush();
           }
+          else {
+            syncJournal();
+          }
           lastModCount = ourLocalModificationCount;
         }
       });
@@ -392,15 +454,45 @@ public class FSRecords {
     private static void doForce() {
       // avoid NPE when close has already taken place
       if (myNames != null && myFlushingFuture != null) {
-        myNames.force();
-        myAttributes.force();
-        myContents.force();
-        if (myContentHashesEnumerator != null) myContentHashesEnumerator.force();
-        markClean();
-        myRecords.force();
+        forceStorages();
+        try {
+          // the journal ends with this state if the process is killed before the checkpoint
+          if (myRecordsJournal != null) myRecordsJournal.commit();
+          markClean();
+          myRecords.force();
+          if (myRecordsJournal != null) myRecordsJournal.checkpoint();
+        }
+        catch (IOException e) {
+          throw new RuntimeException(e);
+        }
       }
     }
 
+    // everything the records table refers to
+    private static void forceStorages() {
+      myNames.force();
+      myAttributes.force();
+      myContents.force();
+      if (myContentHashesEnumerator != null) myContentHashesEnumerator.force();
+      myAttributeColumns.force();
+    }
+
+    // while VFS is being modified the mapped records table isn't forced: the storages are, and then table writes are committed to the journal
+    private static void syncJournal() {
+      readAndHandleErrors(() -> {
+        if (myRecordsJournal != null && myNames != null && myDirty && !myJournaled) {
+          forceStorages();
+          if (myRecordsJournal.commit()) {
+            markJournaled();
+          }
+          else {
+            doForce(); // the journal reached its size limit, it starts anew after the checkpoint
+          }
+        }
+        return null;
+      });
+    }
+
     // must not be run under write lock to avoid other clients wait for read lock
     private static void flush() {
       if (isDirty() && !HeavyProcessLatch.INSTANCE.isRunning()) {
@@ -413,7 +505,7 @@ public class FSRecords {
 
     public static boolean isDirty() {
       return myDirty || myNames.isDirty() || myAttributes.isDirty() || myContents.isDirty() || myRecords.isDirty() ||
-             myContentHashesEnumerator != null && myContentHashesEnumerator.isDirty();
+             myContentHashesEnumerator != null && myContentHashesEnumerator.isDirty() || myAttributeColumns.isDirty();
     }
 
 
@@ -429,15 +521,32 @@ public class FSRecords {
     }
 
     private static void setCurrentVersion() {
-      myRecords.putInt(HEADER_VERSION_OFFSET, VERSION);
-      myRecords.putLong(HEADER_TIMESTAMP_OFFSET, System.currentTimeMillis());
+      putInt(HEADER_VERSION_OFFSET, VERSION);
+      putLong(HEADER_TIMESTAMP_OFFSET, System.currentTimeMillis());
       myAttributes.setVersion(VERSION);
       myContents.setVersion(VERSION);
-      myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, SAFELY_CLOSED_MAGIC);
     }
 
     static void cleanRecord(int id) {
-      myRecords.put(((long)id) * RECORD_SIZE, ZEROES, 0, RECORD_SIZE);
+      markDirty();
+      if (myAttributeColumns != null) myAttributeColumns.clear(id);
+      if (myTreeSnapshot != null) myTreeSnapshot.remove(id);
+      long offset = ((long)id) * RECORD_SIZE;
+      if (myRecordsJournal != null) myRecordsJournal.logClean(offset, RECORD_SIZE);
+      myRecords.put(offset, ZEROES, 0, RECORD_SIZE);
+    }
+
+    // connection status is written to myRecords directly: replaying it makes no sense
+    static void putInt(int offset, int value) {
+      markDirty();
+      if (myRecordsJournal != null) myRecordsJournal.logInt(offset, value);
+      myRecords.putInt(offset, value);
+    }
+
+    static void putLong(int offset, long value) {
+      markDirty();
+      if (myRecordsJournal != null) myRecordsJournal.logLong(offset, value);
+      myRecords.putLong(offset, value);
     }
 
     private static PersistentStringEnumerator getNames() {
@@ -470,24 +579,72 @@ public class FSRecords {
         myContentHashesEnumerator = null;
       }
 
+      if (myTreeSnapshot != null) {
+        if (myRecords != null && !myCorrupted) {
+          myTreeSnapshot.save(myTreeSnapshotFile, VERSION, getTimestamp());
+        }
+        else {
+          myTreeSnapshot.close();
+        }
+        myTreeSnapshot = null;
+      }
+
+      if (myAttributeColumns != null) {
+        myAttributeColumns.close();
+        myAttributeColumns = null;
+      }
+
       if (myRecords != null) {
+        if (myRecordsJournal != null) myRecordsJournal.commit(); // storages are closed
         markClean();
         myRecords.close();
+        if (myRecordsJournal != null) myRecordsJournal.checkpoint();
         myRecords = null;
       }
+
+      if (myRecordsJournal != null) {
+        myRecordsJournal.close();
+        myRecordsJournal = null;
+      }
       ourInitialized = false;
     }
 
+    // a killed process leaves the header as is, doesn't save the tree snapshot and loses uncommitted journal entries
+    @TestOnly
+    private static void closeFilesAsKilled() throws IOException {
+      FSRecordsJournal journal = myRecordsJournal;
+      myRecordsJournal = null;
+      if (myTreeSnapshot != null) {
+        myTreeSnapshot.close();
+        myTreeSnapshot = null;
+      }
+      myDirty = false;
+      myJournaled = false;
+      closeFiles();
+      if (journal != null) journal.close();
+      myFreeRecords.clear();
+    }
+
     // either called from FlushingDaemon thread under read lock, or from handleError under write lock
     private static void markClean() {
       assert lock.isWriteLocked() || lock.getReadHoldCount() != 0;
       if (myDirty) {
         myDirty = false;
+        myJournaled = false;
         // writing here under read lock is safe because no-one else read or write at this offset (except at startup)
         myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, myCorrupted ? CORRUPTED_MAGIC : SAFELY_CLOSED_MAGIC);
       }
     }
 
+    // called from FlushingDaemon thread under read lock, like markClean(); the next modification marks the table dirty again
+    private static void markJournaled() {
+      assert lock.getReadHoldCount() != 0;
+      if (!myJournaled && !myCorrupted) {
+        myJournaled = true;
+        myRecords.putInt(HEADER_CONNECTION_STATUS_OFFSET, JOURNALED_MAGIC);
+      }
+    }
+
     private static final int RESERVED_ATTR_ID = bulkAttrReadSupport ? 1 : 0;
     private static final int FIRST_ATTR_ID_OFFSET = bulkAttrReadSupport ? RESERVED_ATTR_ID : 0;
 
@@ -496,6 +653,10 @@ public class FSRecords {
       return myAttributesList.getIdRaw(attId, false) + FIRST_ATTR_ID_OFFSET;
     }
 
+    private static int getAttributeColumnId(@NotNull FixedWidthFileAttribute attribute) throws IOException {
+      return myAttributeColumnsList.getIdRaw(attribute.getId(), false);
+    }
+
     @Contract("_->fail")
     private static void handleError(@NotNull Throwable e) throws RuntimeException, Error {
       assert lock.getReadHoldCount() == 0;
@@ -719,6 +880,27 @@ public class FSRecords {
     return readAndHandleErrors(DbConnection::isDirty);
   }
 
+  @TestOnly
+  static void syncJournal() {
+    DbConnection.syncJournal();
+  }
+
+  /**
+   * Closes the storages as if the process was killed, runs {@code crash} which may damage the files like an OS crash, and connects again
+   */
+  @TestOnly
+  static void reconnectAfterKill(@NotNull ThrowableRunnable<? extends IOException> crash) throws IOException {
+    w.lock();
+    try {
+      DbConnection.closeFilesAsKilled();
+      crash.run();
+      DbConnection.connect();
+    }
+    finally {
+      w.unlock();
+    }
+  }
+
   private static void saveNameIdSequenceWithDeltas(int[] names, int[] ids, DataOutputStream output) throws IOException {
     DataInputOutputUtil.writeINT(output, names.length);
     int prevId = 0;
@@ -860,26 +1042,38 @@ public class FSRecords {
   @NotNull
   static int[] list(int id) {
     return readAndHandleErrors(() -> {
-      try (final DataInputStream input = readAttribute(id, ourChildrenAttr)) {
-        if (input == null) return ArrayUtilRt.EMPTY_INT_ARRAY;
-        final int count = DataInputOutputUtil.readINT(input);
-        final int[] result = ArrayUtil.newIntArray(count);
-        int prevId = id;
-        for (int i = 0; i < count; i++) {
-          prevId = result[i] = DataInputOutputUtil.readINT(input) + prevId;
-        }
-        return result;
-      }
+      int[] children = doList(id);
+      return children == null || children.length == 0 ? ArrayUtilRt.EMPTY_INT_ARRAY : children.clone();
     });
   }
 
+  /**
+   * @return sorted ids of children which must not be modified or null if children of the directory have never been stored
+   */
+  @Nullable
+  private static int[] doList(int id) throws IOException {
+    VfsTreeSnapshot snapshot = DbConnection.myTreeSnapshot;
+    int[] children = snapshot != null ? snapshot.get(id) : null;
+    if (children != null) return children;
+
+    try (final DataInputStream input = readAttribute(id, ourChildrenAttr)) {
+      if (input == null) return null;
+      final int count = DataInputOutputUtil.readINT(input);
+      children = ArrayUtil.newIntArray(count);
+      int prevId = id;
+      for (int i = 0; i < count; i++) {
+        prevId = children[i] = DataInputOutputUtil.readINT(input) + prevId;
+      }
+    }
+    // children of the root record are stored in a different format
+    if (snapshot != null && id != ROOT_RECORD_ID) snapshot.put(id, children);
+    return children;
+  }
+
   static boolean mayHaveChildren(int id) {
     return readAndHandleErrors(() -> {
-      try (final DataInputStream input = readAttribute(id, ourChildrenAttr)) {
-        if (input == null) return true;
-        final int count = DataInputOutputUtil.readINT(input);
-        return count != 0;
-      }
+      int[] children = doList(id);
+      return children == null || children.length != 0;
     });
   }
 
@@ -906,20 +1100,16 @@ public class FSRecords {
   @NotNull
   public static NameId[] listAll(int parentId) {
     return readAndHandleErrors(() -> {
-      try (final DataInputStream input = readAttribute(parentId, ourChildrenAttr)) {
-        if (input == null) return NameId.EMPTY_ARRAY;
+      int[] children = doList(parentId);
+      if (children == null || children.length == 0) return NameId.EMPTY_ARRAY;
 
-        int count = DataInputOutputUtil.readINT(input);
-        NameId[] result = count == 0 ? NameId.EMPTY_ARRAY : new NameId[count];
-        int prevId = parentId;
-        for (int i = 0; i < count; i++) {
-          int id = DataInputOutputUtil.readINT(input) + prevId;
-          prevId = id;
-          int nameId = doGetNameId(id);
-          result[i] = new NameId(id, nameId, FileNameCache.getVFileName(nameId, FSRecords::doGetNameByNameId));
-        }
-        return result;
+      NameId[] result = new NameId[children.length];
+      for (int i = 0; i < children.length; i++) {
+        int id = children[i];
+        int nameId = doGetNameId(id);
+        result[i] = new NameId(id, nameId, FileNameCache.getVFileName(nameId, FSRecords::doGetNameByNameId));
       }
+      return result;
     });
   }
 
@@ -975,6 +1165,7 @@ public class FSRecords {
     Arrays.sort(childIds);
     writeAndHandleErrors(() -> {
       DbConnection.markDirty();
+      if (DbConnection.myTreeSnapshot != null) DbConnection.myTreeSnapshot.remove(id);
       try (DataOutputStream record = writeAttribute(id, ourChildrenAttr)) {
         DataInputOutputUtil.writeINT(record, childIds.length);
 
@@ -1020,7 +1211,7 @@ public class FSRecords {
   private static void incModCount(int id) {
     incLocalModCount();
     final int count = doGetModCount() + 1;
-    getRecords().putInt(HEADER_GLOBAL_MOD_COUNT_OFFSET, count);
+    DbConnection.putInt(HEADER_GLOBAL_MOD_COUNT_OFFSET, count);
 
     setModCount(id, count);
   }
@@ -1192,11 +1383,10 @@ public class FSRecords {
 
   static void setLength(int id, long len) {
     writeAndHandleErrors(() -> {
-      ResizeableMappedFile records = getRecords();
       int lengthOffset = getOffset(id, LENGTH_OFFSET);
-      if (records.getLong(lengthOffset) != len) {
+      if (getRecords().getLong(lengthOffset) != len) {
         incModCount(id);
-        records.putLong(lengthOffset, len);
+        DbConnection.putLong(lengthOffset, len);
       }
     });
   }
@@ -1208,10 +1398,9 @@ public class FSRecords {
   static void setTimestamp(int id, long value) {
     writeAndHandleErrors(() -> {
       int timeStampOffset = getOffset(id, TIMESTAMP_OFFSET);
-      ResizeableMappedFile records = getRecords();
-      if (records.getLong(timeStampOffset) != value) {
+      if (getRecords().getLong(timeStampOffset) != value) {
         incModCount(id);
-        records.putLong(timeStampOffset, value);
+        DbConnection.putLong(timeStampOffset, value);
       }
     });
   }
@@ -1245,7 +1434,7 @@ public class FSRecords {
   }
 
   private static void putRecordInt(int id, int offset, int value) {
-    getRecords().putInt(getOffset(id, offset), value);
+    DbConnection.putInt(getOffset(id, offset), value);
   }
 
   private static int getOffset(int id, int offset) {
@@ -1439,6 +1628,21 @@ public class FSRecords {
     DataInputOutputUtil.writeINT(appender, fileId);
   }
 
+  static long readFixedWidthAttribute(int fileId, @NotNull FixedWidthFileAttribute att) {
+    return readAndHandleErrors(() -> {
+      checkFileIsValid(fileId);
+      return DbConnection.myAttributeColumns.read(DbConnection.getAttributeColumnId(att), att, fileId);
+    });
+  }
+
+  static void writeFixedWidthAttribute(int fileId, @NotNull FixedWidthFileAttribute att, long value) {
+    writeAndHandleErrors(() -> {
+      checkFileIsValid(fileId);
+      incLocalModCount();
+      DbConnection.myAttributeColumns.write(DbConnection.getAttributeColumnId(att), att, fileId, value);
+    });
+  }
+
   private static void checkFileIsValid(int fileId) throws IOException {
     assert fileId > 0 : fileId;
     if (!lazyVfsDataCleaning) {
@@ -1448,6 +1652,7 @@ public class FSRecords {
 
   static int acquireFileContent(int fileId) {
     return writeAndHandleErrors(() -> {
+      DbConnection.markDirty();
       int record = getContentRecordId(fileId);
       if (record > 0) getContentStorage().acquireRecord(record);
       return record;
@@ -1455,7 +1660,10 @@ public class FSRecords {
   }
 
   static void releaseContent(int contentId) {
-    writeAndHandleErrors(() -> getContentStorage().releaseRecord(contentId, !WE_HAVE_CONTENT_HASHES));
+    writeAndHandleErrors(() -> {
+      DbConnection.markDirty();
+      getContentStorage().releaseRecord(contentId, !WE_HAVE_CONTENT_HASHES);
+    });
   }
 
   static int getContentId(int fileId) {
@@ -1476,6 +1684,7 @@ public class FSRecords {
 
   static int storeUnlinkedContent(byte[] bytes) {
     return writeAndHandleErrors(() -> {
+      DbConnection.markDirty();
       int recordId;
       if (WE_HAVE_CONTENT_HASHES) {
         recordId = findOrCreateContentRecord(bytes, 0, bytes.length);
@@ -1526,6 +1735,7 @@ public class FSRecords {
 
     private void writeBytes(ByteArraySequence bytes) {
       writeAndHandleErrors(() -> {
+        DbConnection.markDirty();
         RefCountingStorage contentStorage = getContentStorage();
         checkFileIsValid(myFileId);
 
@@ -1632,12 +1842,11 @@ public class FSRecords {
       writeAndHandleErrors(() -> {
         final BufferExposingByteArrayOutputStream _out = (BufferExposingByteArrayOutputStream)out;
 
+        incLocalModCount();
         if (inlineAttributes && _out.size() < MAX_SMALL_ATTR_SIZE) {
           rewriteDirectoryRecordWithAttrContent(_out);
-          incLocalModCount();
         }
         else {
-          incLocalModCount();
           int page = findAttributePage(myFileId, myAttribute, true);
           if (inlineAttributes && page < 0) {
             rewriteDirectoryRecordWithAttrContent(new BufferExposingByteArrayOutputStream());
@@ -0,0 +1,243 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.util.io.ResizeableMappedFile;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Redo log of the VFS records table. Every write to the records table since the last checkpoint is appended here as an after-image
+ * (offset + value), so the mapped table doesn't need to be forced to survive an OS crash.
+ * A checkpoint happens when all VFS storages and the table have been forced: the log is truncated at that point.
+ * <p>
+ * Entries are buffered in memory and reach the file on {@link #commit()}, which is called when the storages the logged writes refer to
+ * have been forced and the table isn't being modified. Only a log ending with a commit entry is replayed: anything after it
+ * means the table was modified since and storages might lack the data it refers to.
+ * Entries are checksummed, and the log stops accepting entries when it reaches its size limit until the next checkpoint.
+ */
+final class FSRecordsJournal implements Closeable {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vfs.persistent.FSRecordsJournal");
+
+  private static final int MAGIC = 0x4a524e4c;
+  static final int HEADER_SIZE = 4;
+
+  private static final byte KIND_INT = 1;
+  private static final byte KIND_LONG = 2;
+  private static final byte KIND_CLEAN = 3;
+  private static final byte KIND_COMMIT = 4;
+
+  // offset + kind + value + checksum
+  static final int ENTRY_SIZE = 8 + 1 + 8 + 4;
+  private static final int BUFFER_SIZE = ENTRY_SIZE * 4096;
+
+  private final File myFile;
+  private final long myMaxSize;
+  private final FileChannel myChannel;
+  private final ByteBuffer myBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+  private long myWrittenSize;
+  private long myUncommittedEntries;
+  private boolean myOverflown;
+
+  FSRecordsJournal(@NotNull File file, long maxSize) throws IOException {
+    myFile = file;
+    myMaxSize = Math.max(maxSize, HEADER_SIZE + 2 * ENTRY_SIZE);
+    myChannel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    if (myChannel.size() < HEADER_SIZE) {
+      writeHeader();
+    }
+    else {
+      myWrittenSize = myChannel.size();
+      myChannel.position(myWrittenSize);
+    }
+  }
+
+  @NotNull
+  File getFile() {
+    return myFile;
+  }
+
+  synchronized void logInt(long offset, int value) {
+    append(offset, KIND_INT, value);
+  }
+
+  synchronized void logLong(long offset, long value) {
+    append(offset, KIND_LONG, value);
+  }
+
+  synchronized void logClean(long offset, int length) {
+    append(offset, KIND_CLEAN, length);
+  }
+
+  private void append(long offset, byte kind, long value) {
+    if (myOverflown) return;
+    // room for the commit entry is kept
+    if (size() + 2 * ENTRY_SIZE > myMaxSize) {
+      LOG.info(myFile + " reached its size limit of " + myMaxSize + " bytes, entries are dropped until the next checkpoint");
+      myOverflown = true;
+      return;
+    }
+    put(offset, kind, value);
+    myUncommittedEntries++;
+  }
+
+  private void put(long offset, byte kind, long value) {
+    try {
+      if (myBuffer.remaining() < ENTRY_SIZE) writeBuffer();
+    }
+    catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    myBuffer.putLong(offset).put(kind).putLong(value).putInt(checksum(offset, kind, value));
+  }
+
+  private static int checksum(long offset, byte kind, long value) {
+    long h = offset * 0x9E3779B97F4A7C15L + kind;
+    h = (h ^ (h >>> 29)) * 0xBF58476D1CE4E5B9L + value;
+    h ^= h >>> 32;
+    return (int)h ^ MAGIC;
+  }
+
+  private void writeBuffer() throws IOException {
+    myBuffer.flip();
+    while (myBuffer.hasRemaining()) {
+      myWrittenSize += myChannel.write(myBuffer);
+    }
+    myBuffer.clear();
+  }
+
+  private void writeHeader() throws IOException {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC);
+    header.flip();
+    myChannel.write(header, 0);
+    myChannel.position(HEADER_SIZE);
+    myWrittenSize = HEADER_SIZE;
+  }
+
+  /**
+   * @return size of the log in bytes, including buffered entries
+   */
+  synchronized long size() {
+    return myWrittenSize + myBuffer.position();
+  }
+
+  /**
+   * Marks the state of the table described by logged entries as replayable and makes the log durable.
+   * Must be called when storages the logged writes refer to have been forced and the table isn't being modified.
+   *
+   * @return false if entries were dropped because the log reached its size limit: it can't be replayed until the next checkpoint
+   */
+  synchronized boolean commit() throws IOException {
+    if (myOverflown) return false;
+    if (myUncommittedEntries == 0) return true;
+    put(0, KIND_COMMIT, myUncommittedEntries);
+    writeBuffer();
+    myChannel.force(false);
+    myUncommittedEntries = 0;
+    return true;
+  }
+
+  /**
+   * Called after the records table and all storages it refers to have been forced: logged entries are no longer needed
+   */
+  synchronized void checkpoint() throws IOException {
+    myBuffer.clear();
+    myUncommittedEntries = 0;
+    myOverflown = false;
+    if (myWrittenSize == HEADER_SIZE) return;
+    myChannel.truncate(HEADER_SIZE);
+    myChannel.position(HEADER_SIZE);
+    myChannel.force(false);
+    myWrittenSize = HEADER_SIZE;
+  }
+
+  /**
+   * Applies all entries of the log to the given records table. The log is read twice, entry by entry: first it's validated,
+   * then replayed.
+   *
+   * @return number of applied entries or -1 if the log is unreadable or doesn't end with a commit, so the table can't be recovered
+   */
+  synchronized int replay(@NotNull ResizeableMappedFile records) throws IOException {
+    long entries = countCommittedEntries();
+    if (entries < 0) return -1;
+
+    byte[] zeroes = null;
+    int applied = 0;
+    try (DataInputStream in = openLog()) {
+      in.readInt();
+      for (long i = 0; i < entries; i++) {
+        long offset = in.readLong();
+        byte kind = in.readByte();
+        long value = in.readLong();
+        in.readInt();
+
+        if (kind == KIND_INT) {
+          records.putInt(offset, (int)value);
+        }
+        else if (kind == KIND_LONG) {
+          records.putLong(offset, value);
+        }
+        else if (kind == KIND_CLEAN) {
+          if (zeroes == null || zeroes.length < value) zeroes = new byte[(int)value];
+          records.put(offset, zeroes, 0, (int)value);
+        }
+        else {
+          continue;
+        }
+        applied++;
+      }
+    }
+    return applied;
+  }
+
+  /**
+   * @return number of entries in the log including commits, or -1 if an entry is broken or the log doesn't end with a commit
+   */
+  private long countCommittedEntries() throws IOException {
+    long size = myChannel.size();
+    if (size < HEADER_SIZE) return -1;
+    try (DataInputStream in = openLog()) {
+      if (in.readInt() != MAGIC) return -1;
+
+      long entries = 0;
+      long uncommitted = 0;
+      for (long position = HEADER_SIZE; position + ENTRY_SIZE <= size; position += ENTRY_SIZE) {
+        long offset = in.readLong();
+        byte kind = in.readByte();
+        long value = in.readLong();
+        int checksum = in.readInt();
+
+        if (offset < 0 || checksum != checksum(offset, kind, value) || kind < KIND_INT || kind > KIND_COMMIT ||
+            kind == KIND_COMMIT && value != uncommitted) {
+          LOG.info("Broken entry found in " + myFile + " after " + entries + " entries");
+          return -1;
+        }
+        entries++;
+        uncommitted = kind == KIND_COMMIT ? 0 : uncommitted + 1;
+      }
+
+      if (uncommitted != 0 || HEADER_SIZE + entries * ENTRY_SIZE != size) {
+        LOG.info(myFile + " has " + uncommitted + " entries after the last commit");
+        return -1;
+      }
+      return entries;
+    }
+  }
+
+  @NotNull
+  private DataInputStream openLog() throws FileNotFoundException {
+    return new DataInputStream(new BufferedInputStream(new FileInputStream(myFile), BUFFER_SIZE));
+  }
+
+  /**
+   * Uncommitted entries are dropped, as by a killed process
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    myChannel.close();
+  }
+}
@@ -0,0 +1,215 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.vfs.newvfs.FixedWidthFileAttribute;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.IOUtil;
+import com.intellij.util.io.PagedFileStorage;
+import com.intellij.util.io.ResizeableMappedFile;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Storage of {@link FixedWidthFileAttribute} values: one memory-mapped column per attribute, value of file {@code id} is at
+ * {@code HEADER_SIZE + id * width}. Columns which were not closed cleanly or have a different version are reset on open.
+ * Writes are expected under VFS write lock, reads under VFS read lock.
+ */
+final class FileAttributeColumns {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vfs.persistent.FileAttributeColumns");
+
+  private static final String COLUMN_EXTENSION = ".column";
+
+  private static final int MAGIC = 0x636f6c32;
+  private static final int MAGIC_OFFSET = 0;
+  private static final int VERSION_OFFSET = 4;
+  private static final int WIDTH_OFFSET = 8;
+  private static final int STATUS_OFFSET = 12;
+  private static final int HEADER_SIZE = 16;
+
+  private static final int CONNECTED_MAGIC = 0x12ad34e4;
+  private static final int SAFELY_CLOSED_MAGIC = 0x1f2f3f4f;
+
+  private final File myDirectory;
+  private final PagedFileStorage.StorageLockContext myLockContext;
+  private final ConcurrentMap<Integer, Column> myColumns = ContainerUtil.newConcurrentMap();
+
+  private static class Column {
+    final File myFile;
+    final ResizeableMappedFile myStorage;
+    volatile boolean myDirty;
+
+    Column(@NotNull File file, @NotNull ResizeableMappedFile storage) {
+      myFile = file;
+      myStorage = storage;
+    }
+
+    int getVersion() {
+      return myStorage.getInt(VERSION_OFFSET);
+    }
+
+    int getWidth() {
+      return myStorage.getInt(WIDTH_OFFSET);
+    }
+  }
+
+  FileAttributeColumns(@NotNull File directory, @Nullable PagedFileStorage.StorageLockContext lockContext) throws IOException {
+    myDirectory = directory;
+    myLockContext = lockContext;
+    if (!(directory.isDirectory() || directory.mkdirs())) {
+      throw new IOException("Cannot create attribute columns directory: " + directory);
+    }
+
+    // all existing columns are opened eagerly, so values of a reused file record are cleared even if the attribute isn't accessed yet
+    File[] files = directory.listFiles((dir, name) -> name.endsWith(COLUMN_EXTENSION));
+    if (files != null) {
+      for (File file : files) {
+        String name = file.getName();
+        int attributeId;
+        try {
+          attributeId = Integer.parseInt(name.substring(0, name.length() - COLUMN_EXTENSION.length()));
+        }
+        catch (NumberFormatException e) {
+          continue;
+        }
+        Column column = openExisting(file);
+        if (column != null) myColumns.put(attributeId, column);
+      }
+    }
+  }
+
+  @Nullable
+  private Column openExisting(@NotNull File file) throws IOException {
+    ResizeableMappedFile storage = createStorage(file);
+    if (storage.length() < HEADER_SIZE ||
+        storage.getInt(MAGIC_OFFSET) != MAGIC ||
+        storage.getInt(STATUS_OFFSET) != SAFELY_CLOSED_MAGIC) {
+      LOG.info("Resetting attribute column " + file);
+      storage.close();
+      delete(file);
+      return null;
+    }
+    return new Column(file, storage);
+  }
+
+  @NotNull
+  private ResizeableMappedFile createStorage(@NotNull File file) throws IOException {
+    return new ResizeableMappedFile(file, 64 * 1024, myLockContext, PagedFileStorage.BUFFER_SIZE, true, IOUtil.BYTE_BUFFERS_USE_NATIVE_BYTE_ORDER);
+  }
+
+  private static void delete(@NotNull File file) throws IOException {
+    if (!IOUtil.deleteAllFilesStartingWith(file)) {
+      throw new IOException("Cannot delete attribute column " + file);
+    }
+  }
+
+  @NotNull
+  private Column getColumn(int attributeId, @NotNull FixedWidthFileAttribute attribute) throws IOException {
+    Column column = myColumns.get(attributeId);
+    if (column != null && column.getVersion() == attribute.getVersion() && column.getWidth() == attribute.getWidth()) {
+      return column;
+    }
+
+    synchronized (myColumns) {
+      column = myColumns.get(attributeId);
+      if (column != null) {
+        if (column.getVersion() == attribute.getVersion() && column.getWidth() == attribute.getWidth()) return column;
+        myColumns.remove(attributeId);
+        column.myStorage.close();
+        delete(column.myFile);
+      }
+
+      File file = new File(myDirectory, attributeId + COLUMN_EXTENSION);
+      ResizeableMappedFile storage = createStorage(file);
+      storage.putInt(MAGIC_OFFSET, MAGIC);
+      storage.putInt(VERSION_OFFSET, attribute.getVersion());
+      storage.putInt(WIDTH_OFFSET, attribute.getWidth());
+      storage.putInt(STATUS_OFFSET, SAFELY_CLOSED_MAGIC);
+      column = new Column(file, storage);
+      myColumns.put(attributeId, column);
+      return column;
+    }
+  }
+
+  private static long getOffset(int fileId, int width) {
+    return HEADER_SIZE + (long)fileId * width;
+  }
+
+  long read(int attributeId, @NotNull FixedWidthFileAttribute attribute, int fileId) throws IOException {
+    Column column = getColumn(attributeId, attribute);
+    int width = attribute.getWidth();
+    long offset = getOffset(fileId, width);
+    if (offset + width > column.myStorage.length()) return 0;
+    return width == Integer.BYTES ? column.myStorage.getInt(offset) : column.myStorage.getLong(offset);
+  }
+
+  void write(int attributeId, @NotNull FixedWidthFileAttribute attribute, int fileId, long value) throws IOException {
+    Column column = getColumn(attributeId, attribute);
+    int width = attribute.getWidth();
+    long offset = getOffset(fileId, width);
+    if (value == 0 && offset + width > column.myStorage.length()) return;
+
+    markDirty(column);
+    if (width == Integer.BYTES) {
+      column.myStorage.putInt(offset, (int)value);
+    }
+    else {
+      column.myStorage.putLong(offset, value);
+    }
+  }
+
+  /**
+   * Resets values of a file record being reused or deleted
+   */
+  void clear(int fileId) {
+    for (Column column : myColumns.values()) {
+      int width = column.getWidth();
+      long offset = getOffset(fileId, width);
+      if (offset + width > column.myStorage.length()) continue;
+
+      markDirty(column);
+      if (width == Integer.BYTES) {
+        column.myStorage.putInt(offset, 0);
+      }
+      else {
+        column.myStorage.putLong(offset, 0);
+      }
+    }
+  }
+
+  private static void markDirty(@NotNull Column column) {
+    if (!column.myDirty) {
+      column.myDirty = true;
+      column.myStorage.putInt(STATUS_OFFSET, CONNECTED_MAGIC);
+    }
+  }
+
+  boolean isDirty() {
+    for (Column column : myColumns.values()) {
+      if (column.myDirty || column.myStorage.isDirty()) return true;
+    }
+    return false;
+  }
+
+  void force() {
+    for (Column column : myColumns.values()) {
+      if (column.myDirty) {
+        column.myDirty = false;
+        column.myStorage.putInt(STATUS_OFFSET, SAFELY_CLOSED_MAGIC);
+      }
+      column.myStorage.force();
+    }
+  }
+
+  void close() {
+    force();
+    for (Column column : myColumns.values()) {
+      column.myStorage.close();
+    }
+    myColumns.clear();
+  }
+}
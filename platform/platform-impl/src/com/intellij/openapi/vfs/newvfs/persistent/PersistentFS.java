@@ -81,6 +81,13 @@ public abstract class PersistentFS extends ManagingFS {
 
   public abstract int getCurrentContentId(@NotNull VirtualFile file);
 
+  /**
+   * @return id of the stored content corresponding to the current state of the file or 0 if the content is not stored or has to be reloaded.
+   * When {@link FSRecords#WE_HAVE_CONTENT_HASHES} is on, contents are deduplicated by hash, so files with identical contents share the id
+   * and the content behind an id never changes.
+   */
+  public abstract int getUpToDateContentId(@NotNull VirtualFile file);
+
   public abstract void processEvents(@NotNull List<? extends VFileEvent> events);
 
   @NotNull
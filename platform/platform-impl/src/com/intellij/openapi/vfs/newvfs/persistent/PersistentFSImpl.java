@@ -217,6 +217,16 @@ public class PersistentFSImpl extends PersistentFS implements Disposable {
     return FSRecords.writeAttribute(getFileId(file), att);
   }
 
+  @Override
+  public long readFixedWidthAttribute(@NotNull VirtualFile file, @NotNull FixedWidthFileAttribute att) {
+    return FSRecords.readFixedWidthAttribute(getFileId(file), att);
+  }
+
+  @Override
+  public void writeFixedWidthAttribute(@NotNull VirtualFile file, @NotNull FixedWidthFileAttribute att, long value) {
+    FSRecords.writeFixedWidthAttribute(getFileId(file), att, value);
+  }
+
   @Nullable
   private static DataInputStream readContent(@NotNull VirtualFile file) {
     return FSRecords.readContent(getFileId(file));
@@ -676,6 +686,13 @@ public class PersistentFSImpl extends PersistentFS implements Disposable {
     return FSRecords.getContentId(getFileId(file));
   }
 
+  @Override
+  public int getUpToDateContentId(@NotNull VirtualFile file) {
+    synchronized (myInputLock) {
+      return getLengthIfUpToDate(file) == -1 ? 0 : FSRecords.getContentId(getFileId(file));
+    }
+  }
+
   @Override
   public void moveFile(Object requestor, @NotNull VirtualFile file, @NotNull VirtualFile newParent) throws IOException {
     getDelegate(file).moveFile(requestor, file, newParent);
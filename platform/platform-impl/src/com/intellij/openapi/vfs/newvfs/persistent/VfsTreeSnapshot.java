@@ -0,0 +1,205 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.openapi.diagnostic.Logger;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.SystemProperties;
+import com.intellij.util.containers.ConcurrentIntObjectMap;
+import com.intellij.util.containers.ContainerUtil;
+import com.intellij.util.io.ByteBufferUtil;
+import gnu.trove.TIntArrayList;
+import gnu.trove.TIntHashSet;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Directory children lists of the VFS, saved on clean shutdown into a single file which is memory-mapped on startup.
+ * Record fields (parent, name id, flags, length, timestamp) are already in the memory-mapped records table, so with the snapshot the
+ * first scan of a project tree avoids decoding children attribute of every directory from the attributes storage.
+ * <p>
+ * Lists are sorted by directory id in the file and read from the mapping on request, only lists of directories read or changed during
+ * the session are kept in memory, up to a limit. The file is invalidated as soon as it's mapped and saved anew on close,
+ * so after an unclean shutdown the lists are read from the attributes storage again.
+ */
+final class VfsTreeSnapshot {
+  private static final Logger LOG = Logger.getInstance("#com.intellij.vfs.persistent.VfsTreeSnapshot");
+  private static final int MAGIC = 0x76747332;
+  // magic, version, creation timestamp, directory count
+  private static final int HEADER_INTS = 5;
+  private static final int MAX_CACHED_DIRECTORIES = SystemProperties.getIntProperty("idea.vfs.tree.snapshot.max.cached", 100000);
+
+  @Nullable private final MappedByteBuffer myMapping;
+  // (directory id, position of its list in myLists) pairs sorted by id
+  @Nullable private volatile IntBuffer myIndex;
+  @Nullable private final IntBuffer myLists;
+  private final int myMappedCount;
+  /** mapped lists which are outdated, changed under VFS write lock */
+  private final TIntHashSet myRemoved = new TIntHashSet();
+  private final ConcurrentIntObjectMap<int[]> myChildren = ContainerUtil.createConcurrentIntObjectMap();
+
+  private VfsTreeSnapshot(@Nullable MappedByteBuffer mapping, int mappedCount) {
+    myMapping = mapping;
+    myMappedCount = mappedCount;
+    if (mapping != null) {
+      IntBuffer ints = mapping.asIntBuffer();
+      ints.position(HEADER_INTS);
+      ints.limit(HEADER_INTS + 2 * mappedCount);
+      myIndex = ints.slice();
+      ints.limit(ints.capacity());
+      ints.position(HEADER_INTS + 2 * mappedCount);
+      myLists = ints.slice();
+    }
+    else {
+      myLists = null;
+    }
+  }
+
+  @NotNull
+  static VfsTreeSnapshot load(@NotNull File file, int version, long vfsCreationTimestamp) {
+    if (!file.exists()) return new VfsTreeSnapshot(null, 0);
+
+    MappedByteBuffer mapping = null;
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+      long size = channel.size();
+      if (size >= HEADER_INTS * Integer.BYTES && size <= Integer.MAX_VALUE) {
+        mapping = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        IntBuffer header = mapping.asIntBuffer();
+        if (header.get() == MAGIC &&
+            header.get() == version &&
+            ((long)header.get() << 32 | header.get() & 0xFFFFFFFFL) == vfsCreationTimestamp) {
+          int directories = header.get();
+          if (directories >= 0 && HEADER_INTS + 2L * directories <= header.limit()) {
+            // lists are changed from now on, and written to a new file on clean close only
+            channel.write(ByteBuffer.allocate(Integer.BYTES), 0);
+            return new VfsTreeSnapshot(mapping, directories);
+          }
+        }
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      LOG.info("Cannot load VFS tree snapshot", e);
+    }
+    if (mapping != null) ByteBufferUtil.cleanBuffer(mapping);
+    FileUtil.delete(file);
+    return new VfsTreeSnapshot(null, 0);
+  }
+
+  /**
+   * Writes all lists into {@code file} and releases the mapping: the snapshot can't be used afterwards
+   */
+  void save(@NotNull File file, int version, long vfsCreationTimestamp) throws IOException {
+    TIntArrayList ids = new TIntArrayList(myMappedCount + myChildren.size());
+    IntBuffer index = myIndex;
+    for (int i = 0; i < myMappedCount && index != null; i++) {
+      int id = index.get(2 * i);
+      if (!myRemoved.contains(id) && !myChildren.containsKey(id)) ids.add(id);
+    }
+    for (int id : myChildren.keys()) {
+      ids.add(id);
+    }
+    ids.sort();
+
+    File temp = new File(file.getPath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+      out.writeInt(MAGIC);
+      out.writeInt(version);
+      out.writeLong(vfsCreationTimestamp);
+      out.writeInt(ids.size());
+      int position = 0;
+      for (int i = 0; i < ids.size(); i++) {
+        int[] children = get(ids.get(i));
+        out.writeInt(ids.get(i));
+        out.writeInt(position);
+        position += 1 + (children == null ? 0 : children.length);
+      }
+      for (int i = 0; i < ids.size(); i++) {
+        int[] children = get(ids.get(i));
+        if (children == null) children = new int[0];
+        out.writeInt(children.length);
+        for (int child : children) {
+          out.writeInt(child);
+        }
+      }
+    }
+    finally {
+      close();
+    }
+    Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Releases the mapping: the snapshot can't be used afterwards
+   */
+  void close() {
+    myIndex = null;
+    if (myMapping != null) ByteBufferUtil.cleanBuffer(myMapping);
+  }
+
+  /**
+   * @return sorted ids of children which must not be modified or null if the directory is not in the snapshot
+   */
+  @Nullable
+  int[] get(int id) {
+    int[] children = myChildren.get(id);
+    if (children != null || myRemoved.contains(id)) return children;
+    return getMapped(id);
+  }
+
+  @Nullable
+  private int[] getMapped(int id) {
+    IntBuffer index = myIndex;
+    IntBuffer lists = myLists;
+    if (index == null || lists == null) return null;
+
+    int low = 0;
+    int high = myMappedCount - 1;
+    while (low <= high) {
+      int mid = (low + high) >>> 1;
+      int midId = index.get(2 * mid);
+      if (midId < id) {
+        low = mid + 1;
+      }
+      else if (midId > id) {
+        high = mid - 1;
+      }
+      else {
+        int position = index.get(2 * mid + 1);
+        int count = position >= 0 && position < lists.limit() ? lists.get(position) : -1;
+        if (count < 0 || position + 1L + count > lists.limit()) {
+          LOG.info("Broken VFS tree snapshot entry for " + id);
+          return null;
+        }
+        int[] children = new int[count];
+        for (int i = 0; i < count; i++) {
+          children[i] = lists.get(position + 1 + i);
+        }
+        return children;
+      }
+    }
+    return null;
+  }
+
+  void put(int id, @NotNull int[] sortedChildren) {
+    if (myChildren.size() < MAX_CACHED_DIRECTORIES || myChildren.containsKey(id)) {
+      myChildren.put(id, sortedChildren);
+    }
+  }
+
+  void remove(int id) {
+    myChildren.remove(id);
+    if (myMappedCount > 0) myRemoved.add(id);
+  }
+
+  int size() {
+    return myMappedCount + myChildren.size();
+  }
+}
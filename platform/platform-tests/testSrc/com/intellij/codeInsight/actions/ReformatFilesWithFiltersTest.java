@@ -36,6 +36,8 @@ import org.jetbrains.annotations.Nullable;
 import org.picocontainer.MutablePicoContainer;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 
 import static com.intellij.psi.search.GlobalSearchScopesCore.directoryScope;
@@ -241,6 +243,21 @@ public class ReformatFilesWithFiltersTest extends LightPlatformTestCase {
     assertWasNotFormatted(java2, php2, js2);
   }
 
+  public void testAllFilesOfSeveralBatchesAreProcessedByAllProcessors() {
+    TestFileStructure fileTree = new TestFileStructure(getModule(), myWorkingDirectory);
+    List<PsiFile> files = new ArrayList<>();
+    for (int dir = 0; dir < 3; dir++) {
+      fileTree.createDirectoryAndMakeItCurrent("dir" + dir);
+      for (int i = 0; i < 25; i++) {
+        files.add(fileTree.addTestFile("Test" + i + ".java", "empty content"));
+      }
+    }
+
+    reformatAndOptimize(myWorkingDirectory, directoryScope(myWorkingDirectory, true));
+    assertWasFormatted(files.toArray(PsiFile.EMPTY_ARRAY));
+    assertEquals(files.size(), myMockCodeStyleManager.getFormattedFiles().size());
+  }
+
   public void testRunOptimizeOnDirectoryMustDrillDownAllSourceDirsInsideButIgnoreExcluded() throws IOException {
     Disposable earlyDisposable = Disposer.newDisposable();
     try {
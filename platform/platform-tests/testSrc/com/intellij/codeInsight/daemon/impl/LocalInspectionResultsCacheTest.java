@@ -0,0 +1,211 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.codeInsight.daemon.impl;
+
+import com.intellij.codeInspection.*;
+import com.intellij.codeInspection.ex.GlobalInspectionContextImpl;
+import com.intellij.codeInspection.ex.InspectionManagerEx;
+import com.intellij.codeInspection.ex.LocalInspectionToolWrapper;
+import com.intellij.codeInspection.reference.RefManagerImpl;
+import com.intellij.openapi.application.WriteAction;
+import com.intellij.openapi.fileTypes.PlainTextFileType;
+import com.intellij.openapi.progress.ProgressManager;
+import com.intellij.openapi.progress.util.ProgressIndicatorBase;
+import com.intellij.openapi.util.TextRange;
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.psi.PsiDocumentManager;
+import com.intellij.psi.PsiElementVisitor;
+import com.intellij.psi.PsiFile;
+import com.intellij.psi.PsiPlainText;
+import com.intellij.testFramework.fixtures.LightPlatformCodeInsightFixtureTestCase;
+import com.intellij.util.containers.ContainerUtil;
+import org.jetbrains.annotations.NotNull;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class LocalInspectionResultsCacheTest extends LightPlatformCodeInsightFixtureTestCase {
+  private final WordInspection myInspection = new WordInspection();
+  private final LocalInspectionToolWrapper myToolWrapper = new LocalInspectionToolWrapper(myInspection);
+  private File myCacheDirectory;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myCacheDirectory = new File(FileUtil.createTempDirectory("inspectionResults", null), "cache");
+    LocalInspectionResultsCache.enableInTests(myCacheDirectory, 100, getTestRootDisposable());
+    myFixture.enableInspections(myInspection);
+  }
+
+  public void testProblemsAreRestoredFromCache() {
+    myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar\nfoo");
+    List<String> problems = inspectInBatch();
+    assertEquals(Arrays.asList("0-3: Found foo", "8-11: Found foo"), problems);
+    assertEquals(1, myInspection.myRuns);
+
+    assertEquals(problems, inspectInBatch());
+    assertEquals(1, myInspection.myRuns);
+  }
+
+  public void testChangedTextIsInspectedAgain() {
+    myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar");
+    inspectInBatch();
+    WriteAction.run(() -> {
+      myFixture.getEditor().getDocument().insertString(0, "foo ");
+      PsiDocumentManager.getInstance(getProject()).commitAllDocuments();
+    });
+
+    assertEquals(Arrays.asList("0-3: Found foo", "4-7: Found foo"), inspectInBatch());
+    assertEquals(2, myInspection.myRuns);
+  }
+
+  public void testChangedSettingsAreInspectedAgain() {
+    myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar");
+    inspectInBatch();
+    myInspection.word = "bar";
+
+    assertEquals(Collections.singletonList("4-7: Found bar"), inspectInBatch());
+    assertEquals(2, myInspection.myRuns);
+  }
+
+  public void testEntriesNotUsedForMaxAgeAreDropped() throws IOException {
+    myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar");
+    inspectInBatch();
+
+    LocalInspectionResultsCache.enableInTests(myCacheDirectory, 125, getTestRootDisposable());
+    inspectInBatch();
+    assertEquals(1, myInspection.myRuns);
+
+    // the entry was used on day 125
+    LocalInspectionResultsCache.enableInTests(myCacheDirectory, 150, getTestRootDisposable());
+    inspectInBatch();
+    assertEquals(1, myInspection.myRuns);
+
+    LocalInspectionResultsCache.enableInTests(myCacheDirectory, 181, getTestRootDisposable());
+    assertEquals(Collections.singletonList("0-3: Found foo"), inspectInBatch());
+    assertEquals(2, myInspection.myRuns);
+    assertFalse(new File(myCacheDirectory.getPath() + ".new").exists());
+  }
+
+  public void testKeyDependsOnTextSettingsAndPluginVersion() {
+    PsiFile file = myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar");
+    List<LocalInspectionToolWrapper> tools = Collections.singletonList(myToolWrapper);
+    String key = LocalInspectionResultsCache.computeKey(file, tools, __ -> "1.0");
+    assertEquals(key, LocalInspectionResultsCache.computeKey(file, tools, __ -> "1.0"));
+    assertFalse(key.equals(LocalInspectionResultsCache.computeKey(file, tools, __ -> "1.1")));
+
+    myInspection.word = "bar";
+    String keyWithOtherSettings = LocalInspectionResultsCache.computeKey(file, tools, __ -> "1.0");
+    assertFalse(key.equals(keyWithOtherSettings));
+
+    PsiFile otherFile = myFixture.configureByText(PlainTextFileType.INSTANCE, "foo baz");
+    assertFalse(keyWithOtherSettings.equals(LocalInspectionResultsCache.computeKey(otherFile, tools, __ -> "1.0")));
+  }
+
+  public void testRestoredDescriptorPointsToTheSameRange() {
+    PsiFile file = myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar");
+    InspectionManager manager = InspectionManager.getInstance(getProject());
+    PsiPlainText text = (PsiPlainText)file.getFirstChild();
+    ProblemDescriptor descriptor = manager.createProblemDescriptor(text, new TextRange(4, 7), "Found bar",
+                                                                   ProblemHighlightType.GENERIC_ERROR_OR_WARNING, false);
+
+    LocalInspectionResultsCache.Problem problem = LocalInspectionResultsCache.Problem.create("FileLocalWord", descriptor, file);
+    assertNotNull(problem);
+    ProblemDescriptor restored = problem.toDescriptor(file, manager);
+    assertEquals(new TextRange(4, 7), ((ProblemDescriptorBase)restored).getTextRange());
+    assertEquals("Found bar", restored.getDescriptionTemplate());
+  }
+
+  public void testProblemWithoutElementIsRestoredOnFile() {
+    PsiFile file = myFixture.configureByText(PlainTextFileType.INSTANCE, "foo bar");
+    LocalInspectionResultsCache.Problem problem =
+      new LocalInspectionResultsCache.Problem("FileLocalWord", 4, 7, null, "Found bar", ProblemHighlightType.WEAK_WARNING, false);
+
+    ProblemDescriptor restored = problem.toDescriptor(file, InspectionManager.getInstance(getProject()));
+    assertEquals(file, restored.getPsiElement());
+    assertEquals(new TextRange(4, 7), ((ProblemDescriptorBase)restored).getTextRange());
+    assertEquals(ProblemHighlightType.WEAK_WARNING, restored.getHighlightType());
+  }
+
+  public void testProblemsExternalizer() throws IOException {
+    List<LocalInspectionResultsCache.Problem> problems = Arrays.asList(
+      new LocalInspectionResultsCache.Problem("A", 10, 20, new TextRange(1, 5), "Problem #ref", ProblemHighlightType.LIKE_UNUSED_SYMBOL, false),
+      new LocalInspectionResultsCache.Problem("B", 0, 3, null, "Other problem", ProblemHighlightType.GENERIC_ERROR, true));
+    LocalInspectionResultsCache.ProblemsExternalizer externalizer = new LocalInspectionResultsCache.ProblemsExternalizer();
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    externalizer.save(new DataOutputStream(bytes), problems);
+    List<LocalInspectionResultsCache.Problem> read = externalizer.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+
+    assertEquals(problems.size(), read.size());
+    for (int i = 0; i < problems.size(); i++) {
+      LocalInspectionResultsCache.Problem expected = problems.get(i);
+      LocalInspectionResultsCache.Problem actual = read.get(i);
+      assertEquals(expected.toolShortName, actual.toolShortName);
+      assertEquals(expected.startOffset, actual.startOffset);
+      assertEquals(expected.endOffset, actual.endOffset);
+      assertEquals(expected.rangeInElement, actual.rangeInElement);
+      assertEquals(expected.descriptionTemplate, actual.descriptionTemplate);
+      assertEquals(expected.highlightType, actual.highlightType);
+      assertEquals(expected.afterEndOfLine, actual.afterEndOfLine);
+    }
+  }
+
+  @NotNull
+  private List<String> inspectInBatch() {
+    PsiFile file = myFixture.getFile();
+    LocalInspectionsPass pass = new LocalInspectionsPass(file, myFixture.getEditor().getDocument(), 0, file.getTextLength(),
+                                                         LocalInspectionsPass.EMPTY_PRIORITY_RANGE, true, HighlightInfoProcessor.getEmpty(),
+                                                         true);
+    InspectionManagerEx manager = (InspectionManagerEx)InspectionManager.getInstance(getProject());
+    GlobalInspectionContextImpl context = manager.createNewGlobalContext();
+    ((RefManagerImpl)context.getRefManager()).inspectionReadActionStarted();
+    try {
+      ProgressManager.getInstance().executeProcessUnderProgress(
+        () -> pass.doInspectInBatch(context, manager, Collections.singletonList(myToolWrapper)), new ProgressIndicatorBase());
+    }
+    finally {
+      ((RefManagerImpl)context.getRefManager()).inspectionReadActionFinished();
+    }
+    List<HighlightInfo> infos = ContainerUtil.sorted(pass.getInfos(), (i1, i2) -> Integer.compare(i1.startOffset, i2.startOffset));
+    return ContainerUtil.map(infos, info -> info.startOffset + "-" + info.endOffset + ": " + info.getDescription());
+  }
+
+  private static class WordInspection extends LocalInspectionTool implements FileLocalInspectionTool {
+    public String word = "foo";
+    private int myRuns;
+
+    @NotNull
+    @Override
+    public String getShortName() {
+      return "FileLocalWord";
+    }
+
+    @NotNull
+    @Override
+    public String getDisplayName() {
+      return "File-local word";
+    }
+
+    @NotNull
+    @Override
+    public String getGroupDisplayName() {
+      return GENERAL_GROUP_NAME;
+    }
+
+    @NotNull
+    @Override
+    public PsiElementVisitor buildVisitor(@NotNull ProblemsHolder holder, boolean isOnTheFly) {
+      return new PsiElementVisitor() {
+        @Override
+        public void visitPlainText(PsiPlainText content) {
+          myRuns++;
+          String text = content.getText();
+          for (int i = text.indexOf(word); i >= 0; i = text.indexOf(word, i + word.length())) {
+            holder.registerProblem(content, new TextRange(i, i + word.length()), "Found " + word);
+          }
+        }
+      };
+    }
+  }
+}
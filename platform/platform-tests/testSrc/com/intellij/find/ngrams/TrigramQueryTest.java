@@ -0,0 +1,82 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.find.ngrams;
+
+import com.intellij.openapi.util.text.TrigramBuilder;
+import gnu.trove.TIntHashSet;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public class TrigramQueryTest {
+  @Test
+  public void testQueries() {
+    assertQuery("bar & foo", "foo.*bar");
+    assertQuery("((baz & foo & oba & oob) | (arb & bar & baz & rba))", "(foo|bar)baz");
+    assertQuery("ati & bli & lic & pub & sta & tat & tic & ubl", "public\\s+static\\s+\\w+");
+    assertQuery("get", "\\bget[A-Z]\\w*\\(");
+    assertQuery("ell & hel & llo", "(?i)HeLLo");
+    assertQuery("abc", "\\Qabc\\E");
+    assertQuery("abc", "\\x61b\\u0063");
+  }
+
+  @Test
+  public void testUnselectiveOrUnsupportedRegExps() {
+    for (String regexp : new String[]{"", "a+b", "[a-z]+", "ab|cde", "(?x) foo bar", "foo(", "foo)", "\\y", "(foo)*"}) {
+      assertTrue(regexp, TrigramQuery.fromRegExp(regexp).isAll());
+    }
+  }
+
+  @Test
+  public void testQueryAcceptsEveryMatchingText() {
+    String[] atoms = {"a", "b", "ab", "abc", "foo", "bar", "_", "1", ".", "\\w", "\\d", "\\s", "[ab]", "[^a]", "\\n", " ", "\\.", "\\b", "$"};
+    String[] quantifiers = {"*", "+", "?", "{2}", "{1,3}", "{0,2}", "+?"};
+    String[] words = {"foo", "bar", "abc", "a.b", "a", "b", "1", " ", "\n", "_", "B"};
+    Random random = new Random(7);
+    for (int i = 0; i < 2000; i++) {
+      StringBuilder regexp = new StringBuilder();
+      for (int j = random.nextInt(6); j >= 0; j--) {
+        switch (random.nextInt(3)) {
+          case 0:
+            regexp.append("(").append(atoms[random.nextInt(atoms.length)]).append("|").append(atoms[random.nextInt(atoms.length)]).append(")");
+            break;
+          case 1:
+            regexp.append("(?:").append(atoms[random.nextInt(atoms.length)]).append(")").append(quantifiers[random.nextInt(quantifiers.length)]);
+            break;
+          default:
+            regexp.append(atoms[random.nextInt(atoms.length)]);
+        }
+      }
+      Pattern pattern = Pattern.compile(regexp.toString(), Pattern.CASE_INSENSITIVE | Pattern.MULTILINE);
+      TrigramQuery query = TrigramQuery.fromRegExp(regexp.toString());
+
+      for (int j = 0; j < 50; j++) {
+        StringBuilder text = new StringBuilder();
+        for (int k = random.nextInt(12); k >= 0; k--) {
+          text.append(words[random.nextInt(words.length)]);
+        }
+        if (pattern.matcher(text).find()) {
+          assertTrue(regexp + " on " + text, query.matches(trigrams(text)));
+        }
+      }
+    }
+  }
+
+  private static void assertQuery(String expected, String regexp) {
+    assertEquals(expected, TrigramQuery.fromRegExp(regexp).toString());
+  }
+
+  private static TIntHashSet trigrams(CharSequence text) {
+    TIntHashSet result = new TIntHashSet();
+    TrigramBuilder.processTrigrams(text, new TrigramBuilder.TrigramProcessor() {
+      @Override
+      public boolean execute(int value) {
+        result.add(value);
+        return true;
+      }
+    });
+    return result;
+  }
+}
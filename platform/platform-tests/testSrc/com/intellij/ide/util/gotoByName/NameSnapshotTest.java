@@ -0,0 +1,39 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.ide.util.gotoByName;
+
+import com.intellij.psi.codeStyle.FixingLayoutMatcher;
+import com.intellij.psi.codeStyle.MinusculeMatcher;
+import com.intellij.psi.codeStyle.NameUtil;
+import junit.framework.TestCase;
+
+import java.util.Random;
+
+public class NameSnapshotTest extends TestCase {
+  public void testCharMask() {
+    assertEquals(NameSnapshot.getCharMask("abc"), NameSnapshot.getCharMask("CBA"));
+    assertEquals(NameSnapshot.getCharMask("a1"), NameSnapshot.getCharMask("*A 1.$"));
+    assertEquals(0, NameSnapshot.getCharMask("* ._$й"));
+    assertFalse(NameSnapshot.getCharMask("a") == NameSnapshot.getCharMask("1"));
+  }
+
+  public void testNamesWithoutPatternCharsDoNotMatch() {
+    String[] patterns = {"NPE", "npe", "*Exc", "foo bar", "j.u.List", "Str1", "getV", "йц", "*map*2", "Fo_b"};
+    String[] words = {"Null", "Pointer", "Exception", "foo", "Bar", "java", ".", "util", "List", "String", "1", "2", "get", "Value",
+      "Map", "_", "$", "qw", "й"};
+    Random random = new Random(3);
+    for (int i = 0; i < 20000; i++) {
+      StringBuilder name = new StringBuilder();
+      for (int j = random.nextInt(4); j >= 0; j--) {
+        name.append(words[random.nextInt(words.length)]);
+      }
+      String pattern = patterns[random.nextInt(patterns.length)];
+      MinusculeMatcher matcher = NameUtil.buildMatcher(pattern, NameUtil.MatchingCaseSensitivity.NONE);
+      if (!(matcher instanceof FixingLayoutMatcher)) continue;
+
+      long required = NameSnapshot.getCharMask(pattern);
+      if ((NameSnapshot.getCharMask(name) & required) != required) {
+        assertFalse(pattern + " matches " + name, matcher.matches(name.toString()));
+      }
+    }
+  }
+}
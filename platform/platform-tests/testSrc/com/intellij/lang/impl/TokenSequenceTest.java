@@ -0,0 +1,175 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.lang.impl;
+
+import com.intellij.lang.Language;
+import com.intellij.lexer.LexerBase;
+import com.intellij.lexer.RestartableLexer;
+import com.intellij.lexer.TokenIterator;
+import com.intellij.psi.tree.IElementType;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+public class TokenSequenceTest {
+  private static final IElementType WORD = new IElementType("WORD", Language.ANY);
+  private static final IElementType SPACE = new IElementType("SPACE", Language.ANY);
+  private static final IElementType COMMENT = new IElementType("COMMENT", Language.ANY);
+  private static final IElementType OTHER = new IElementType("OTHER", Language.ANY);
+
+  private static final String[] FRAGMENTS = {"a", "bc", "12", " ", "\n", "  ", "/*", "*/", "*", "/", "x y", ";\n"};
+
+  @Test
+  public void testIncrementalLexingMatchesFullLexing() {
+    Random random = new Random(17);
+    StringBuilder text = new StringBuilder();
+    while (text.length() < 30_000) {
+      text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+    }
+
+    TokenSequence.Snapshot snapshot = new TokenSequence.Builder(text.toString(), new TestLexer()).performLexingWithStates();
+    for (int i = 0; i < 300; i++) {
+      int offset = random.nextInt(text.length() + 1);
+      int deleted = Math.min(random.nextInt(4), text.length() - offset);
+      text.replace(offset, offset + deleted, random.nextBoolean() ? FRAGMENTS[random.nextInt(FRAGMENTS.length)] : "");
+      String newText = text.toString();
+
+      TokenSequence.Snapshot expected = new TokenSequence.Builder(newText, new TestLexer()).performLexingWithStates();
+      snapshot = new TokenSequence.Builder(newText, new TestLexer()).performIncrementalLexing(snapshot);
+
+      String message = "edit " + i + " at " + offset;
+      assertEquals(message, expected.lexemeCount, snapshot.lexemeCount);
+      assertArrayEquals(message, expected.lexStarts, snapshot.lexStarts);
+      assertArrayEquals(message, expected.lexTypes, snapshot.lexTypes);
+      assertArrayEquals(message, expected.lexStates, snapshot.lexStates);
+    }
+  }
+
+  @Test
+  public void testTokenSequenceOfSnapshot() {
+    String text = "a /* b\n c */ d";
+    TokenSequence.Snapshot snapshot = new TokenSequence.Builder(text, new TestLexer()).performLexingWithStates();
+    TokenSequence plain = new TokenSequence.Builder(text, new TestLexer()).performLexing();
+    TokenSequence fromSnapshot = snapshot.toTokenSequence();
+
+    assertEquals(plain.lexemeCount, fromSnapshot.lexemeCount);
+    assertArrayEquals(Arrays.copyOf(plain.lexStarts, plain.lexemeCount + 1), fromSnapshot.lexStarts);
+    assertArrayEquals(Arrays.copyOf(plain.lexTypes, plain.lexemeCount), Arrays.copyOf(fromSnapshot.lexTypes, fromSnapshot.lexemeCount));
+  }
+
+  /**
+   * Words, spaces and block comments; a comment is split into a token per line, lines after the first one are lexed in non-restartable state
+   */
+  private static class TestLexer extends LexerBase implements RestartableLexer {
+    private CharSequence myBuffer;
+    private int myBufferEnd;
+    private int myTokenStart;
+    private int myTokenEnd;
+    private int myState;
+    private int myNextState;
+    private IElementType myTokenType;
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState) {
+      myBuffer = buffer;
+      myBufferEnd = endOffset;
+      myTokenEnd = startOffset;
+      myNextState = initialState;
+      locateToken();
+    }
+
+    @Override
+    public void start(@NotNull CharSequence buffer, int startOffset, int endOffset, int initialState, TokenIterator tokenIterator) {
+      start(buffer, startOffset, endOffset, initialState);
+    }
+
+    @Override
+    public int getStartState() {
+      return 0;
+    }
+
+    @Override
+    public boolean isRestartableState(int state) {
+      return state == 0;
+    }
+
+    private void locateToken() {
+      myTokenStart = myTokenEnd;
+      myState = myNextState;
+      if (myTokenStart >= myBufferEnd) {
+        myTokenType = null;
+        return;
+      }
+
+      int pos = myTokenStart;
+      char c = myBuffer.charAt(pos);
+      if (myState == 1 || c == '/' && pos + 1 < myBufferEnd && myBuffer.charAt(pos + 1) == '*') {
+        if (myState == 0) pos += 2;
+        myNextState = 1;
+        while (pos < myBufferEnd) {
+          char ch = myBuffer.charAt(pos++);
+          if (ch == '\n') break;
+          if (ch == '*' && pos < myBufferEnd && myBuffer.charAt(pos) == '/') {
+            pos++;
+            myNextState = 0;
+            break;
+          }
+        }
+        myTokenType = COMMENT;
+      }
+      else if (Character.isWhitespace(c)) {
+        while (pos < myBufferEnd && Character.isWhitespace(myBuffer.charAt(pos))) pos++;
+        myTokenType = SPACE;
+      }
+      else if (Character.isLetterOrDigit(c)) {
+        while (pos < myBufferEnd && Character.isLetterOrDigit(myBuffer.charAt(pos))) pos++;
+        myTokenType = WORD;
+      }
+      else {
+        pos++;
+        myTokenType = OTHER;
+      }
+      myTokenEnd = pos;
+    }
+
+    @Override
+    public int getState() {
+      return myState;
+    }
+
+    @Override
+    public IElementType getTokenType() {
+      return myTokenType;
+    }
+
+    @Override
+    public int getTokenStart() {
+      return myTokenStart;
+    }
+
+    @Override
+    public int getTokenEnd() {
+      return myTokenEnd;
+    }
+
+    @Override
+    public void advance() {
+      locateToken();
+    }
+
+    @NotNull
+    @Override
+    public CharSequence getBufferSequence() {
+      return myBuffer;
+    }
+
+    @Override
+    public int getBufferEnd() {
+      return myBufferEnd;
+    }
+  }
+}
@@ -8,6 +8,8 @@ import com.intellij.testFramework.UsefulTestCase;
 import org.jetbrains.jetCheck.Generator;
 import org.jetbrains.jetCheck.PropertyChecker;
 
+import java.util.Random;
+
 public class LineSetIncrementalUpdateTest extends UsefulTestCase {
   public void testFuzzUpdate() {
     PropertyChecker.customized()
@@ -41,8 +43,10 @@ public class LineSetIncrementalUpdateTest extends UsefulTestCase {
 
     LineSet initial = LineSet.createLineSet(initialText);
     LineSet updated = initial.update(initialText, start, end, replacement, false);
-    LineSet fresh = LineSet.createLineSet(newText);
+    assertSameLines(LineSet.createLineSet(newText), updated);
+  }
 
+  private static void assertSameLines(LineSet fresh, LineSet updated) {
     assertEquals("line count", fresh.getLineCount(), updated.getLineCount());
     for (int i = 0; i < updated.getLineCount(); i++) {
       assertEquals("line start " + i, fresh.getLineStart(i), updated.getLineStart(i));
@@ -51,6 +55,36 @@ public class LineSetIncrementalUpdateTest extends UsefulTestCase {
     }
   }
 
+  public void testUpdatesInDocumentWithManyLines() {
+    String[] fragments = {"a", "\n", "\r", "\r\n", "bb\ncc\n", ""};
+    Random random = new Random(42);
+    String text = StringUtil.repeat("a\nbb\r\n\n", 3000);
+    LineSet lineSet = LineSet.createLineSet(text);
+    for (int i = 0; i < 300; i++) {
+      int start = random.nextInt(text.length() + 1);
+      int end = Math.min(text.length(), start + random.nextInt(i % 50 == 0 ? 5000 : 10));
+      StringBuilder replacement = new StringBuilder();
+      for (int j = random.nextInt(i % 30 == 0 ? 2000 : 3); j > 0; j--) {
+        replacement.append(fragments[random.nextInt(fragments.length)]);
+      }
+
+      lineSet = lineSet.update(text, start, end, replacement, false);
+      text = text.substring(0, start) + replacement + text.substring(end);
+      assertSameLines(LineSet.createLineSet(text), lineSet);
+    }
+  }
+
+  public void testTypingInDocumentWithManyLinesPerformance() {
+    String text = StringUtil.repeat("line\n", 2_000_000);
+    PlatformTestUtil.startPerformanceTest("Document changes in a document with many lines", 1000, () -> {
+      Document document = new DocumentImpl(text, true);
+      for (int i = 0; i < 1000; i++) {
+        document.insertString(10, i % 10 == 0 ? "\n" : "b");
+        assertEquals(2, document.getLineNumber(10));
+      }
+    }).assertTiming();
+  }
+
   public void testTypingInLongLinePerformance() {
     String longLine = StringUtil.repeat("a ", 200000);
     PlatformTestUtil.startPerformanceTest("Document changes in a long line", 1000, () -> {
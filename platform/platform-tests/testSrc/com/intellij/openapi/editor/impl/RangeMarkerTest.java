@@ -1310,6 +1310,62 @@ public class RangeMarkerTest extends LightPlatformTestCase {
     }
   }
 
+  public void testChangeAffectingManyMarkers() {
+    DocumentEx doc = new DocumentImpl(StringUtil.repeat("x", 20_000));
+    int N = 5_000;
+    List<RangeMarker> enclosing = new ArrayList<>(N);
+    List<RangeMarker> after = new ArrayList<>(N);
+    for (int i = 0; i < N; i++) {
+      enclosing.add(doc.createRangeMarker(i % 100, 200 + i));
+      after.add(doc.createRangeMarker(10_000 + i, 10_001 + i));
+    }
+    RangeMarker before = doc.createRangeMarker(10, 20);
+    RangeMarker inside = doc.createRangeMarker(102, 105);
+    RangeMarker touching = doc.createRangeMarker(50, 100);
+    RangeMarker truncated = doc.createRangeMarker(50, 105);
+
+    doc.replaceString(100, 110, "abc");
+
+    for (int i = 0; i < N; i++) {
+      assertEquals(TextRange.create(i % 100, 193 + i), TextRange.create(enclosing.get(i)));
+      assertEquals(TextRange.create(9_993 + i, 9_994 + i), TextRange.create(after.get(i)));
+    }
+    assertEquals(TextRange.create(10, 20), TextRange.create(before));
+    assertFalse(inside.isValid());
+    assertEquals(TextRange.create(50, 100), TextRange.create(touching));
+    assertEquals(TextRange.create(50, 100), TextRange.create(truncated));
+
+    doc.insertString(0, "y");
+    List<RangeMarker> overlapping = new ArrayList<>();
+    doc.processRangeMarkersOverlappingWith(150, 151, new CommonProcessors.CollectProcessor<>(overlapping));
+    assertEquals(N, overlapping.size());
+    assertEquals(TextRange.create(51, 101), TextRange.create(truncated));
+
+    for (RangeMarker marker : enclosing) {
+      marker.dispose();
+    }
+    touching.dispose();
+    assertEquals(TextRange.create(51, 101), TextRange.create(truncated));
+    assertEquals(TextRange.create(9_994, 9_995), TextRange.create(after.get(0)));
+  }
+
+  public void testWholeTextReplaceWithManyMarkersPerformance() {
+    int N = 100_000;
+    String text = StringUtil.repeat("foo(bar);\n", N);
+    String formatted = StringUtil.repeat("foo( bar );\n", N);
+    DocumentEx[] doc = new DocumentEx[1];
+    List<RangeMarker> markers = new ArrayList<>(N);
+    PlatformTestUtil.startPerformanceTest(getTestName(false), 2000, () -> {
+      doc[0].replaceString(0, doc[0].getTextLength(), formatted);
+    }).setup(() -> {
+      markers.clear();
+      doc[0] = new DocumentImpl(text);
+      for (int i = 0; i < N; i++) {
+        markers.add(doc[0].createRangeMarker(i * 10, i * 10 + 9));
+      }
+    }).assertTiming();
+  }
+
   public void testRMInsertPerformance() {
     DocumentEx doc = new DocumentImpl(StringUtil.repeat("blah", 1000));
     int N = 100_000;
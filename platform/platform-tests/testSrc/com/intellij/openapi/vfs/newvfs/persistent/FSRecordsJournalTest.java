@@ -0,0 +1,241 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.testFramework.rules.TempDirectory;
+import com.intellij.util.io.PagedFileStorage;
+import com.intellij.util.io.ResizeableMappedFile;
+import org.jetbrains.annotations.NotNull;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class FSRecordsJournalTest {
+  private static final int RECORD_SIZE = 40;
+  private static final int RECORD_COUNT = 500;
+
+  @Rule public TempDirectory myTempDir = new TempDirectory();
+
+  private static class Op {
+    final int kind; // 0 - int, 1 - long, 2 - clean record
+    final long offset;
+    final long value;
+
+    Op(int kind, long offset, long value) {
+      this.kind = kind;
+      this.offset = offset;
+      this.value = value;
+    }
+
+    void log(@NotNull FSRecordsJournal journal) {
+      if (kind == 0) journal.logInt(offset, (int)value);
+      else if (kind == 1) journal.logLong(offset, value);
+      else journal.logClean(offset, (int)value);
+    }
+
+    void apply(@NotNull ResizeableMappedFile records) {
+      if (kind == 0) records.putInt(offset, (int)value);
+      else if (kind == 1) records.putLong(offset, value);
+      else records.put(offset, new byte[(int)value], 0, (int)value);
+    }
+  }
+
+  @Test
+  public void testReplayRestoresCommittedState() throws IOException {
+    Random random = new Random(1);
+    List<Op> ops = generateOps(random, 20000);
+
+    File journalFile = myTempDir.newFile("records.journal");
+    try (FSRecordsJournal journal = openJournal(journalFile)) {
+      for (Op op : ops) op.log(journal);
+      assertTrue(journal.commit());
+    }
+
+    assertEquals(FSRecordsJournal.HEADER_SIZE + (long)(ops.size() + 1) * FSRecordsJournal.ENTRY_SIZE, journalFile.length());
+    byte[] expected = contents(image(ops, ops.size(), "expected"));
+    // an OS crash could have lost any table pages written since the checkpoint
+    for (int written : new int[]{0, ops.size() / 2, ops.size()}) {
+      File recovered = image(ops, written, "recovered" + written);
+      assertEquals(ops.size(), replay(journalFile, recovered));
+      assertArrayEquals("written before the crash " + written, expected, contents(recovered));
+    }
+  }
+
+  @Test
+  public void testEntriesAreReplayedUpToTheLastCommit() throws IOException {
+    Random random = new Random(42);
+    for (int iteration = 0; iteration < 10; iteration++) {
+      File journalFile = myTempDir.newFile("records" + iteration + ".journal");
+      List<Op> committed = new ArrayList<>();
+      try (FSRecordsJournal journal = openJournal(journalFile)) {
+        // entries logged before a checkpoint are not replayed
+        for (Op op : generateOps(random, 50)) op.log(journal);
+        assertTrue(journal.commit());
+        journal.checkpoint();
+
+        for (int batch = random.nextInt(5) + 1; batch > 0; batch--) {
+          List<Op> ops = generateOps(random, random.nextInt(3000));
+          for (Op op : ops) op.log(journal);
+          assertTrue(journal.commit());
+          committed.addAll(ops);
+        }
+        // the process is killed after a commit: buffered entries are lost
+        for (Op op : generateOps(random, 100)) op.log(journal);
+      }
+
+      File recovered = image(committed, random.nextInt(committed.size() + 1), "recovered" + iteration);
+      assertTrue(replay(journalFile, recovered) >= 0);
+      assertArrayEquals("iteration " + iteration, contents(image(committed, committed.size(), "expected" + iteration)), contents(recovered));
+    }
+  }
+
+  @Test
+  public void testJournalWithUncommittedEntriesIsNotReplayed() throws IOException {
+    Random random = new Random(5);
+    File journalFile = myTempDir.newFile("records.journal");
+    try (FSRecordsJournal journal = openJournal(journalFile)) {
+      for (Op op : generateOps(random, 100)) op.log(journal);
+      assertTrue(journal.commit());
+      // enough to be written out of the buffer: the table was modified after the storages had been forced
+      for (Op op : generateOps(random, 10000)) op.log(journal);
+    }
+    assertEquals(-1, replay(journalFile, image(Collections.emptyList(), 0, "records")));
+  }
+
+  @Test
+  public void testJournalKilledDuringCommitIsNotReplayed() throws IOException {
+    Random random = new Random(11);
+    File journalFile = myTempDir.newFile("records.journal");
+    try (FSRecordsJournal journal = openJournal(journalFile)) {
+      for (Op op : generateOps(random, 1000)) op.log(journal);
+      assertTrue(journal.commit());
+      for (Op op : generateOps(random, 1000)) op.log(journal);
+      assertTrue(journal.commit());
+    }
+    try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+      file.setLength(file.length() - 1 - random.nextInt(500 * FSRecordsJournal.ENTRY_SIZE));
+    }
+    assertEquals(-1, replay(journalFile, image(Collections.emptyList(), 0, "records")));
+  }
+
+  @Test
+  public void testCorruptedJournalIsNotReplayed() throws IOException {
+    Random random = new Random(7);
+    File journalFile = myTempDir.newFile("records.journal");
+    try (FSRecordsJournal journal = openJournal(journalFile)) {
+      for (Op op : generateOps(random, 300)) op.log(journal);
+      assertTrue(journal.commit());
+    }
+
+    try (RandomAccessFile file = new RandomAccessFile(journalFile, "rw")) {
+      long position = FSRecordsJournal.HEADER_SIZE + 200L * FSRecordsJournal.ENTRY_SIZE + 3;
+      file.seek(position);
+      int b = file.read();
+      file.seek(position);
+      file.write(b ^ 0xFF);
+    }
+
+    File records = image(Collections.emptyList(), 0, "records");
+    byte[] before = contents(records);
+    assertEquals(-1, replay(journalFile, records));
+    assertArrayEquals("the table is left as is to be rebuilt", before, contents(records));
+  }
+
+  @Test
+  public void testJournalIsLimitedUntilCheckpoint() throws IOException {
+    Random random = new Random(3);
+    long maxSize = FSRecordsJournal.HEADER_SIZE + 1000L * FSRecordsJournal.ENTRY_SIZE;
+    File journalFile = myTempDir.newFile("records.journal");
+    List<Op> ops = generateOps(random, 500);
+    try (FSRecordsJournal journal = new FSRecordsJournal(journalFile, maxSize)) {
+      for (Op op : generateOps(random, 5000)) op.log(journal);
+      assertTrue(journal.size() <= maxSize);
+      assertFalse(journal.commit());
+
+      journal.checkpoint();
+      for (Op op : ops) op.log(journal);
+      assertTrue(journal.commit());
+    }
+    assertTrue(journalFile.length() <= maxSize);
+
+    File recovered = image(Collections.emptyList(), 0, "recovered");
+    assertEquals(ops.size(), replay(journalFile, recovered));
+    assertArrayEquals(contents(image(ops, ops.size(), "expected")), contents(recovered));
+  }
+
+  @NotNull
+  private static List<Op> generateOps(@NotNull Random random, int count) {
+    List<Op> ops = new ArrayList<>(count);
+    for (int i = 0; i < count; i++) {
+      int record = random.nextInt(RECORD_COUNT);
+      int kind = random.nextInt(10) == 0 ? 2 : random.nextInt(2);
+      if (kind == 2) {
+        ops.add(new Op(kind, (long)record * RECORD_SIZE, RECORD_SIZE));
+      }
+      else {
+        long offset = (long)record * RECORD_SIZE + random.nextInt(RECORD_SIZE / 8) * 8;
+        ops.add(new Op(kind, offset, random.nextLong()));
+      }
+    }
+    return ops;
+  }
+
+  @NotNull
+  private File image(@NotNull List<Op> ops, int applied, @NotNull String name) throws IOException {
+    File file = new File(myTempDir.getRoot(), name);
+    ResizeableMappedFile records = openRecords(file);
+    try {
+      for (int i = 0; i < applied; i++) ops.get(i).apply(records);
+    }
+    finally {
+      records.close();
+    }
+    return file;
+  }
+
+  private static int replay(@NotNull File journalFile, @NotNull File recordsFile) throws IOException {
+    ResizeableMappedFile records = openRecords(recordsFile);
+    try (FSRecordsJournal journal = openJournal(journalFile)) {
+      return journal.replay(records);
+    }
+    finally {
+      records.close();
+    }
+  }
+
+  @NotNull
+  private static FSRecordsJournal openJournal(@NotNull File journalFile) throws IOException {
+    return new FSRecordsJournal(journalFile, Long.MAX_VALUE);
+  }
+
+  @NotNull
+  private static ResizeableMappedFile openRecords(@NotNull File file) throws IOException {
+    ResizeableMappedFile records = new ResizeableMappedFile(file, RECORD_SIZE * RECORD_COUNT, (PagedFileStorage.StorageLockContext)null,
+                                                            4096, false);
+    if (records.length() == 0) {
+      records.put((long)(RECORD_COUNT - 1) * RECORD_SIZE, new byte[RECORD_SIZE], 0, RECORD_SIZE);
+    }
+    return records;
+  }
+
+  @NotNull
+  private static byte[] contents(@NotNull File file) throws IOException {
+    ResizeableMappedFile records = openRecords(file);
+    try {
+      byte[] bytes = new byte[(int)records.length()];
+      records.get(0, bytes, 0, bytes.length);
+      return bytes;
+    }
+    finally {
+      records.close();
+    }
+  }
+}
@@ -18,6 +18,7 @@ import com.intellij.openapi.vfs.*;
 import com.intellij.openapi.vfs.ex.temp.TempFileSystem;
 import com.intellij.openapi.vfs.newvfs.BulkFileListener;
 import com.intellij.openapi.vfs.newvfs.FileAttribute;
+import com.intellij.openapi.vfs.newvfs.FixedWidthFileAttribute;
 import com.intellij.openapi.vfs.newvfs.ManagingFS;
 import com.intellij.openapi.vfs.newvfs.NewVirtualFile;
 import com.intellij.openapi.vfs.newvfs.events.*;
@@ -287,6 +288,61 @@ public class PersistentFsTest extends PlatformTestCase {
     }
   }
 
+  private static final FixedWidthFileAttribute TEST_INT_COLUMN = FixedWidthFileAttribute.intAttribute("PersistentFsTest.int", 1);
+  private static final FixedWidthFileAttribute TEST_LONG_COLUMN = FixedWidthFileAttribute.longAttribute("PersistentFsTest.long", 1);
+
+  public void testFixedWidthAttributes() {
+    VirtualFile vFile = setupFile();
+    VirtualFile parent = vFile.getParent();
+    assertEquals(0, TEST_INT_COLUMN.readInt(vFile));
+    assertEquals(0L, TEST_LONG_COLUMN.readLong(vFile));
+
+    TEST_INT_COLUMN.writeInt(vFile, 42);
+    TEST_LONG_COLUMN.writeLong(vFile, Long.MIN_VALUE + 1);
+    TEST_INT_COLUMN.writeInt(parent, -1);
+
+    assertEquals(42, TEST_INT_COLUMN.readInt(vFile));
+    assertEquals(Long.MIN_VALUE + 1, TEST_LONG_COLUMN.readLong(vFile));
+    assertEquals(-1, TEST_INT_COLUMN.readInt(parent));
+    assertEquals(0L, TEST_LONG_COLUMN.readLong(parent));
+
+    FSRecords.force();
+    assertFalse(FSRecords.isDirty());
+    assertEquals(42, TEST_INT_COLUMN.readInt(vFile));
+
+    delete(vFile);
+    // values must not leak to a file reusing the record
+    int id = FSRecords.createRecord();
+    assertEquals(0, FSRecords.readFixedWidthAttribute(id, TEST_INT_COLUMN));
+    assertEquals(0L, FSRecords.readFixedWidthAttribute(id, TEST_LONG_COLUMN));
+  }
+
+  public void testRecordsAreRecoveredFromJournalAfterKill() throws IOException {
+    File recordsFile = new File(FSRecords.basePath(), "records" + FSRecords.VFS_FILES_EXTENSION);
+    long creationTimestamp = FSRecords.getCreationTimestamp();
+
+    try (AccessToken ignore = HeavyProcessLatch.INSTANCE.processStarted("This test wants no records table flush")) {
+      FSRecords.force();
+      int id = FSRecords.createRecord();
+      FSRecords.setTimestamp(id, 42);
+      FSRecords.syncJournal();
+      FSRecords.reconnectAfterKill(() -> {});
+
+      assertEquals("VFS must not be rebuilt", creationTimestamp, FSRecords.getCreationTimestamp());
+      assertEquals(42, FSRecords.getTimestamp(id));
+
+      byte[] recoveredRecords = FileUtil.loadFileBytes(recordsFile);
+      FSRecords.setLength(id, 4242);
+      FSRecords.syncJournal();
+      // an OS crash loses pages of the mapped table written since it was forced
+      FSRecords.reconnectAfterKill(() -> FileUtil.writeToFile(recordsFile, recoveredRecords));
+
+      assertEquals("VFS must not be rebuilt", creationTimestamp, FSRecords.getCreationTimestamp());
+      assertEquals(42, FSRecords.getTimestamp(id));
+      assertEquals(4242, FSRecords.getLength(id));
+    }
+  }
+
   @NotNull
   private static VirtualFile setupFile() {
     File file = IoTestUtil.createTestFile("file.txt");
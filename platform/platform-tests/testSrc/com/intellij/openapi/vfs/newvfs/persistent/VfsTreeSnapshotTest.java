@@ -0,0 +1,101 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.openapi.vfs.newvfs.persistent;
+
+import com.intellij.testFramework.rules.TempDirectory;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class VfsTreeSnapshotTest {
+  private static final int VERSION = 1;
+  private static final long TIMESTAMP = 0x123456789L;
+
+  @Rule public TempDirectory myTempDir = new TempDirectory();
+
+  @Test
+  public void testSavedListsAreReadFromMapping() throws IOException {
+    File file = new File(myTempDir.getRoot(), "tree.snapshot");
+    VfsTreeSnapshot snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    assertEquals(0, snapshot.size());
+    for (int id = 1000; id > 0; id -= 3) {
+      snapshot.put(id, new int[]{id + 1, id + 2});
+    }
+    snapshot.put(5000, new int[0]);
+    snapshot.save(file, VERSION, TIMESTAMP);
+
+    snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    try {
+      assertEquals(335, snapshot.size());
+      for (int id = 1000; id > 0; id -= 3) {
+        assertArrayEquals(new int[]{id + 1, id + 2}, snapshot.get(id));
+      }
+      assertArrayEquals(new int[0], snapshot.get(5000));
+      assertNull(snapshot.get(999));
+      assertNull(snapshot.get(5001));
+    }
+    finally {
+      snapshot.close();
+    }
+  }
+
+  @Test
+  public void testChangesAfterLoadAreSaved() throws IOException {
+    File file = new File(myTempDir.getRoot(), "tree.snapshot");
+    VfsTreeSnapshot snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    snapshot.put(10, new int[]{11, 12});
+    snapshot.put(20, new int[]{21});
+    snapshot.put(30, new int[]{31});
+    snapshot.save(file, VERSION, TIMESTAMP);
+
+    snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    snapshot.remove(20);
+    assertNull(snapshot.get(20));
+    snapshot.remove(30);
+    snapshot.put(30, new int[]{31, 32});
+    snapshot.put(40, new int[]{41});
+    snapshot.save(file, VERSION, TIMESTAMP);
+
+    snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    try {
+      assertArrayEquals(new int[]{11, 12}, snapshot.get(10));
+      assertNull(snapshot.get(20));
+      assertArrayEquals(new int[]{31, 32}, snapshot.get(30));
+      assertArrayEquals(new int[]{41}, snapshot.get(40));
+    }
+    finally {
+      snapshot.close();
+    }
+  }
+
+  @Test
+  public void testSnapshotIsNotReusedAfterUncleanClose() throws IOException {
+    File file = new File(myTempDir.getRoot(), "tree.snapshot");
+    VfsTreeSnapshot snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    snapshot.put(10, new int[]{11});
+    snapshot.save(file, VERSION, TIMESTAMP);
+
+    snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    assertArrayEquals(new int[]{11}, snapshot.get(10));
+    snapshot.close();
+
+    snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    assertNull(snapshot.get(10));
+    assertFalse(file.exists());
+  }
+
+  @Test
+  public void testSnapshotOfOtherVfsIsIgnored() throws IOException {
+    File file = new File(myTempDir.getRoot(), "tree.snapshot");
+    VfsTreeSnapshot snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP);
+    snapshot.put(10, new int[]{11});
+    snapshot.save(file, VERSION, TIMESTAMP);
+
+    snapshot = VfsTreeSnapshot.load(file, VERSION, TIMESTAMP + 1);
+    assertNull(snapshot.get(10));
+    assertFalse(file.exists());
+  }
+}
@@ -3,10 +3,14 @@ package com.intellij.psi.impl.search;
 
 import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.testFramework.PlatformTestUtil;
+import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.text.StringSearcher;
 import gnu.trove.TIntArrayList;
 import junit.framework.TestCase;
 
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * @author yole
  */
@@ -60,4 +64,41 @@ public class LowLevelSearchUtilTest extends TestCase {
       }
     }).assertTiming();
   }
+
+  public void testCachedOccurrencesOfSeveralWordsAreTheSameAsFoundOneByOne() {
+    String text = StringUtil.repeat("foo fooBar bar BAR foo_bar xfoo \"foo\" Bar ", 100);
+    List<StringSearcher> searchers = Arrays.asList(new StringSearcher("foo", true, true), new StringSearcher("bar", false, true),
+                                                   new StringSearcher("Bar", true, true), new StringSearcher("foo_bar", true, true));
+    List<String> expected = ContainerUtil.map(searchers, searcher -> findOccurrences(new String(text), searcher));
+
+    LowLevelSearchUtil.cacheTextOccurrences(text, searchers);
+    assertEquals(expected, ContainerUtil.map(searchers, searcher -> findOccurrences(text, searcher)));
+  }
+
+  private static String findOccurrences(CharSequence text, StringSearcher searcher) {
+    TIntArrayList result = new TIntArrayList();
+    LowLevelSearchUtil.processTextOccurrences(text, 0, text.length(), searcher, null, offset -> {
+      result.add(offset);
+      return true;
+    });
+    return Arrays.toString(result.toNativeArray());
+  }
+
+  public void testSearchForSeveralWordsPerformance() {
+    String[] words = {"getValue", "setValue", "value", "myValue", "Value", "values", "valueOf", "isValue"};
+    List<StringSearcher> searchers = ContainerUtil.map(words, word -> new StringSearcher(word, true, true));
+    String chunk = "  public int getValue() { return myValue; }\n" +
+                   "  public void setValue(int value) { myValue = Value.valueOf(value); }\n" +
+                   "  boolean isValue; // values\n";
+
+    PlatformTestUtil.startPerformanceTest("search for several words", 2000, () -> {
+      for (int i = 0; i < 20; i++) {
+        CharSequence text = new StringBuilder(StringUtil.repeat(chunk, 20000)).append(i);
+        LowLevelSearchUtil.cacheTextOccurrences(text, searchers);
+        for (StringSearcher searcher : searchers) {
+          assertFalse(findOccurrences(text, searcher).isEmpty());
+        }
+      }
+    }).assertTiming();
+  }
 }
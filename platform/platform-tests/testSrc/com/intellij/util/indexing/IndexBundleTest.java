@@ -0,0 +1,56 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.indexing;
+
+import com.intellij.openapi.util.io.ByteArraySequence;
+import com.intellij.testFramework.rules.TempDirectory;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class IndexBundleTest {
+  @Rule public TempDirectory myTempDir = new TempDirectory();
+
+  @Test
+  public void testWrittenBundleIsFoundByHash() throws IOException {
+    ID<String, Void> indexId = ID.create("index.bundle.test");
+    File directory = myTempDir.newFolder("bundles");
+    Random random = new Random(3);
+    byte[][] hashes = new byte[1000][];
+    try (IndexBundle.Writer writer = new IndexBundle.Writer(IndexBundle.getBundleFile(directory, indexId), 5)) {
+      for (int i = 0; i < hashes.length; i++) {
+        random.nextBytes(hashes[i] = new byte[20]);
+        writer.add(hashes[i], new ByteArraySequence(("data" + i).getBytes(StandardCharsets.UTF_8)));
+      }
+      writer.add(hashes[0], new ByteArraySequence("duplicate".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    String oldValue = System.getProperty(IndexBundle.BUNDLES_PROPERTY);
+    System.setProperty(IndexBundle.BUNDLES_PROPERTY, directory.getPath());
+    try {
+      List<IndexBundle> bundles = IndexBundle.getBundles(indexId, 5);
+      assertEquals(1, bundles.size());
+      IndexBundle bundle = bundles.get(0);
+      for (int i = 0; i < hashes.length; i++) {
+        ByteArraySequence data = bundle.find(hashes[i]);
+        assertNotNull(data);
+        assertEquals("data" + i, new String(data.toBytes(), StandardCharsets.UTF_8));
+      }
+
+      byte[] unknown = new byte[20];
+      random.nextBytes(unknown);
+      assertNull(bundle.find(unknown));
+      assertNull(bundle.find(new byte[16]));
+    }
+    finally {
+      if (oldValue == null) System.clearProperty(IndexBundle.BUNDLES_PROPERTY);
+      else System.setProperty(IndexBundle.BUNDLES_PROPERTY, oldValue);
+    }
+  }
+}
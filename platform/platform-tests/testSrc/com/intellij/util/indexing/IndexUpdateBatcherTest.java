@@ -0,0 +1,89 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.indexing;
+
+import org.jetbrains.annotations.NotNull;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.Assert.*;
+
+public class IndexUpdateBatcherTest {
+  private final ID<String, Void> myIndexId = ID.create("index.update.batcher.test");
+  private final ID<String, Void> myOtherIndexId = ID.create("index.update.batcher.test.other");
+  private final List<String> myWritten = new ArrayList<>();
+  private final IndexUpdateBatcher myBatcher = new IndexUpdateBatcher(new IndexUpdateBatcher.IndexUpdateWriter() {
+    private final Lock myLock = new ReentrantLock();
+
+    @NotNull
+    @Override
+    public Lock getWriteLock(@NotNull ID<?, ?> indexId) {
+      return myLock;
+    }
+
+    @Override
+    public void write(@NotNull ID<?, ?> indexId, @NotNull List<IndexUpdateBatcher.PendingUpdate> updates) {
+      for (IndexUpdateBatcher.PendingUpdate update : updates) {
+        boolean success;
+        try {
+          success = update.update.compute();
+        }
+        catch (RuntimeException e) {
+          success = false;
+        }
+        update.written(success);
+      }
+    }
+  });
+
+  @Test
+  public void testFileIsIndexedAfterAllItsUpdatesAreWritten() {
+    List<String> indexed = new ArrayList<>();
+    IndexUpdateBatcher.FileUpdates file = myBatcher.startFile(() -> indexed.add("file"));
+    file.add(myIndexId, () -> myWritten.add("a"), () -> {});
+    file.add(myOtherIndexId, () -> myWritten.add("b"), () -> {});
+    file.allScheduled();
+    assertTrue(myWritten.isEmpty());
+    assertTrue(indexed.isEmpty());
+
+    myBatcher.flush();
+    assertEquals(2, myWritten.size());
+    assertEquals(1, indexed.size());
+  }
+
+  @Test
+  public void testFailedUpdateKeepsFileUnindexedButOtherUpdatesAreWritten() {
+    List<String> indexed = new ArrayList<>();
+    IndexUpdateBatcher.FileUpdates failed = myBatcher.startFile(() -> indexed.add("failed"));
+    failed.add(myIndexId, () -> {
+      throw new RuntimeException();
+    }, () -> fail());
+    failed.allScheduled();
+    IndexUpdateBatcher.FileUpdates other = myBatcher.startFile(() -> indexed.add("other"));
+    List<String> succeeded = new ArrayList<>();
+    other.add(myIndexId, () -> myWritten.add("other"), () -> succeeded.add("other"));
+    other.allScheduled();
+
+    myBatcher.flush();
+    assertEquals(1, myWritten.size());
+    assertEquals(1, succeeded.size());
+    assertEquals(1, indexed.size());
+    assertEquals("other", indexed.get(0));
+  }
+
+  @Test
+  public void testFileIsNotIndexedUntilAllUpdatesAreScheduled() {
+    List<String> indexed = new ArrayList<>();
+    IndexUpdateBatcher.FileUpdates file = myBatcher.startFile(() -> indexed.add("file"));
+    file.add(myIndexId, () -> myWritten.add("a"), () -> {});
+    myBatcher.flush();
+    assertEquals(1, myWritten.size());
+    assertTrue(indexed.isEmpty());
+
+    file.allScheduled();
+    assertEquals(1, indexed.size());
+  }
+}
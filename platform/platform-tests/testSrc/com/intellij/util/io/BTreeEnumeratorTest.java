@@ -6,11 +6,13 @@ import com.intellij.openapi.util.text.StringUtil;
 import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.testFramework.rules.TempDirectory;
 import com.intellij.util.containers.IntObjectCache;
+import com.sun.management.ThreadMXBean;
 import gnu.trove.THashMap;
 import org.junit.*;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
 import java.util.*;
 
 import static org.junit.Assert.*;
@@ -179,6 +181,68 @@ public class BTreeEnumeratorTest {
     LOG.debug(String.format("File size = %d bytes\n", myFile.length()));
   }
 
+  @Test
+  public void testEnumerateExistingPerformance() throws IOException {
+    List<String> strings = new ArrayList<>(100000);
+    for (int i = 0; i < 100000; ++i) {
+      String string = createRandomString();
+      strings.add(string);
+      myEnumerator.enumerate(string);
+    }
+
+    PlatformTestUtil.startPerformanceTest("PersistentBTreeEnumerator.enumerate existing", 1000, () -> {
+      for (int i = 0; i < 5; ++i) {
+        for (String string : strings) {
+          assertNotEquals(PersistentEnumeratorBase.NULL_ID, myEnumerator.tryEnumerate(string));
+        }
+      }
+    }).assertTiming();
+  }
+
+  @Test
+  public void testComparingKeyWithStoredBytesDoesNotAllocate() throws IOException {
+    ThreadMXBean threadBean = (ThreadMXBean)ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported() && threadBean.isThreadAllocatedMemoryEnabled());
+
+    File keysFile = tempDir.newFile("keys");
+    AppendableStorageBackedByResizableMappedFile keys =
+      new AppendableStorageBackedByResizableMappedFile(keysFile, 4096, null, PagedFileStorage.MB, false);
+    keys.getPagedFileStorage().lock();
+    try {
+      List<String> strings = new ArrayList<>(1000);
+      int[] addresses = new int[1000];
+      for (int i = 0; i < addresses.length; ++i) {
+        String string = createRandomString();
+        strings.add(string);
+        addresses[i] = keys.append(string, EnumeratorStringDescriptor.INSTANCE);
+        // keys before the flush are compared with mapped pages, the rest with the append buffer
+        if (i == addresses.length / 2) keys.force();
+      }
+
+      int rounds = 100;
+      long allocated = 0;
+      for (int warmUp = 0; warmUp < 2; ++warmUp) {
+        long before = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        for (int round = 0; round < rounds; ++round) {
+          for (int i = 0; i < addresses.length; ++i) {
+            assertTrue(keys.checkBytesAreTheSame(addresses[i], strings.get(i), EnumeratorStringDescriptor.INSTANCE));
+            assertFalse(keys.checkBytesAreTheSame(addresses[i], strings.get((i + 1) % addresses.length), EnumeratorStringDescriptor.INSTANCE));
+          }
+        }
+        allocated = threadBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - before;
+      }
+
+      // a comparing stream with its data stream and result array took about 100 bytes per check before it was reused
+      int checks = rounds * addresses.length * 2;
+      LOG.debug(String.format("%d bytes allocated for %d checks\n", allocated, checks));
+      assertTrue(allocated + " bytes allocated for " + checks + " checks", allocated < checks);
+    }
+    finally {
+      keys.getPagedFileStorage().unlock();
+      keys.close();
+    }
+  }
+
   private static final StringBuilder builder = new StringBuilder(100);
   private static final Random random = new Random(13101977);
 
@@ -0,0 +1,76 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.io.FileUtil;
+import junit.framework.TestCase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+
+public class PartitionedPersistentHashMapTest extends TestCase {
+  private File myFile;
+  private PartitionedPersistentHashMap<String, String> myMap;
+
+  @Override
+  protected void setUp() throws Exception {
+    super.setUp();
+    myFile = new File(FileUtil.createTempDirectory("partitioned", "map"), "map");
+    myMap = createMap(4);
+  }
+
+  @Override
+  protected void tearDown() throws Exception {
+    try {
+      if (myMap != null) myMap.close();
+      IOUtil.deleteAllFilesStartingWith(myFile);
+    }
+    finally {
+      myMap = null;
+      super.tearDown();
+    }
+  }
+
+  private PartitionedPersistentHashMap<String, String> createMap(int partitions) throws IOException {
+    return new PartitionedPersistentHashMap<>(myFile, EnumeratorStringDescriptor.INSTANCE, EnumeratorStringDescriptor.INSTANCE,
+                                              partitions, 1024, 0, null);
+  }
+
+  public void testPutGetRemoveAcrossReopen() throws IOException {
+    for (int i = 0; i < 1000; ++i) {
+      myMap.put("key" + i, "value" + i);
+    }
+    myMap.remove("key0");
+    myMap.close();
+
+    myMap = createMap(4);
+    assertNull(myMap.get("key0"));
+    assertFalse(myMap.containsMapping("key0"));
+    for (int i = 1; i < 1000; ++i) {
+      assertEquals("value" + i, myMap.get("key" + i));
+    }
+
+    Set<String> keys = new HashSet<>(myMap.getAllKeysWithExistingMapping());
+    assertEquals(999, keys.size());
+    assertFalse(keys.contains("key0"));
+  }
+
+  public void testAppendData() throws IOException {
+    myMap.appendData("key", out -> IOUtil.writeUTF(out, "value"));
+    assertTrue(myMap.containsMapping("key"));
+    assertEquals("value", myMap.get("key"));
+  }
+
+  public void testPartitionCountChangeIsReportedAsCorruption() throws IOException {
+    myMap.put("key", "value");
+    myMap.close();
+    myMap = null;
+    try {
+      myMap = createMap(8);
+      fail();
+    }
+    catch (PersistentEnumeratorBase.CorruptedException ignored) {
+    }
+  }
+}
@@ -17,15 +17,17 @@ package com.intellij.util.io;
 
 import com.intellij.openapi.util.io.FileUtil;
 import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.testFramework.PlatformTestUtil;
 import com.intellij.testFramework.SkipSlowTestLocally;
 import gnu.trove.THashSet;
 import gnu.trove.TIntIntHashMap;
 import org.jetbrains.annotations.NotNull;
 
 import java.io.*;
-import java.util.Collection;
-import java.util.Random;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 /**
  * @author Eugene Zhuravlev
@@ -322,4 +324,52 @@ public class PersistentMapPerformanceTest extends PersistentMapTestBase {
                              (map, indexKey) -> map.remove(indexKey)
     );
   }
+
+  private static void runMixedReadAppendLoad(PartitionedPersistentHashMap<String, Integer> map,
+                                             int threads,
+                                             int keys,
+                                             int operationsPerThread) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    try {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int t = 0; t < threads; ++t) {
+        final int seed = t;
+        futures.add(executor.submit(() -> {
+          Random random = new Random(seed);
+          for (int i = 0; i < operationsPerThread; ++i) {
+            String key = "key" + random.nextInt(keys);
+            if (random.nextInt(4) == 0) {
+              final int value = i;
+              map.appendData(key, out -> out.writeInt(value));
+            }
+            else {
+              map.get(key);
+            }
+          }
+          return null;
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  public void testPartitionedMapMixedReadAppendLoad() throws Exception {
+    File file = FileUtil.createTempFile("partitioned", "map");
+    PartitionedPersistentHashMap<String, Integer> map =
+      new PartitionedPersistentHashMap<>(file, EnumeratorStringDescriptor.INSTANCE, EnumeratorIntegerDescriptor.INSTANCE);
+    try {
+      int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+      PlatformTestUtil.startPerformanceTest("PartitionedPersistentHashMap mixed read/append", 5000,
+                                            () -> runMixedReadAppendLoad(map, threads, 100000, 200000 / threads)).assertTiming();
+    }
+    finally {
+      map.close();
+      assertTrue(IOUtil.deleteAllFilesStartingWith(file));
+    }
+  }
 }
@@ -37,6 +37,7 @@ public class FindUsagesProcessPresentation {
   private boolean myShowFindOptionsPrompt = true;
   private volatile Runnable mySearchWithProjectFiles;
   private volatile boolean myCanceled;
+  private volatile int myReachedOccurrenceLimit;
 
   public FindUsagesProcessPresentation(@NotNull UsageViewPresentation presentation) {
     myUsageViewPresentation = presentation;
@@ -84,6 +85,20 @@ public class FindUsagesProcessPresentation {
     return myLargeFiles == null ? Collections.emptyList() : myLargeFiles;
   }
 
+  /**
+   * Reports that the search was stopped because it found as many occurrences as allowed
+   */
+  public void setOccurrenceLimitReached(int occurrenceLimit) {
+    myReachedOccurrenceLimit = occurrenceLimit;
+  }
+
+  /**
+   * @return the limit which stopped the search, or 0 if all occurrences were found
+   */
+  public int getReachedOccurrenceLimit() {
+    return myReachedOccurrenceLimit;
+  }
+
   public boolean isShowFindOptionsPrompt() {
     return myShowFindOptionsPrompt;
   }
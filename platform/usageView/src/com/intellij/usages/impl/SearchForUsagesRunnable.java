@@ -133,6 +133,11 @@ class SearchForUsagesRunnable implements Runnable {
       });
     }
 
+    int occurrenceLimit = myProcessPresentation.getReachedOccurrenceLimit();
+    if (occurrenceLimit > 0) {
+      resultLines.add("The search was stopped after " + occurrenceLimit + " occurrences, so some of them aren't shown.");
+    }
+
     Runnable searchIncludingProjectFileUsages = myProcessPresentation.searchIncludingProjectFileUsages();
     if (searchIncludingProjectFileUsages != null) {
       resultLines.add("Occurrences in project configuration files are skipped. " +
@@ -478,6 +483,7 @@ class SearchForUsagesRunnable implements Runnable {
       }
 
       if (!myProcessPresentation.getLargeFiles().isEmpty() ||
+          myProcessPresentation.getReachedOccurrenceLimit() > 0 ||
           myOutOfScopeUsages.get() != 0 ||
           myProcessPresentation.searchIncludingProjectFileUsages() != null ||
           !getUnloadedModulesBelongingToScope().isEmpty()) {
@@ -19,11 +19,15 @@ import com.intellij.openapi.util.Condition;
 import com.intellij.util.containers.EmptyIntHashSet;
 import gnu.trove.TIntHashSet;
 import gnu.trove.TIntProcedure;
+import gnu.trove.TObjectIntHashMap;
 import org.jetbrains.annotations.ApiStatus;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
 
 @ApiStatus.Experimental
 public class InvertedIndexUtil {
@@ -36,11 +40,27 @@ public class InvertedIndexUtil {
     throws StorageException {
     TIntHashSet mainIntersection = null;
 
+    // intersect starting from the most selective key: it bounds the size of all intermediate sets
+    List<ValueContainer<V>> containers = new ArrayList<>(dataKeys.size());
+    TObjectIntHashMap<ValueContainer<V>> containerSizes = new TObjectIntHashMap<>();
     for (K dataKey : dataKeys) {
       if (keyChecker != null && !keyChecker.value(dataKey)) continue;
 
-      final TIntHashSet copy = new TIntHashSet();
       final ValueContainer<V> container = index.getData(dataKey);
+      int size = 0;
+      for (ValueContainer.ValueIterator<V> valueIt = container.getValueIterator(); valueIt.hasNext(); ) {
+        final V value = valueIt.next();
+        if (valueChecker != null && !valueChecker.value(value)) continue;
+        size += valueIt.getInputIdsIterator().size();
+      }
+      if (size == 0) return EmptyIntHashSet.INSTANCE;
+      containers.add(container);
+      containerSizes.put(container, size);
+    }
+    containers.sort(Comparator.comparingInt(containerSizes::get));
+
+    for (ValueContainer<V> container : containers) {
+      final TIntHashSet copy = new TIntHashSet();
 
       for (ValueContainer.ValueIterator<V> valueIt = container.getValueIterator(); valueIt.hasNext(); ) {
         final V value = valueIt.next();
@@ -439,7 +439,7 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
 
         if (intIterator.size() == 1) {
           DataInputOutputUtil.writeINT(out, intIterator.next());
-        } else {
+        } else if (!writeDenseFileIds(out, intIterator)) {
           DataInputOutputUtil.writeINT(out, -intIterator.size());
           int prev = 0;
 
@@ -453,6 +453,34 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
     }
   }
 
+  // dense file id sets are serialized as bit set: marker, number of ids, first id, length of bit set in bytes, bit set bytes
+  // (bit i stands for first id + i), it takes up to 8 times less space than delta encoding when average delta is less than 8
+  private static final int DENSE_FILE_IDS_MARKER = 0;
+
+  private static boolean writeDenseFileIds(@NotNull DataOutput out, @NotNull IntIdsIterator sortedIds) throws IOException {
+    int size = sortedIds.size();
+    IntIdsIterator iterator = sortedIds.createCopyInInitialState();
+    int first = iterator.next();
+    int last = first;
+    while (iterator.hasNext()) last = iterator.next();
+
+    int bitSetLength = ((last - first) >> 3) + 1;
+    if (bitSetLength >= size) return false;
+
+    byte[] bitSet = new byte[bitSetLength];
+    while (sortedIds.hasNext()) {
+      int bit = sortedIds.next() - first;
+      bitSet[bit >> 3] |= 1 << (bit & 7);
+    }
+
+    DataInputOutputUtil.writeINT(out, DENSE_FILE_IDS_MARKER);
+    DataInputOutputUtil.writeINT(out, size);
+    DataInputOutputUtil.writeINT(out, first);
+    DataInputOutputUtil.writeINT(out, bitSetLength);
+    out.write(bitSet);
+    return true;
+  }
+
   static final int NUMBER_OF_VALUES_THRESHOLD = 20;
 
   public void readFrom(DataInputStream stream, DataExternalizer<? extends Value> externalizer) throws IOException {
@@ -486,6 +514,22 @@ class ValueContainerImpl<Value> extends UpdatableValueContainer<Value> implement
           if (idCountOrSingleValue > 0) {
             addValue(idCountOrSingleValue, value);
             if (mapping != null) mapping.associateFileIdToValue(idCountOrSingleValue, value);
+          } else if (idCountOrSingleValue == DENSE_FILE_IDS_MARKER) {
+            int count = DataInputOutputUtil.readINT(stream);
+            int first = DataInputOutputUtil.readINT(stream);
+            int bitSetLength = DataInputOutputUtil.readINT(stream);
+            ChangeBufferingList changeBufferingList = ensureFileSetCapacityForValue(value, count);
+
+            for (int byteIdx = 0; byteIdx < bitSetLength; byteIdx++) {
+              int bits = stream.readUnsignedByte();
+              while (bits != 0) {
+                final int id = first + (byteIdx << 3) + Integer.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (changeBufferingList != null) changeBufferingList.add(id);
+                else addValue(id, value);
+                if (mapping != null) mapping.associateFileIdToValue(id, value);
+              }
+            }
           } else {
             idCountOrSingleValue = -idCountOrSingleValue;
             ChangeBufferingList changeBufferingList = ensureFileSetCapacityForValue(value, idCountOrSingleValue);
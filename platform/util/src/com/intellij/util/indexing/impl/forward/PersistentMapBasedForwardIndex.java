@@ -6,6 +6,7 @@ import com.intellij.openapi.util.io.ByteArraySequence;
 import com.intellij.util.io.ByteSequenceDataExternalizer;
 import com.intellij.util.io.EnumeratorIntegerDescriptor;
 import com.intellij.util.io.PersistentHashMap;
+import com.intellij.util.Processor;
 import com.intellij.util.io.PersistentHashMapValueStorage;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
@@ -89,4 +90,8 @@ public class PersistentMapBasedForwardIndex implements ForwardIndex {
   public boolean containsMapping(int key) throws IOException {
     return myPersistentMap.containsMapping(key);
   }
+
+  public boolean processKeys(@NotNull Processor<? super Integer> processor) throws IOException {
+    return myPersistentMap.processKeysWithExistingMapping(processor);
+  }
 }
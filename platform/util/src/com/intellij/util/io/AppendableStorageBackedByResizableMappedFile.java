@@ -64,33 +64,24 @@ public class AppendableStorageBackedByResizableMappedFile extends ResizeableMapp
   }
 
   private final CompressedAppendableFile myCompressedAppendableFile;
-  private static final boolean testMode = false;
 
   public <Data> Data read(final int addr, KeyDescriptor<Data> descriptor) throws IOException {
-    Data tempData = null;
-
     if (myCompressedAppendableFile != null) {
-      tempData = myCompressedAppendableFile.read(addr, descriptor);
-      if (!testMode) return tempData;
+      return myCompressedAppendableFile.read(addr, descriptor);
     }
 
     if (myFileLength <= addr) {
-      Data data =
-        descriptor.read(new DataInputStream(new UnsyncByteArrayInputStream(myAppendBuffer, addr - myFileLength, myBufferPosition)));
-      assert tempData == null || descriptor.isEqual(data, tempData);
-      return data;
+      return descriptor.read(new DataInputStream(new UnsyncByteArrayInputStream(myAppendBuffer, addr - myFileLength, myBufferPosition)));
     }
     // we do not need to flushKeyBuffer since we store complete records
     myReadStream.setup(addr, myFileLength);
-    Data data = descriptor.read(myReadStream);
-    assert tempData == null || descriptor.isEqual(data, tempData);
-    return data;
+    return descriptor.read(myReadStream);
   }
 
   public <Data> boolean processAll(@NotNull Processor<? super Data> processor, @NotNull KeyDescriptor<Data> descriptor) throws IOException {
     assert !isDirty();
     DataInputStream keysStream2 = myCompressedAppendableFile != null ?myCompressedAppendableFile.getStream(0) : null;
-    if (!testMode && keysStream2 != null) {
+    if (keysStream2 != null) {
       getPagedFileStorage().lock(); // todo support it inside myCompressedAppendableFile to avoid filling the cache
       try {
         try {
@@ -123,10 +114,6 @@ public class AppendableStorageBackedByResizableMappedFile extends ResizeableMapp
       try {
         while (true) {
           Data key = descriptor.read(keysStream);
-          if (keysStream2 != null) {
-            Data tempKey = descriptor.read(keysStream2);
-            assert descriptor.isEqual(key, tempKey);
-          }
           if (!processor.process(key)) return false;
         }
       }
@@ -138,18 +125,10 @@ public class AppendableStorageBackedByResizableMappedFile extends ResizeableMapp
   }
 
   public int getCurrentLength() {
-    int currentLength;
     if (myCompressedAppendableFile != null) {
-      currentLength = (int)myCompressedAppendableFile.length();
-      if (testMode) {
-        assert currentLength == myBufferPosition + myFileLength;
-      }
-    }
-    else {
-      currentLength = myBufferPosition + myFileLength;
+      return (int)myCompressedAppendableFile.length();
     }
-
-    return currentLength;
+    return myBufferPosition + myFileLength;
   }
 
   public <Data> int append(Data value, KeyDescriptor<Data> descriptor) throws IOException {
@@ -164,7 +143,7 @@ public class AppendableStorageBackedByResizableMappedFile extends ResizeableMapp
     if (myCompressedAppendableFile != null) {
       //myCompressedAppendableFile.append(value, descriptor);
       myCompressedAppendableFile.append(buffer, size);
-      if (!testMode) return currentLength;
+      return currentLength;
     }
 
     if (size > ourAppendBufferLength) {
@@ -187,97 +166,75 @@ public class AppendableStorageBackedByResizableMappedFile extends ResizeableMapp
   }
 
   <Data> boolean checkBytesAreTheSame(final int addr, Data value, KeyDescriptor<Data> descriptor) throws IOException {
-    final boolean[] sameValue = new boolean[1];
-    OutputStream comparer;
-
     if (myCompressedAppendableFile != null) {
       final DataInputStream compressedStream = myCompressedAppendableFile.getStream(addr);
-
-      comparer = new OutputStream() {
-        boolean same = true;
-
+      final boolean[] sameValue = {true};
+      OutputStream comparer = new OutputStream() {
         @Override
         public void write(int b) throws IOException {
-          if (same) {
-            same = compressedStream.readByte() == (byte)b;
+          if (sameValue[0]) {
+            sameValue[0] = compressedStream.readByte() == (byte)b;
           }
         }
-
-        @Override
-        public void close() {
-          sameValue[0] = same;
-        }
       };
-    } else {
-      comparer = buildOldComparerStream(addr, sameValue);
+      descriptor.save(new DataOutputStream(comparer), value);
+      return sameValue[0];
     }
 
-    DataOutput out = new DataOutputStream(comparer);
-    descriptor.save(out, value);
-    comparer.close();
-
-    if (testMode) {
-      final boolean[] sameValue2 = new boolean[1];
-      OutputStream comparer2 = buildOldComparerStream(addr, sameValue2);
-      out = new DataOutputStream(comparer2);
-      descriptor.save(out, value);
-      comparer2.close();
-      assert sameValue[0] == sameValue2[0];
-    }
-    return sameValue[0];
+    // allocation free path: serialized value is compared byte by byte with stored bytes by reusable stream
+    myStoredBytesComparer.setup(addr);
+    descriptor.save(myStoredBytesComparerOutput, value);
+    return myStoredBytesComparer.mySame;
   }
 
-  @NotNull
-  private OutputStream buildOldComparerStream(final int addr, final boolean[] sameValue) {
-    OutputStream comparer;
-    final PagedFileStorage storage = getPagedFileStorage();
-
-    if (myFileLength <= addr) {
-      //noinspection IOResourceOpenedButNotSafelyClosed
-      comparer = new OutputStream() {
-        int address = addr - myFileLength;
-        boolean same = true;
-        @Override
-        public void write(int b) {
-          if (same) {
-            same = address < myBufferPosition && myAppendBuffer[address++] == (byte)b;
-          }
-        }
-        @Override
-        public void close() {
-          sameValue[0]  = same;
-        }
-      };
+  // reused by checkBytesAreTheSame, access is guarded by owning enumerator lock
+  private final StoredBytesComparer myStoredBytesComparer = new StoredBytesComparer();
+  private final DataOutputStream myStoredBytesComparerOutput = new DataOutputStream(myStoredBytesComparer);
+
+  private class StoredBytesComparer extends OutputStream {
+    private boolean mySame;
+    private boolean myInAppendBuffer;
+    private int myBase;
+    private int myAddress;
+    private ByteBuffer myBuffer;
+
+    void setup(int addr) {
+      mySame = true;
+      myInAppendBuffer = myFileLength <= addr;
+      if (myInAppendBuffer) {
+        myAddress = addr - myFileLength;
+        myBuffer = null;
+      }
+      else {
+        PagedFileStorage storage = getPagedFileStorage();
+        myBase = addr;
+        myAddress = storage.getOffsetInPage(addr);
+        myBuffer = storage.getByteBuffer(addr, false).getCachedBuffer();
+      }
     }
-    else {
-      //noinspection IOResourceOpenedButNotSafelyClosed
-      comparer = new OutputStream() {
-        int base = addr;
-        int address = storage.getOffsetInPage(addr);
-        boolean same = true;
-        ByteBuffer buffer = storage.getByteBuffer(addr, false).getCachedBuffer();
-        final int myPageSize = storage.myPageSize;
-
-        @Override
-        public void write(int b) {
-          if (same) {
-            if (myPageSize == address && address < myFileLength) {    // reached end of current byte buffer
-              base += address;
-              buffer = storage.getByteBuffer(base, false).getCachedBuffer();
-              address = 0;
-            }
-            same = address < myFileLength && buffer.get(address++) == (byte)b;
-          }
-        }
 
-        @Override
-        public void close() {
-          sameValue[0]  = same;
-        }
-      };
+    @Override
+    public void write(int b) {
+      if (!mySame) return;
+      if (myInAppendBuffer) {
+        mySame = myAddress < myBufferPosition && myAppendBuffer[myAddress++] == (byte)b;
+        return;
+      }
+      PagedFileStorage storage = getPagedFileStorage();
+      if (storage.myPageSize == myAddress && myAddress < myFileLength) {    // reached end of current byte buffer
+        myBase += myAddress;
+        myBuffer = storage.getByteBuffer(myBase, false).getCachedBuffer();
+        myAddress = 0;
+      }
+      mySame = myAddress < myFileLength && myBuffer.get(myAddress++) == (byte)b;
+    }
 
+    @Override
+    public void write(@NotNull byte[] b, int off, int len) {
+      for (int i = off, end = off + len; i < end && mySame; ++i) {
+        write(b[i]);
+      }
     }
-    return comparer;
   }
 
   private static class MyDataIS extends DataInputStream {
@@ -26,6 +26,8 @@ public abstract class ByteBufferWrapper {
   protected final long myPosition;
   protected final long myLength;
   protected volatile boolean myDirty;
+  // System.nanoTime() of the last access through PagedFileStorage cache, guarded by the lock of the cache shard
+  long myLastAccessTime;
 
   protected ByteBufferWrapper(final File file, final long offset, final long length) {
     myFile = file;
@@ -10,6 +10,7 @@ import com.intellij.util.containers.ContainerUtil;
 import com.intellij.util.containers.hash.LinkedHashMap;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
+import org.jetbrains.annotations.TestOnly;
 
 import java.io.File;
 import java.io.IOException;
@@ -20,7 +21,9 @@ import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.*;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
 
 /**
  * @author max
@@ -76,17 +79,11 @@ public class PagedFileStorage implements Forceable {
 
   private final StorageLockContext myStorageLockContext;
   private final boolean myNativeBytesOrder;
-  private int myLastPage = UNKNOWN_PAGE;
-  private int myLastPage2 = UNKNOWN_PAGE;
-  private int myLastPage3 = UNKNOWN_PAGE;
-  private ByteBufferWrapper myLastBuffer;
-  private ByteBufferWrapper myLastBuffer2;
-  private ByteBufferWrapper myLastBuffer3;
-  private int myLastChangeCount;
-  private int myLastChangeCount2;
-  private int myLastChangeCount3;
+  // last accessed pages are read without locking, every entry is immutable and is validated by the mapping change count
+  private volatile LastAccessedPage myLastPage = LastAccessedPage.NONE;
+  private volatile LastAccessedPage myLastPage2 = LastAccessedPage.NONE;
+  private volatile LastAccessedPage myLastPage3 = LastAccessedPage.NONE;
   private int myStorageIndex;
-  private final Object myLastAccessedBufferCacheLock = new Object();
 
   private final byte[] myTypedIOBuffer;
   private volatile boolean isDirty;
@@ -304,14 +301,9 @@ public class PagedFileStorage implements Forceable {
   private void unmapAll() {
     myStorageLockContext.myStorageLock.unmapBuffersForOwner(myStorageIndex, myStorageLockContext);
 
-    synchronized (myLastAccessedBufferCacheLock) {
-      myLastPage = UNKNOWN_PAGE;
-      myLastPage2 = UNKNOWN_PAGE;
-      myLastPage3 = UNKNOWN_PAGE;
-      myLastBuffer = null;
-      myLastBuffer2 = null;
-      myLastBuffer3 = null;
-    }
+    myLastPage = LastAccessedPage.NONE;
+    myLastPage2 = LastAccessedPage.NONE;
+    myLastPage3 = LastAccessedPage.NONE;
   }
 
   public void resize(long newSize) throws IOException {
@@ -376,26 +368,12 @@ public class PagedFileStorage implements Forceable {
   }
 
   private ByteBufferWrapper getBufferWrapper(long page, boolean modify) {
-    synchronized (myLastAccessedBufferCacheLock) {
-      if (myLastPage == page) {
-        ByteBuffer buf = myLastBuffer.getCachedBuffer();
-        if (buf != null && myLastChangeCount == myStorageLockContext.myStorageLock.myMappingChangeCount) {
-          if (modify) markDirty(myLastBuffer);
-          return myLastBuffer;
-        }
-      } else if (myLastPage2 == page) {
-        ByteBuffer buf = myLastBuffer2.getCachedBuffer();
-        if (buf != null && myLastChangeCount2 == myStorageLockContext.myStorageLock.myMappingChangeCount) {
-          if (modify) markDirty(myLastBuffer2);
-          return myLastBuffer2;
-        }
-      } else if (myLastPage3 == page) {
-        ByteBuffer buf = myLastBuffer3.getCachedBuffer();
-        if (buf != null && myLastChangeCount3 == myStorageLockContext.myStorageLock.myMappingChangeCount) {
-          if (modify) markDirty(myLastBuffer3);
-          return myLastBuffer3;
-        }
-      }
+    ByteBufferWrapper lastBuffer = getValidBuffer(myLastPage, page);
+    if (lastBuffer == null) lastBuffer = getValidBuffer(myLastPage2, page);
+    if (lastBuffer == null) lastBuffer = getValidBuffer(myLastPage3, page);
+    if (lastBuffer != null) {
+      if (modify) markDirty(lastBuffer);
+      return lastBuffer;
     }
 
     try {
@@ -404,6 +382,8 @@ public class PagedFileStorage implements Forceable {
       if (myStorageIndex == -1) {
         myStorageIndex = myStorageLockContext.myStorageLock.registerPagedFileStorage(this);
       }
+      // read before the lookup, so the entry is invalid if the buffer is evicted after it
+      int changeCount = myStorageLockContext.myStorageLock.getMappingChangeCount(myStorageIndex | (int)page);
       ByteBufferWrapper byteBufferWrapper = myStorageLockContext.myStorageLock.get(myStorageIndex | (int)page); // TODO: long page
       if (modify) markDirty(byteBufferWrapper);
       ByteBuffer buf = byteBufferWrapper.getBuffer();
@@ -411,24 +391,12 @@ public class PagedFileStorage implements Forceable {
         buf.order(ourNativeByteOrder);
       }
 
-      synchronized (myLastAccessedBufferCacheLock) {
-        if (myLastPage != page) {
-          myLastPage3 = myLastPage2;
-          myLastBuffer3 = myLastBuffer2;
-          myLastChangeCount3 = myLastChangeCount2;
-
-          myLastPage2 = myLastPage;
-          myLastBuffer2 = myLastBuffer;
-          myLastChangeCount2 = myLastChangeCount;
-
-          myLastBuffer = byteBufferWrapper;
-          myLastPage = (int)page; // TODO long page
-        } else {
-          myLastBuffer = byteBufferWrapper;
-        }
-
-        myLastChangeCount = myStorageLockContext.myStorageLock.myMappingChangeCount;
+      LastAccessedPage lastPage = myLastPage;
+      if (lastPage.myPage != page) {
+        myLastPage3 = myLastPage2;
+        myLastPage2 = lastPage;
       }
+      myLastPage = new LastAccessedPage((int)page, byteBufferWrapper, changeCount); // TODO long page
 
       return byteBufferWrapper;
     }
@@ -437,6 +405,32 @@ public class PagedFileStorage implements Forceable {
     }
   }
 
+  @Nullable
+  private ByteBufferWrapper getValidBuffer(@NotNull LastAccessedPage lastPage, long page) {
+    if (lastPage.myPage != page || lastPage.myBuffer.getCachedBuffer() == null) return null;
+    int changeCount = myStorageLockContext.myStorageLock.getMappingChangeCount(myStorageIndex | lastPage.myPage);
+    return changeCount == lastPage.myChangeCount ? lastPage.myBuffer : null;
+  }
+
+  private static final class LastAccessedPage {
+    private static final LastAccessedPage NONE = new LastAccessedPage(UNKNOWN_PAGE, null, 0);
+
+    private final int myPage;
+    private final ByteBufferWrapper myBuffer;
+    private final int myChangeCount;
+
+    private LastAccessedPage(int page, ByteBufferWrapper buffer, int changeCount) {
+      myPage = page;
+      myBuffer = buffer;
+      myChangeCount = changeCount;
+    }
+  }
+
+  @TestOnly
+  boolean isPageCached(long page) {
+    return myStorageLockContext.myStorageLock.isCached(myStorageIndex | (int)page);
+  }
+
   private void markDirty(ByteBufferWrapper buffer) {
     if (!isDirty) isDirty = true;
     buffer.markDirty();
@@ -466,18 +460,15 @@ public class PagedFileStorage implements Forceable {
   public static class StorageLock {
     private static final int FILE_INDEX_MASK = 0xFFFF0000;
     private static final int FILE_INDEX_SHIFT = 16;
+    private static final int SHARDS_COUNT = Math.max(1, SystemProperties.getIntProperty("idea.paged.storage.cache.shards", 8));
     public final StorageLockContext myDefaultStorageLockContext;
     private final ConcurrentIntObjectMap<PagedFileStorage> myIndex2Storage = ContainerUtil.createConcurrentIntObjectMap();
 
-    private final LinkedHashMap<Integer, ByteBufferWrapper> mySegments;
-    private final ReentrantLock mySegmentsAccessLock = new ReentrantLock(); // protects map operations of mySegments, needed for LRU order, mySize and myMappingChangeCount
-    // todo avoid locking for access
-
-    private final ReentrantLock mySegmentsAllocationLock = new ReentrantLock();
-    private final ConcurrentLinkedQueue<ByteBufferWrapper> mySegmentsToRemove = new ConcurrentLinkedQueue<>();
-    private volatile long mySize;
+    // buffers are distributed between shards by page key, every shard keeps own LRU order and locks,
+    // size limit is common for all shards and least recently used buffers of all shards are evicted first
+    private final BufferCacheShard[] myShards;
+    private final AtomicLong mySize = new AtomicLong();
     private volatile long mySizeLimit;
-    private volatile int myMappingChangeCount;
 
     public StorageLock() {
       this(true);
@@ -487,25 +478,10 @@ public class PagedFileStorage implements Forceable {
       myDefaultStorageLockContext = new StorageLockContext(this, checkThreadAccess);
 
       mySizeLimit = UPPER_LIMIT;
-      mySegments = new LinkedHashMap<Integer, ByteBufferWrapper>(10, 0.75f, true) {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<Integer, ByteBufferWrapper> eldest) {
-          return mySize > mySizeLimit;
-        }
-
-        @Nullable
-        @Override
-        public ByteBufferWrapper remove(Object key) {
-          // this method can be called after removeEldestEntry
-          ByteBufferWrapper wrapper = super.remove(key);
-          if (wrapper != null) {
-            ++myMappingChangeCount;
-            mySegmentsToRemove.offer(wrapper);
-            mySize -= wrapper.myLength;
-          }
-          return wrapper;
-        }
-      };
+      myShards = new BufferCacheShard[SHARDS_COUNT];
+      for (int i = 0; i < myShards.length; ++i) {
+        myShards[i] = new BufferCacheShard();
+      }
     }
 
     public void lock() {
@@ -532,30 +508,50 @@ public class PagedFileStorage implements Forceable {
       return myIndex2Storage.get(index);
     }
 
+    @NotNull
+    private BufferCacheShard getShard(int key) {
+      int hash = key * 0x9E3779B9;
+      return myShards[((hash ^ (hash >>> 16)) & Integer.MAX_VALUE) % myShards.length];
+    }
+
+    private int getMappingChangeCount(int key) {
+      return getShard(key).myMappingChangeCount;
+    }
+
     private ByteBufferWrapper get(Integer key) {
+      BufferCacheShard shard = getShard(key);
       ByteBufferWrapper wrapper;
       try {         // fast path
-        mySegmentsAccessLock.lock();
-        wrapper = mySegments.get(key);
-        if (wrapper != null) return wrapper;
+        shard.myAccessLock.lock();
+        wrapper = shard.mySegments.get(key);
+        if (wrapper != null) {
+          shard.myHits++;
+          wrapper.myLastAccessTime = System.nanoTime();
+          return wrapper;
+        }
       }
       finally {
-        mySegmentsAccessLock.unlock();
+        shard.myAccessLock.unlock();
       }
 
-      mySegmentsAllocationLock.lock();
+      shard.myAllocationLock.lock();
       try {
         // check if anybody cared about our segment
-        mySegmentsAccessLock.lock();
+        shard.myAccessLock.lock();
         try {
-          wrapper = mySegments.get(key);
-          if (wrapper != null) return wrapper;
+          wrapper = shard.mySegments.get(key);
+          if (wrapper != null) {
+            shard.myHits++;
+            wrapper.myLastAccessTime = System.nanoTime();
+            return wrapper;
+          }
+          shard.myMisses++;
         } finally {
-          mySegmentsAccessLock.unlock();
+          shard.myAccessLock.unlock();
         }
 
         long started = IOStatistics.DEBUG ? System.currentTimeMillis() : 0;
-        wrapper = createValue(key);
+        wrapper = createValue(key, shard);
 
         if (IOStatistics.DEBUG) {
           long finished = System.currentTimeMillis();
@@ -565,53 +561,91 @@ public class PagedFileStorage implements Forceable {
           }
         }
 
-        mySegmentsAccessLock.lock();
+        shard.myAccessLock.lock();
         try {
-          mySegments.put(key, wrapper);
-          mySize += wrapper.myLength;
+          wrapper.myLastAccessTime = System.nanoTime();
+          shard.mySegments.put(key, wrapper);
+          mySize.addAndGet(wrapper.myLength);
         }
         finally {
-          mySegmentsAccessLock.unlock();
+          shard.myAccessLock.unlock();
         }
 
-        ensureSize(mySizeLimit);
+        ensureSize(mySizeLimit, shard);
+
+        if (IOStatistics.DEBUG && (shard.myMisses & IOStatistics.KEYS_FACTOR_MASK) == 0) {
+          IOStatistics.dump(getCacheStatistics());
+        }
 
         return wrapper;
       }
       finally {
-        mySegmentsAllocationLock.unlock();
+        shard.myAllocationLock.unlock();
       }
     }
 
-    private void disposeRemovedSegments() {
-      if (mySegmentsToRemove.isEmpty()) return;
+    private static void disposeRemovedSegments(@NotNull BufferCacheShard shard) {
+      if (shard.mySegmentsToRemove.isEmpty()) return;
 
-      assert mySegmentsAllocationLock.isHeldByCurrentThread();
-      Iterator<ByteBufferWrapper> iterator = mySegmentsToRemove.iterator();
+      assert shard.myAllocationLock.isHeldByCurrentThread();
+      Iterator<ByteBufferWrapper> iterator = shard.mySegmentsToRemove.iterator();
       while(iterator.hasNext()) {
         iterator.next().dispose();
         iterator.remove();
       }
     }
 
-    private void ensureSize(long sizeLimit) {
-      assert mySegmentsAllocationLock.isHeldByCurrentThread();
+    // evicts least recently used buffers of all shards, shards which allocation locks are held by other threads are skipped
+    private void ensureSize(long sizeLimit, @NotNull BufferCacheShard ownShard) {
+      assert ownShard.myAllocationLock.isHeldByCurrentThread();
+
+      boolean[] busyShards = null;
+      while (mySize.get() > sizeLimit) {
+        int victim = -1;
+        long victimAccessTime = 0;
+        for (int i = 0; i < myShards.length; ++i) {
+          if (busyShards != null && busyShards[i]) continue;
+          BufferCacheShard shard = myShards[i];
+          shard.myAccessLock.lock();
+          try {
+            if (!shard.mySegments.isEmpty()) {
+              // values are iterated from the least recently used one
+              long accessTime = shard.mySegments.values().iterator().next().myLastAccessTime;
+              if (victim == -1 || accessTime - victimAccessTime < 0) {
+                victim = i;
+                victimAccessTime = accessTime;
+              }
+            }
+          }
+          finally {
+            shard.myAccessLock.unlock();
+          }
+        }
+        if (victim == -1) break;
 
-      try {
-        mySegmentsAccessLock.lock();
-        while (mySize > sizeLimit) {
-          // we still have to drop something
-          mySegments.doRemoveEldestEntry();
+        BufferCacheShard shard = myShards[victim];
+        if (shard == ownShard) {
+          shard.evictEldest();
+        }
+        else if (shard.myAllocationLock.tryLock()) {
+          try {
+            shard.evictEldest();
+            disposeRemovedSegments(shard);
+          }
+          finally {
+            shard.myAllocationLock.unlock();
+          }
+        }
+        else {
+          if (busyShards == null) busyShards = new boolean[myShards.length];
+          busyShards[victim] = true;
         }
-      } finally {
-        mySegmentsAccessLock.unlock();
       }
-
-      disposeRemovedSegments();
+      disposeRemovedSegments(ownShard);
     }
 
     @NotNull
-    private ByteBufferWrapper createValue(Integer key) {
+    private ByteBufferWrapper createValue(Integer key, @NotNull BufferCacheShard shard) {
       final int storageIndex = key & FILE_INDEX_MASK;
       PagedFileStorage owner = getRegisteredPagedFileStorageByIndex(storageIndex);
       assert owner != null: "No storage for index " + storageIndex;
@@ -644,10 +678,10 @@ public class PagedFileStorage implements Forceable {
           if (mySizeLimit > LOWER_LIMIT) {
             mySizeLimit -= owner.myPageSize;
           }
-          long newSize = mySize - owner.myPageSize;
+          long newSize = mySize.get() - owner.myPageSize;
           if (newSize < 0) {
-            LOG.info("Currently allocated:"+mySize);
-            LOG.info("Mapping failed due to OOME. Current buffers: " + mySegments);
+            LOG.info("Currently allocated:" + mySize.get());
+            LOG.info("Mapping failed due to OOME. " + getCacheStatistics());
             LOG.info(oome);
             try {
               Class<?> aClass = Class.forName("java.nio.Bits");
@@ -669,7 +703,7 @@ public class PagedFileStorage implements Forceable {
               "new size limit: " + mySizeLimit / MB + "MB " +
               "trying to allocate " + wrapper.myLength + " block", e);
           }
-          ensureSize(newSize); // next try
+          ensureSize(newSize, shard); // next try
         }
       }
     }
@@ -682,44 +716,33 @@ public class PagedFileStorage implements Forceable {
 
     @Nullable
     private Map<Integer, ByteBufferWrapper> getBuffersOrderedForOwner(int index, StorageLockContext storageLockContext) {
-      mySegmentsAccessLock.lock();
-      try {
-        checkThreadAccess(storageLockContext);
-        Map<Integer, ByteBufferWrapper> mineBuffers = null;
-        for (Map.Entry<Integer, ByteBufferWrapper> entry : mySegments.entrySet()) {
-          if ((entry.getKey() & FILE_INDEX_MASK) == index) {
-            if (mineBuffers == null) {
-              mineBuffers = new TreeMap<>(Comparator.comparingInt(o -> o));
+      checkThreadAccess(storageLockContext);
+      Map<Integer, ByteBufferWrapper> mineBuffers = null;
+      for (BufferCacheShard shard : myShards) {
+        shard.myAccessLock.lock();
+        try {
+          for (Map.Entry<Integer, ByteBufferWrapper> entry : shard.mySegments.entrySet()) {
+            if ((entry.getKey() & FILE_INDEX_MASK) == index) {
+              if (mineBuffers == null) {
+                mineBuffers = new TreeMap<>(Comparator.comparingInt(o -> o));
+              }
+              mineBuffers.put(entry.getKey(), entry.getValue());
             }
-            mineBuffers.put(entry.getKey(), entry.getValue());
           }
         }
-        return mineBuffers;
-      }
-      finally {
-        mySegmentsAccessLock.unlock();
+        finally {
+          shard.myAccessLock.unlock();
+        }
       }
+      return mineBuffers;
     }
 
     private void unmapBuffersForOwner(int index, StorageLockContext storageLockContext) {
       final Map<Integer, ByteBufferWrapper> buffers = getBuffersOrderedForOwner(index, storageLockContext);
 
       if (buffers != null) {
-        mySegmentsAccessLock.lock();
-        try {
-          for (Integer key : buffers.keySet()) {
-            mySegments.remove(key);
-          }
-        }
-        finally {
-          mySegmentsAccessLock.unlock();
-        }
-
-        mySegmentsAllocationLock.lock();
-        try {
-          disposeRemovedSegments();
-        } finally {
-          mySegmentsAllocationLock.unlock();
+        for (Integer key : buffers.keySet()) {
+          invalidateBuffer(key);
         }
       }
     }
@@ -728,40 +751,160 @@ public class PagedFileStorage implements Forceable {
       Map<Integer, ByteBufferWrapper> buffers = getBuffersOrderedForOwner(index, storageLockContext);
 
       if (buffers != null) {
-        mySegmentsAllocationLock.lock();
+        ReadWriteDirectBufferWrapper.FileContext fileContext = null;
         try {
-          ReadWriteDirectBufferWrapper.FileContext fileContext = null;
-          for (ByteBufferWrapper buffer : buffers.values()) {
-            if (buffer instanceof ReadWriteDirectBufferWrapper) {
-              fileContext = ((ReadWriteDirectBufferWrapper)buffer).flushWithContext(fileContext);
+          for (Map.Entry<Integer, ByteBufferWrapper> entry : buffers.entrySet()) {
+            // buffers are disposed under allocation lock of their shard only, other shards aren't blocked by flushing
+            ReentrantLock allocationLock = getShard(entry.getKey()).myAllocationLock;
+            allocationLock.lock();
+            try {
+              ByteBufferWrapper buffer = entry.getValue();
+              if (buffer instanceof ReadWriteDirectBufferWrapper) {
+                fileContext = ((ReadWriteDirectBufferWrapper)buffer).flushWithContext(fileContext);
+              }
+              else {
+                buffer.flush();
+              }
             }
-            else {
-              buffer.flush();
+            finally {
+              allocationLock.unlock();
             }
           }
+        }
+        finally {
           if (fileContext != null) {
             fileContext.close();
           }
         }
-        finally {
-          mySegmentsAllocationLock.unlock();
-        }
       }
     }
 
     public void invalidateBuffer(int page) {
-      mySegmentsAccessLock.lock();
+      BufferCacheShard shard = getShard(page);
+      shard.myAccessLock.lock();
       try {
-        mySegments.remove(page);
+        shard.mySegments.remove(page);
       } finally {
-        mySegmentsAccessLock.unlock();
+        shard.myAccessLock.unlock();
+      }
+      shard.myAllocationLock.lock();
+      try {
+        disposeRemovedSegments(shard);
+      }
+      finally {
+        shard.myAllocationLock.unlock();
       }
-      mySegmentsAllocationLock.lock();
+    }
+
+    /**
+     * @return human readable per shard statistics of mapped buffers cache: hits, misses, evictions and mapping changes
+     */
+    @NotNull
+    public String getCacheStatistics() {
+      StringBuilder builder = new StringBuilder("Paged storage cache: size=").append(mySize.get() / MB)
+        .append("MB, limit=").append(mySizeLimit / MB).append("MB");
+      for (int i = 0; i < myShards.length; ++i) {
+        BufferCacheShard shard = myShards[i];
+        builder.append("\n  shard ").append(i)
+          .append(": buffers=").append(shard.mySegments.size())
+          .append(", hits=").append(shard.myHits)
+          .append(", misses=").append(shard.myMisses)
+          .append(", evictions=").append(shard.myEvictions)
+          .append(", mapping changes=").append(shard.myMappingChangeCount);
+      }
+      return builder.toString();
+    }
+
+    @TestOnly
+    void setCacheSizeLimit(long sizeLimit) {
+      mySizeLimit = sizeLimit;
+    }
+
+    @TestOnly
+    boolean isCached(int key) {
+      BufferCacheShard shard = getShard(key);
+      shard.myAccessLock.lock();
       try {
-        disposeRemovedSegments();
+        // lookup would change LRU order
+        return shard.mySegments.keySet().stream().anyMatch(k -> k == key);
       }
       finally {
-        mySegmentsAllocationLock.unlock();
+        shard.myAccessLock.unlock();
+      }
+    }
+
+    @TestOnly
+    long getCacheHits() {
+      return sumOverShards(shard -> shard.myHits);
+    }
+
+    @TestOnly
+    long getCacheMisses() {
+      return sumOverShards(shard -> shard.myMisses);
+    }
+
+    @TestOnly
+    long getCacheEvictions() {
+      return sumOverShards(shard -> shard.myEvictions);
+    }
+
+    private long sumOverShards(@NotNull ToLongFunction<BufferCacheShard> counter) {
+      long sum = 0;
+      for (BufferCacheShard shard : myShards) {
+        shard.myAccessLock.lock();
+        try {
+          sum += counter.applyAsLong(shard);
+        }
+        finally {
+          shard.myAccessLock.unlock();
+        }
+      }
+      return sum;
+    }
+
+    private final class BufferCacheShard {
+      private final LinkedHashMap<Integer, ByteBufferWrapper> mySegments;
+      private final ReentrantLock myAccessLock = new ReentrantLock(); // protects map operations of mySegments, needed for LRU order and counters
+      private final ReentrantLock myAllocationLock = new ReentrantLock();
+      private final ConcurrentLinkedQueue<ByteBufferWrapper> mySegmentsToRemove = new ConcurrentLinkedQueue<>();
+      private volatile int myMappingChangeCount;
+      // statistics, updated under myAccessLock
+      private long myHits;
+      private long myMisses;
+      private long myEvictions;
+
+      private BufferCacheShard() {
+        mySegments = new LinkedHashMap<Integer, ByteBufferWrapper>(10, 0.75f, true) {
+          @Override
+          protected boolean removeEldestEntry(Map.Entry<Integer, ByteBufferWrapper> eldest) {
+            return false; // eviction is driven by common size limit, see ensureSize
+          }
+
+          @Nullable
+          @Override
+          public ByteBufferWrapper remove(Object key) {
+            ByteBufferWrapper wrapper = super.remove(key);
+            if (wrapper != null) {
+              ++myMappingChangeCount;
+              mySegmentsToRemove.offer(wrapper);
+              mySize.addAndGet(-wrapper.myLength);
+            }
+            return wrapper;
+          }
+        };
+      }
+
+      private void evictEldest() {
+        myAccessLock.lock();
+        try {
+          if (!mySegments.isEmpty()) {
+            mySegments.doRemoveEldestEntry();
+            myEvictions++;
+          }
+        }
+        finally {
+          myAccessLock.unlock();
+        }
       }
     }
   }
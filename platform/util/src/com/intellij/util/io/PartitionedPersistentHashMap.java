@@ -0,0 +1,214 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.io;
+
+import com.intellij.openapi.util.io.FileUtil;
+import com.intellij.util.Processor;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * {@link PersistentMap} which splits keys by hash between several independent {@link PersistentHashMap} partitions.
+ * Every partition has its own enumerator, value storage and monitor, so operations on keys from different partitions
+ * do not contend with each other, in contrast to a single {@link PersistentHashMap} where every operation is serialized.
+ * Partition count is persisted next to the base file and a map opened with a different partition count is reported as corrupted.
+ * <p>
+ * Operations within a partition, reads included, are still serialized by its monitor. No index storage uses this map yet.
+ */
+public class PartitionedPersistentHashMap<Key, Value> implements PersistentMap<Key, Value> {
+  // persisted, so it mustn't depend on the machine: otherwise the same caches would be reported as corrupted on another one
+  public static final int DEFAULT_PARTITIONS = 8;
+  private static final int DEFAULT_INITIAL_SIZE = 4 * 1024;
+  private static final String PARTITIONS_FILE_EXTENSION = ".partitions";
+
+  private final File myBaseFile;
+  private final KeyDescriptor<Key> myKeyDescriptor;
+  private final PersistentHashMap<Key, Value>[] myPartitions;
+
+  public PartitionedPersistentHashMap(@NotNull File file,
+                                      @NotNull KeyDescriptor<Key> keyDescriptor,
+                                      @NotNull DataExternalizer<Value> valueExternalizer) throws IOException {
+    this(file, keyDescriptor, valueExternalizer, DEFAULT_PARTITIONS, DEFAULT_INITIAL_SIZE, 0, null);
+  }
+
+  @SuppressWarnings("unchecked")
+  public PartitionedPersistentHashMap(@NotNull File file,
+                                      @NotNull KeyDescriptor<Key> keyDescriptor,
+                                      @NotNull DataExternalizer<Value> valueExternalizer,
+                                      int partitions,
+                                      int initialSize,
+                                      int version,
+                                      @Nullable PagedFileStorage.StorageLockContext lockContext) throws IOException {
+    if (partitions <= 0) throw new IllegalArgumentException("partitions: " + partitions);
+    myBaseFile = file;
+    myKeyDescriptor = keyDescriptor;
+    checkPartitionCount(file, partitions);
+
+    myPartitions = new PersistentHashMap[partitions];
+    try {
+      for (int i = 0; i < partitions; ++i) {
+        myPartitions[i] = new PersistentHashMap<>(getPartitionFile(file, i), keyDescriptor, valueExternalizer,
+                                                  initialSize / partitions + 1, version, lockContext);
+      }
+    }
+    catch (IOException | RuntimeException e) {
+      for (PersistentHashMap<Key, Value> partition : myPartitions) {
+        if (partition == null) break;
+        try {
+          partition.close();
+        }
+        catch (IOException ignored) {
+        }
+      }
+      throw e;
+    }
+  }
+
+  private static void checkPartitionCount(@NotNull File file, int partitions) throws IOException {
+    File partitionsFile = new File(file.getParentFile(), file.getName() + PARTITIONS_FILE_EXTENSION);
+    if (partitionsFile.exists()) {
+      String stored = FileUtil.loadFile(partitionsFile).trim();
+      if (!String.valueOf(partitions).equals(stored)) {
+        throw new PersistentEnumeratorBase.CorruptedException(file);
+      }
+    }
+    else {
+      FileUtil.writeToFile(partitionsFile, String.valueOf(partitions));
+    }
+  }
+
+  @NotNull
+  private static File getPartitionFile(@NotNull File file, int partition) {
+    return new File(file.getParentFile(), file.getName() + "." + partition);
+  }
+
+  @NotNull
+  private PersistentHashMap<Key, Value> partition(Key key) {
+    int hash = myKeyDescriptor.getHashCode(key);
+    hash ^= hash >>> 16;
+    return myPartitions[(hash & Integer.MAX_VALUE) % myPartitions.length];
+  }
+
+  public int getPartitionCount() {
+    return myPartitions.length;
+  }
+
+  @NotNull
+  public File getBaseFile() {
+    return myBaseFile;
+  }
+
+  @Override
+  public Value get(Key key) throws IOException {
+    return partition(key).get(key);
+  }
+
+  @Override
+  public void put(Key key, Value value) throws IOException {
+    partition(key).put(key, value);
+  }
+
+  public void appendData(Key key, @NotNull PersistentHashMap.ValueDataAppender appender) throws IOException {
+    partition(key).appendData(key, appender);
+  }
+
+  public boolean containsMapping(Key key) throws IOException {
+    return partition(key).containsMapping(key);
+  }
+
+  public void remove(Key key) throws IOException {
+    partition(key).remove(key);
+  }
+
+  @Override
+  public boolean processKeys(@NotNull Processor<? super Key> processor) throws IOException {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      if (!partition.processKeys(processor)) return false;
+    }
+    return true;
+  }
+
+  public boolean processKeysWithExistingMapping(@NotNull Processor<? super Key> processor) throws IOException {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      if (!partition.processKeysWithExistingMapping(processor)) return false;
+    }
+    return true;
+  }
+
+  @NotNull
+  public Collection<Key> getAllKeysWithExistingMapping() throws IOException {
+    List<Key> keys = new ArrayList<>();
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      keys.addAll(partition.getAllKeysWithExistingMapping());
+    }
+    return keys;
+  }
+
+  public void dropMemoryCaches() {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      partition.dropMemoryCaches();
+    }
+  }
+
+  @Override
+  public boolean isClosed() {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      if (partition.isClosed()) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public boolean isDirty() {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      if (partition.isDirty()) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void markDirty() throws IOException {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      partition.markDirty();
+    }
+  }
+
+  public boolean isCorrupted() {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      if (partition.isCorrupted()) return true;
+    }
+    return false;
+  }
+
+  @Override
+  public void force() {
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      partition.force();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    IOException exception = null;
+    for (PersistentHashMap<Key, Value> partition : myPartitions) {
+      try {
+        partition.close();
+      }
+      catch (IOException e) {
+        if (exception == null) exception = e;
+        else exception.addSuppressed(e);
+      }
+    }
+    if (exception != null) throw exception;
+  }
+
+  @Override
+  public String toString() {
+    return myBaseFile.getPath() + "@" + myPartitions.length;
+  }
+}
@@ -0,0 +1,199 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.text;
+
+import com.intellij.openapi.util.text.StringUtil;
+import com.intellij.util.ArrayUtil;
+import gnu.trove.TIntArrayList;
+import org.jetbrains.annotations.NotNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Finds all occurrences of several patterns in one pass over a text (Aho-Corasick automaton), so a text
+ * needn't be scanned by a {@link StringSearcher} once per pattern. Occurrences are reported in order of their end offsets,
+ * overlapping ones included.
+ * <p>
+ * In case-insensitive mode characters are compared by {@link StringUtil#charsEqualIgnoreCase(char, char)}, as {@link StringSearcher} does.
+ * The automaton is built over {@code toLowerCase(toUpperCase(c))}, which never separates such characters, and the rare candidates
+ * it over-matches are checked against the pattern.
+ */
+public class MultiStringSearcher {
+  private static final int ROOT = 0;
+
+  private final char[][] myPatterns;
+  private final boolean myCaseSensitive;
+  private final int[] myRootTargets = new int[128]; // transitions from the root by ASCII chars, -1 if absent
+  private final char[][] myKeys; // sorted transition chars for every state
+  private final int[][] myTargets;
+  private final int[] myFailures;
+  private final int[][] myOutputs; // patterns ending in a state, including ones inherited by failure links
+
+  public MultiStringSearcher(@NotNull List<String> patterns, boolean caseSensitive) {
+    myCaseSensitive = caseSensitive;
+    myPatterns = new char[patterns.size()][];
+
+    List<StringBuilder> keys = new ArrayList<>();
+    List<TIntArrayList> targets = new ArrayList<>();
+    List<TIntArrayList> outputs = new ArrayList<>();
+    keys.add(new StringBuilder());
+    targets.add(new TIntArrayList());
+    outputs.add(new TIntArrayList());
+    for (int p = 0; p < patterns.size(); p++) {
+      String pattern = patterns.get(p);
+      if (pattern.isEmpty()) throw new IllegalArgumentException("pattern is empty");
+      myPatterns[p] = pattern.toCharArray();
+      int state = ROOT;
+      for (int i = 0; i < pattern.length(); i++) {
+        char c = normalize(pattern.charAt(i));
+        int index = keys.get(state).indexOf(String.valueOf(c));
+        if (index >= 0) {
+          state = targets.get(state).get(index);
+        }
+        else {
+          int newState = keys.size();
+          keys.add(new StringBuilder());
+          targets.add(new TIntArrayList());
+          outputs.add(new TIntArrayList());
+          keys.get(state).append(c);
+          targets.get(state).add(newState);
+          state = newState;
+        }
+      }
+      outputs.get(state).add(p);
+    }
+
+    int stateCount = keys.size();
+    myKeys = new char[stateCount][];
+    myTargets = new int[stateCount][];
+    for (int state = 0; state < stateCount; state++) {
+      char[] stateKeys = keys.get(state).toString().toCharArray();
+      int[] stateTargets = targets.get(state).toNativeArray();
+      sortTransitions(stateKeys, stateTargets);
+      myKeys[state] = stateKeys;
+      myTargets[state] = stateTargets;
+    }
+    Arrays.fill(myRootTargets, -1);
+    for (int i = 0; i < myKeys[ROOT].length; i++) {
+      if (myKeys[ROOT][i] < myRootTargets.length) myRootTargets[myKeys[ROOT][i]] = myTargets[ROOT][i];
+    }
+
+    // breadth-first, so failure targets are complete when a state is reached
+    myFailures = new int[stateCount];
+    myOutputs = new int[stateCount][];
+    myOutputs[ROOT] = ArrayUtil.EMPTY_INT_ARRAY;
+    TIntArrayList queue = new TIntArrayList();
+    for (int target : myTargets[ROOT]) {
+      myFailures[target] = ROOT;
+      queue.add(target);
+    }
+    for (int head = 0; head < queue.size(); head++) {
+      int state = queue.get(head);
+      TIntArrayList stateOutputs = outputs.get(state);
+      stateOutputs.add(myOutputs[myFailures[state]]);
+      myOutputs[state] = stateOutputs.toNativeArray();
+
+      for (int i = 0; i < myKeys[state].length; i++) {
+        char c = myKeys[state][i];
+        int target = myTargets[state][i];
+        int failure = myFailures[state];
+        int next;
+        while ((next = transition(failure, c)) < 0 && failure != ROOT) {
+          failure = myFailures[failure];
+        }
+        myFailures[target] = next >= 0 ? next : ROOT;
+        queue.add(target);
+      }
+    }
+  }
+
+  private static void sortTransitions(@NotNull char[] keys, @NotNull int[] targets) {
+    for (int i = 1; i < keys.length; i++) {
+      for (int j = i; j > 0 && keys[j - 1] > keys[j]; j--) {
+        char c = keys[j];
+        keys[j] = keys[j - 1];
+        keys[j - 1] = c;
+        int t = targets[j];
+        targets[j] = targets[j - 1];
+        targets[j - 1] = t;
+      }
+    }
+  }
+
+  private char normalize(char c) {
+    return myCaseSensitive ? c : StringUtil.toLowerCase(StringUtil.toUpperCase(c));
+  }
+
+  private int transition(int state, char c) {
+    if (state == ROOT && c < myRootTargets.length) return myRootTargets[c];
+    int index = Arrays.binarySearch(myKeys[state], c);
+    return index >= 0 ? myTargets[state][index] : -1;
+  }
+
+  public int getPatternCount() {
+    return myPatterns.length;
+  }
+
+  @FunctionalInterface
+  public interface OccurrenceProcessor {
+    /**
+     * @param patternIndex index of the pattern in the list passed to the constructor
+     * @param offset start offset of the occurrence
+     * @return false to stop the search
+     */
+    boolean process(int patternIndex, int offset);
+  }
+
+  /**
+   * Reports occurrences which lie within {@code [start, end)}
+   *
+   * @return false if the processor stopped the search
+   */
+  public boolean processOccurrences(@NotNull CharSequence text, int start, int end, @NotNull OccurrenceProcessor processor) {
+    char[] textArray = CharArrayUtil.fromSequenceWithoutCopying(text);
+    int state = ROOT;
+    for (int i = start; i < end; i++) {
+      char c = normalize(textArray != null ? textArray[i] : text.charAt(i));
+      int next;
+      while ((next = transition(state, c)) < 0 && state != ROOT) {
+        state = myFailures[state];
+      }
+      state = next >= 0 ? next : ROOT;
+      for (int pattern : myOutputs[state]) {
+        int offset = i - myPatterns[pattern].length + 1;
+        if (!myCaseSensitive && !matchesIgnoreCase(myPatterns[pattern], text, textArray, offset)) continue;
+        if (!processor.process(pattern, offset)) return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean matchesIgnoreCase(@NotNull char[] pattern, @NotNull CharSequence text, char[] textArray, int offset) {
+    for (int i = 0; i < pattern.length; i++) {
+      char c = textArray != null ? textArray[offset + i] : text.charAt(offset + i);
+      if (!StringUtil.charsEqualIgnoreCase(pattern[i], c)) return false;
+    }
+    return true;
+  }
+
+  /**
+   * @return start offsets of occurrences of every pattern, in the order of patterns
+   */
+  @NotNull
+  public int[][] findAllOccurrences(@NotNull CharSequence text) {
+    TIntArrayList[] occurrences = new TIntArrayList[getPatternCount()];
+    for (int i = 0; i < occurrences.length; i++) {
+      occurrences[i] = new TIntArrayList();
+    }
+    processOccurrences(text, 0, text.length(), (patternIndex, offset) -> {
+      occurrences[patternIndex].add(offset);
+      return true;
+    });
+    int[][] result = new int[occurrences.length][];
+    for (int i = 0; i < occurrences.length; i++) {
+      result[i] = occurrences[i].toNativeArray();
+    }
+    return result;
+  }
+}
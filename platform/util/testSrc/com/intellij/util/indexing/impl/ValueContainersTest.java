@@ -1,13 +1,19 @@
 // Copyright 2000-2017 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
 package com.intellij.util.indexing.impl;
 
+import com.intellij.openapi.util.io.BufferExposingByteArrayOutputStream;
 import com.intellij.util.indexing.ValueContainer;
 import com.intellij.util.indexing.containers.ChangeBufferingList;
+import com.intellij.util.io.EnumeratorStringDescriptor;
 import gnu.trove.THashSet;
 import gnu.trove.TIntArrayList;
 import gnu.trove.TIntHashSet;
 import junit.framework.TestCase;
 
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.HashMap;
 import java.util.Set;
 
@@ -80,6 +86,63 @@ public class ValueContainersTest extends TestCase {
     assertFalse(iterator.hasNext());
   }
 
+  public void testSerializationOfSparseAndDenseFileIds() throws IOException {
+    ValueContainerImpl<String> container = new ValueContainerImpl<>();
+    TIntHashSet sparse = new TIntHashSet();
+    TIntHashSet dense = new TIntHashSet();
+    for (int i = 1; i < 100; ++i) {
+      container.addValue(i * 1000, "sparse");
+      sparse.add(i * 1000);
+    }
+    for (int i = 5000; i < 30000; i += 3) {
+      container.addValue(i, "dense");
+      dense.add(i);
+    }
+
+    BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    container.saveTo(new DataOutputStream(bytes), EnumeratorStringDescriptor.INSTANCE);
+    assertTrue(String.valueOf(bytes.size()), bytes.size() < dense.size() / 2);
+
+    ValueContainerImpl<String> restored = new ValueContainerImpl<>();
+    restored.readFrom(new DataInputStream(new ByteArrayInputStream(bytes.getInternalBuffer(), 0, bytes.size())),
+                      EnumeratorStringDescriptor.INSTANCE);
+
+    assertEquals(2, restored.size());
+    for (InvertedIndexValueIterator<String> valueIterator = restored.getValueIterator(); valueIterator.hasNext(); ) {
+      String value = valueIterator.next();
+      TIntHashSet expected = "dense".equals(value) ? dense : sparse;
+      TIntHashSet actual = new TIntHashSet();
+      for (ValueContainer.IntIterator iterator = valueIterator.getInputIdsIterator(); iterator.hasNext(); ) {
+        actual.add(iterator.next());
+      }
+      assertEquals(expected, actual);
+    }
+  }
+
+  public void testDenseFileIdsTakeLessSpaceThanDeltaEncoding() throws IOException {
+    int count = 10000;
+    // every delta below 128 takes one byte in delta encoding, so ids 9 apart take as much space
+    // as closer ids took before they were stored as bit sets
+    int deltaEncodedSize = serializedSize(count, 9);
+    assertTrue(String.valueOf(deltaEncodedSize), deltaEncodedSize >= count);
+
+    for (int delta = 1; delta < 8; ++delta) {
+      int size = serializedSize(count, delta);
+      assertTrue("delta " + delta + ": " + size + " bytes, " + deltaEncodedSize + " bytes with delta encoding",
+                 size <= deltaEncodedSize * delta / 8 + 32);
+    }
+  }
+
+  private static int serializedSize(int count, int delta) throws IOException {
+    ValueContainerImpl<String> container = new ValueContainerImpl<>();
+    for (int i = 0; i < count; ++i) {
+      container.addValue(1 + i * delta, "value");
+    }
+    BufferExposingByteArrayOutputStream bytes = new BufferExposingByteArrayOutputStream();
+    container.saveTo(new DataOutputStream(bytes), EnumeratorStringDescriptor.INSTANCE);
+    return bytes.size();
+  }
+
   private static <T> void runSimpleAddRemoveIteration(T[] values, int[][] inputIds) {
     HashMap<T, TIntArrayList> valueToIdList = new HashMap<>();
     ValueContainerImpl<T> container = new ValueContainerImpl<>();
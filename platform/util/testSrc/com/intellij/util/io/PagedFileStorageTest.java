@@ -120,6 +120,58 @@ public class PagedFileStorageTest {
     });
   }
 
+  @Test
+  public void testCacheCountsMissesAndHits() throws IOException {
+    withLock(lock, () -> {
+      PagedFileStorage storage = new PagedFileStorage(tempDir.newFile("pages"), lock.myDefaultStorageLockContext, Page.PAGE_SIZE, false);
+      try {
+        storage.resize(5 * Page.PAGE_SIZE);
+        assertEquals(5, lock.getCacheMisses());
+        assertEquals(0, lock.getCacheHits());
+
+        // three last accessed pages don't reach the cache
+        for (int page = 4; page >= 2; --page) {
+          assertEquals(0, storage.getInt(page * Page.PAGE_SIZE));
+        }
+        assertEquals(0, lock.getCacheHits());
+
+        assertEquals(0, storage.getInt(0));
+        assertEquals(0, storage.getInt(Page.PAGE_SIZE));
+        assertEquals(2, lock.getCacheHits());
+        assertEquals(5, lock.getCacheMisses());
+        assertEquals(0, lock.getCacheEvictions());
+      }
+      finally {
+        storage.close();
+      }
+    });
+  }
+
+  @Test
+  public void testLeastRecentlyUsedPagesOfAllShardsAreEvicted() throws IOException {
+    withLock(lock, () -> {
+      lock.setCacheSizeLimit(4 * Page.PAGE_SIZE);
+      PagedFileStorage storage = new PagedFileStorage(tempDir.newFile("pages"), lock.myDefaultStorageLockContext, Page.PAGE_SIZE, false);
+      try {
+        storage.resize(16 * Page.PAGE_SIZE);
+        assertEquals(16, lock.getCacheMisses());
+        assertEquals(12, lock.getCacheEvictions());
+        for (int page = 0; page < 16; ++page) {
+          assertEquals("page " + page, page >= 12, storage.isPageCached(page));
+        }
+
+        // a page of any shard that has been used recently survives
+        assertEquals(0, storage.getInt(12 * Page.PAGE_SIZE));
+        assertEquals(0, storage.getInt(0));
+        assertTrue(storage.isPageCached(12));
+        assertFalse(storage.isPageCached(13));
+      }
+      finally {
+        storage.close();
+      }
+    });
+  }
+
   private static void withLock(PagedFileStorage.StorageLock lock, ThrowableRunnable<IOException> block) throws IOException {
     lock.lock();
     try {
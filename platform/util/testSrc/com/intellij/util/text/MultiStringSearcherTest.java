@@ -0,0 +1,55 @@
+// Copyright 2000-2019 JetBrains s.r.o. Use of this source code is governed by the Apache 2.0 license that can be found in the LICENSE file.
+package com.intellij.util.text;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+public class MultiStringSearcherTest extends TestCase {
+  public void testOverlappingPatterns() {
+    MultiStringSearcher searcher = new MultiStringSearcher(Arrays.asList("he", "she", "his", "hers", "he"), true);
+    int[][] occurrences = searcher.findAllOccurrences("ushers his");
+    assertEquals("[2]", Arrays.toString(occurrences[0]));
+    assertEquals("[1]", Arrays.toString(occurrences[1]));
+    assertEquals("[7]", Arrays.toString(occurrences[2]));
+    assertEquals("[2]", Arrays.toString(occurrences[3]));
+    assertEquals("[2]", Arrays.toString(occurrences[4]));
+  }
+
+  public void testCaseInsensitiveWithUnicode() {
+    MultiStringSearcher searcher = new MultiStringSearcher(Arrays.asList("sil", "SİL"), false);
+    int[][] occurrences = searcher.findAllOccurrences("SİL SIL sıl");
+    assertEquals(Arrays.toString(new StringSearcher("sil", false, true).findAllOccurrences("SİL SIL sıl")), Arrays.toString(occurrences[0]));
+    assertEquals(Arrays.toString(new StringSearcher("SİL", false, true).findAllOccurrences("SİL SIL sıl")), Arrays.toString(occurrences[1]));
+  }
+
+  public void testSameOccurrencesAsStringSearcher() {
+    Random random = new Random(5);
+    String alphabet = "abAB_ iI";
+    for (int iteration = 0; iteration < 500; iteration++) {
+      boolean caseSensitive = random.nextBoolean();
+      String[] patterns = new String[1 + random.nextInt(6)];
+      for (int i = 0; i < patterns.length; i++) {
+        patterns[i] = randomString(random, alphabet, 1 + random.nextInt(4));
+      }
+      String text = randomString(random, alphabet, random.nextInt(200));
+
+      List<String> patternList = Arrays.asList(patterns);
+      int[][] occurrences = new MultiStringSearcher(patternList, caseSensitive).findAllOccurrences(text);
+      for (int i = 0; i < patterns.length; i++) {
+        int[] expected = new StringSearcher(patterns[i], caseSensitive, true).findAllOccurrences(text);
+        assertEquals(patterns[i] + " in " + text, Arrays.toString(expected), Arrays.toString(occurrences[i]));
+      }
+    }
+  }
+
+  private static String randomString(Random random, String alphabet, int length) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < length; i++) {
+      builder.append(alphabet.charAt(random.nextInt(alphabet.length())));
+    }
+    return builder.toString();
+  }
+}
@@ -43,7 +43,7 @@ import java.util.List;
 /**
  * @author cdr
  */
-public class TrailingSpacesInPropertyInspection extends PropertiesInspectionBase {
+public class TrailingSpacesInPropertyInspection extends PropertiesInspectionBase implements FileLocalInspectionTool {
   public boolean myIgnoreVisibleSpaces;
 
   @Override